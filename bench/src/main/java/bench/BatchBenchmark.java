@@ -0,0 +1,71 @@
+package main.java.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.HMM1;
+import main.java.helpers.BatchScorer;
+import main.java.helpers.HMMModel;
+
+/**
+ * Many short sequences against one model: BatchScorer against a loop over
+ * HMM1.logLikelihood.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BatchBenchmark {
+  @Param({"4", "32", "128"})
+  public int numStates;
+  @Param({"10000"})
+  public int numSequences;
+
+  private HMMModel model;
+  private BatchScorer scorer;
+  private List<int[]> sequences;
+
+  /**
+   * Sequences of 20 to 40 emissions, lengths in random order.
+   */
+  @Setup
+  public void setup() {
+    model = SyntheticModels.model(numStates, 16, 42);
+    scorer = new BatchScorer(model);
+    Random random = new Random(43);
+    sequences = new ArrayList<>();
+    for (int idx = 0; idx < numSequences; idx++) {
+      sequences.add(SyntheticModels.sequence(model, 20 + random.nextInt(21), 44 + idx));
+    }
+  }
+
+  @Benchmark
+  public double[] batch() {
+    return scorer.logLikelihoods(sequences, null);
+  }
+
+  @Benchmark
+  public double[] sequential() {
+    double[] logProbs = new double[sequences.size()];
+    for (int idx = 0; idx < logProbs.length; idx++) {
+      logProbs[idx] = HMM1.logLikelihood(model, sequences.get(idx));
+    }
+    return logProbs;
+  }
+}
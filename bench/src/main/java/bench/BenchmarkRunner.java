@@ -0,0 +1,32 @@
+package main.java.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar. Runs the selected benchmarks (all of them by
+ * default) with the GC profiler attached, so allocation rates are reported next
+ * to the timings, and writes the results as JSON to bench-results.json. Any
+ * standard JMH command line option can be passed, e.g.
+ *   java -jar bench/target/benchmarks.jar Forward -p numStates=50 -rff out.json
+ */
+public class BenchmarkRunner {
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    OptionsBuilder builder = new OptionsBuilder();
+    builder.parent(commandLine);
+    builder.addProfiler(GCProfiler.class);
+    if (commandLine.getIncludes().isEmpty()) {
+      builder.include("main\\.java\\.bench\\..*Benchmark");
+    }
+    if (!commandLine.getResult().hasValue()) {
+      builder.resultFormat(ResultFormatType.JSON).result("bench-results.json");
+    }
+    Options options = builder.build();
+    new Runner(options).run();
+  }
+}
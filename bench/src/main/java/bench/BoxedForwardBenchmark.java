@@ -0,0 +1,69 @@
+package main.java.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.helpers.AlphaPass;
+import main.java.helpers.ArrayOperations;
+import main.java.helpers.HMMModel;
+
+/**
+ * The original boxed forward and backward passes of BoxedPasses, on the models and
+ * sequences of ForwardBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BoxedForwardBenchmark {
+  @Param({"8", "50"})
+  public int numStates;
+  @Param({"8", "32"})
+  public int numSymbols;
+  @Param({"1000", "100000"})
+  public int numEmissions;
+
+  private Double[][] a;
+  private Double[][] b;
+  private Double[][] pi;
+  private int[] emissions;
+  private Double[] scalingFactors;
+
+  @Setup
+  public void setup() {
+    HMMModel model = SyntheticModels.model(numStates, numSymbols, 42);
+    a = ArrayOperations.toMatrix(model.a, numStates, numStates);
+    b = ArrayOperations.toMatrix(model.b, numStates, numSymbols);
+    pi = ArrayOperations.toMatrix(model.pi, 1, numStates);
+    emissions = SyntheticModels.sequence(model, numEmissions, 43);
+    scalingFactors = BoxedPasses.alphaPassScale(a, b, pi, emissions).scalingFactors;
+  }
+
+  @Benchmark
+  public Double alphaPass() {
+    return BoxedPasses.alphaPass(a, b, pi, emissions);
+  }
+
+  @Benchmark
+  public AlphaPass alphaPassScale() {
+    return BoxedPasses.alphaPassScale(a, b, pi, emissions);
+  }
+
+  @Benchmark
+  public Double[][] betaPassScale() {
+    return BoxedPasses.betaPassScale(a, b, pi, emissions, scalingFactors);
+  }
+}
@@ -0,0 +1,77 @@
+package main.java.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.helpers.AlphaPass;
+import main.java.helpers.ArrayOperations;
+import main.java.helpers.Gamma;
+import main.java.helpers.HMMModel;
+
+/**
+ * The original boxed computeGamma and reEstimate of BoxedPasses, on the models and
+ * sequences of TrainingBenchmark. The boxed di-gamma tensor holds N*N*T Double
+ * objects, about 600 MB for the largest parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BoxedTrainingBenchmark {
+  @Param({"8", "50"})
+  public int numStates;
+  @Param({"8", "32"})
+  public int numSymbols;
+  @Param({"1000", "10000"})
+  public int numEmissions;
+
+  private Double[][] a;
+  private Double[][] b;
+  private Double[][] pi;
+  private Double[][] scratchA;
+  private Double[][] scratchB;
+  private Double[][] scratchPi;
+  private int[] emissions;
+  private AlphaPass alpha;
+  private Double[][] beta;
+  private Gamma gamma;
+
+  @Setup
+  public void setup() {
+    HMMModel model = SyntheticModels.model(numStates, numSymbols, 42);
+    a = ArrayOperations.toMatrix(model.a, numStates, numStates);
+    b = ArrayOperations.toMatrix(model.b, numStates, numSymbols);
+    pi = ArrayOperations.toMatrix(model.pi, 1, numStates);
+    scratchA = ArrayOperations.toMatrix(model.a, numStates, numStates);
+    scratchB = ArrayOperations.toMatrix(model.b, numStates, numSymbols);
+    scratchPi = ArrayOperations.toMatrix(model.pi, 1, numStates);
+    emissions = SyntheticModels.sequence(model, numEmissions, 43);
+    alpha = BoxedPasses.alphaPassScale(a, b, pi, emissions);
+    beta = BoxedPasses.betaPassScale(a, b, pi, emissions, alpha.scalingFactors);
+    gamma = BoxedPasses.computeGamma(a, b, pi, emissions, alpha, beta);
+  }
+
+  @Benchmark
+  public Gamma computeGamma() {
+    return BoxedPasses.computeGamma(a, b, pi, emissions, alpha, beta);
+  }
+
+  @Benchmark
+  public Double[][] reEstimate() {
+    BoxedPasses.reEstimate(scratchA, scratchB, scratchPi, gamma, emissions);
+    return scratchA;
+  }
+}
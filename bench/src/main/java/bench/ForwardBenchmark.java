@@ -0,0 +1,70 @@
+package main.java.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.HMM1;
+import main.java.HMM3;
+import main.java.helpers.FlatAlphaPass;
+import main.java.helpers.HMMModel;
+
+/**
+ * Forward and backward passes: HMM1.alphaPass, HMM3.alphaPassScale,
+ * HMM3.betaPassScale and the O(N) memory HMM1.logLikelihood.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ForwardBenchmark {
+  @Param({"8", "50"})
+  public int numStates;
+  @Param({"8", "32"})
+  public int numSymbols;
+  @Param({"1000", "100000"})
+  public int numEmissions;
+
+  private HMMModel model;
+  private int[] emissions;
+  private double[] scalingFactors;
+
+  @Setup
+  public void setup() {
+    model = SyntheticModels.model(numStates, numSymbols, 42);
+    emissions = SyntheticModels.sequence(model, numEmissions, 43);
+    scalingFactors = HMM3.alphaPassScale(model, emissions).scalingFactors;
+  }
+
+  @Benchmark
+  public double alphaPass() {
+    return HMM1.alphaPass(model, emissions);
+  }
+
+  @Benchmark
+  public double logLikelihood() {
+    return HMM1.logLikelihood(model, emissions);
+  }
+
+  @Benchmark
+  public FlatAlphaPass alphaPassScale() {
+    return HMM3.alphaPassScale(model, emissions);
+  }
+
+  @Benchmark
+  public double[] betaPassScale() {
+    return HMM3.betaPassScale(model, emissions, scalingFactors);
+  }
+}
@@ -0,0 +1,70 @@
+package main.java.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.HMM3;
+import main.java.helpers.FlatAlphaPass;
+import main.java.helpers.FlatGamma;
+import main.java.helpers.HMMModel;
+import main.java.helpers.Kernels;
+
+/**
+ * Scalar against vector kernels in HMM3.alphaPassScale, betaPassScale and
+ * computeGamma for larger state counts. Needs JDK 16+ for the vector kernels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark {
+  @Param({"scalar", "vector"})
+  public String kernelName;
+  @Param({"32", "128", "256"})
+  public int numStates;
+  @Param({"1000"})
+  public int numEmissions;
+
+  private Kernels kernels;
+  private HMMModel model;
+  private int[] emissions;
+  private FlatAlphaPass alpha;
+  private double[] beta;
+
+  @Setup
+  public void setup() {
+    kernels = Kernels.forName(kernelName);
+    model = SyntheticModels.model(numStates, 16, 42);
+    emissions = SyntheticModels.sequence(model, numEmissions, 43);
+    alpha = HMM3.alphaPassScale(model, emissions, kernels);
+    beta = HMM3.betaPassScale(model, emissions, alpha.scalingFactors, kernels);
+  }
+
+  @Benchmark
+  public FlatAlphaPass alphaPassScale() {
+    return HMM3.alphaPassScale(model, emissions, kernels);
+  }
+
+  @Benchmark
+  public double[] betaPassScale() {
+    return HMM3.betaPassScale(model, emissions, alpha.scalingFactors, kernels);
+  }
+
+  @Benchmark
+  public FlatGamma computeGamma() {
+    return HMM3.computeGamma(model, emissions, alpha, beta, kernels);
+  }
+}
@@ -0,0 +1,83 @@
+package main.java.bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.helpers.ArrayOperations;
+import main.java.helpers.HMMModel;
+
+/**
+ * ArrayOperations kernels on square matrices: sequential, parallel, transposed and
+ * boxed multiplication, and A^1000000 by repeated squaring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MatrixBenchmark {
+  @Param({"8", "50", "256"})
+  public int size;
+
+  private double[] left;
+  private double[] right;
+  private double[] rightTransposed;
+  private Double[][] boxedLeft;
+  private Double[][] boxedRight;
+  private ForkJoinPool pool;
+
+  @Setup
+  public void setup() {
+    HMMModel model = SyntheticModels.model(size, size, 42);
+    left = model.a;
+    right = model.b;
+    boxedLeft = ArrayOperations.toMatrix(left, size, size);
+    boxedRight = ArrayOperations.toMatrix(right, size, size);
+    rightTransposed = ArrayOperations.transpose(right, size, size);
+    pool = new ForkJoinPool();
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public double[] matrixMultiply() {
+    return ArrayOperations.matrixMultiply(left, right, size, size, size);
+  }
+
+  @Benchmark
+  public double[] matrixMultiplyParallel() {
+    return ArrayOperations.matrixMultiply(left, right, size, size, size, pool);
+  }
+
+  @Benchmark
+  public double[] matrixMultiplyTransposed() {
+    return ArrayOperations.matrixMultiplyTransposed(left, rightTransposed, size, size, size);
+  }
+
+  @Benchmark
+  public double[] matrixPower() {
+    return ArrayOperations.matrixPower(left, size, 1000000L, null);
+  }
+
+  @Benchmark
+  public Double[][] matrixMultiplyBoxed() {
+    return ArrayOperations.matrixMultiply(boxedLeft, boxedRight);
+  }
+}
@@ -0,0 +1,65 @@
+package main.java.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.HMM1;
+import main.java.HMM2;
+import main.java.helpers.ForwardBackward;
+import main.java.helpers.HMMModel;
+import main.java.helpers.SufficientStatistics;
+
+/**
+ * Sparse against dense transitions on left-to-right models with 4 nonzeros per
+ * row: forward pass, Viterbi and the fused expectation step.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SparseBenchmark {
+  @Param({"sparse", "dense"})
+  public String representation;
+  @Param({"64", "256"})
+  public int numStates;
+  @Param({"10000"})
+  public int numEmissions;
+
+  private HMMModel model;
+  private int[] emissions;
+
+  @Setup
+  public void setup() {
+    model = SyntheticModels.banded(numStates, 16, 4, 42);
+    model.useSparseTransitions(representation.equals("sparse"));
+    emissions = SyntheticModels.sequence(model, numEmissions, 43);
+  }
+
+  @Benchmark
+  public double logLikelihood() {
+    return HMM1.logLikelihood(model, emissions);
+  }
+
+  @Benchmark
+  public int[] deltaPass() {
+    return HMM2.deltaPass(model, emissions);
+  }
+
+  @Benchmark
+  public SufficientStatistics fusedExpectation() {
+    return ForwardBackward.expectation(model, emissions);
+  }
+}
@@ -0,0 +1,95 @@
+package main.java.bench;
+
+import java.util.Random;
+
+import main.java.helpers.HMMModel;
+
+/**
+ * Seeded generators for benchmark inputs, so every run measures the same models
+ * and sequences.
+ */
+public class SyntheticModels {
+  /**
+   * Function that builds a random model whose rows are proper distributions. Every
+   * entry is kept away from zero so that no path becomes impossible.
+   * @param  numStates N.
+   * @param  numSymbols M.
+   * @param  seed The random seed.
+   * @return The model.
+   */
+  public static HMMModel model(int numStates, int numSymbols, long seed) {
+    Random random = new Random(seed);
+    HMMModel model = new HMMModel(numStates, numSymbols);
+    for (int i = 0; i < numStates; i++) {
+      fillDistribution(random, model.a, i * numStates, numStates);
+      fillDistribution(random, model.b, i * numSymbols, numSymbols);
+    }
+    fillDistribution(random, model.pi, 0, numStates);
+    return model;
+  }
+
+  /**
+   * Function that builds a random left-to-right model: state i only moves to
+   * states i ... i + bandwidth - 1, and the last state returns to the first, so
+   * sequences of any length stay possible.
+   * @param  numStates N.
+   * @param  numSymbols M.
+   * @param  bandwidth Number of nonzeros per row of A.
+   * @param  seed The random seed.
+   * @return The model, with dense transitions selected.
+   */
+  public static HMMModel banded(int numStates, int numSymbols, int bandwidth, long seed) {
+    Random random = new Random(seed);
+    HMMModel model = new HMMModel(numStates, numSymbols);
+    for (int i = 0; i < numStates; i++) {
+      int width = Math.min(bandwidth, numStates - i);
+      fillDistribution(random, model.a, i * numStates + i, width);
+      fillDistribution(random, model.b, i * numSymbols, numSymbols);
+    }
+    int lastRow = (numStates - 1) * numStates;
+    model.a[lastRow + numStates - 1] = 0.5;
+    model.a[lastRow] += 0.5;
+    fillDistribution(random, model.pi, 0, numStates);
+    return model;
+  }
+
+  /**
+   * Function that samples an emission sequence from a model.
+   * @param  model The model to sample from.
+   * @param  length T.
+   * @param  seed The random seed.
+   * @return The emission sequence.
+   */
+  public static int[] sequence(HMMModel model, int length, long seed) {
+    Random random = new Random(seed);
+    int[] emissions = new int[length];
+    int state = sample(random, model.pi, 0, model.numStates);
+    for (int step = 0; step < length; step++) {
+      emissions[step] = sample(random, model.b, state * model.bStride, model.numSymbols);
+      state = sample(random, model.a, state * model.aStride, model.numStates);
+    }
+    return emissions;
+  }
+
+  private static void fillDistribution(Random random, double[] values, int offset, int length) {
+    double sum = 0.0;
+    for (int idx = 0; idx < length; idx++) {
+      values[offset + idx] = 0.05 + random.nextDouble();
+      sum += values[offset + idx];
+    }
+    for (int idx = 0; idx < length; idx++) {
+      values[offset + idx] /= sum;
+    }
+  }
+
+  private static int sample(Random random, double[] values, int offset, int length) {
+    double target = random.nextDouble();
+    for (int idx = 0; idx < length - 1; idx++) {
+      target -= values[offset + idx];
+      if (target < 0) {
+        return idx;
+      }
+    }
+    return length - 1;
+  }
+}
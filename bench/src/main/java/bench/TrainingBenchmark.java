@@ -0,0 +1,81 @@
+package main.java.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.HMM3;
+import main.java.helpers.FlatAlphaPass;
+import main.java.helpers.FlatGamma;
+import main.java.helpers.ForwardBackward;
+import main.java.helpers.HMMModel;
+import main.java.helpers.SufficientStatistics;
+
+/**
+ * One Baum-Welch iteration split into its kernels: HMM3.computeGamma and
+ * HMM3.reEstimate of the materialized path, against the fused and checkpointed
+ * expectation steps. The sequences are shorter than in the other benchmarks since
+ * the materialized di-gamma tensor takes N*N*T doubles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TrainingBenchmark {
+  @Param({"8", "50"})
+  public int numStates;
+  @Param({"8", "32"})
+  public int numSymbols;
+  @Param({"1000", "10000"})
+  public int numEmissions;
+
+  private HMMModel model;
+  private HMMModel scratchModel;
+  private int[] emissions;
+  private FlatAlphaPass alpha;
+  private double[] beta;
+  private FlatGamma gamma;
+
+  @Setup
+  public void setup() {
+    model = SyntheticModels.model(numStates, numSymbols, 42);
+    scratchModel = model.copy();
+    emissions = SyntheticModels.sequence(model, numEmissions, 43);
+    alpha = HMM3.alphaPassScale(model, emissions);
+    beta = HMM3.betaPassScale(model, emissions, alpha.scalingFactors);
+    gamma = HMM3.computeGamma(model, emissions, alpha, beta);
+  }
+
+  @Benchmark
+  public FlatGamma computeGamma() {
+    return HMM3.computeGamma(model, emissions, alpha, beta);
+  }
+
+  @Benchmark
+  public HMMModel reEstimate() {
+    HMM3.reEstimate(scratchModel, gamma, emissions);
+    return scratchModel;
+  }
+
+  @Benchmark
+  public SufficientStatistics fusedExpectation() {
+    return ForwardBackward.expectation(model, emissions);
+  }
+
+  @Benchmark
+  public SufficientStatistics checkpointedExpectation() {
+    return ForwardBackward.checkpointedExpectation(model, emissions, 0);
+  }
+}
@@ -0,0 +1,55 @@
+package main.java.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.java.HMM2;
+import main.java.helpers.HMMModel;
+
+/**
+ * Decoding: HMM2.deltaPass, exact and with a beam.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ViterbiBenchmark {
+  @Param({"8", "50"})
+  public int numStates;
+  @Param({"8", "32"})
+  public int numSymbols;
+  @Param({"1000", "100000"})
+  public int numEmissions;
+
+  private HMMModel model;
+  private int[] emissions;
+
+  @Setup
+  public void setup() {
+    model = SyntheticModels.model(numStates, numSymbols, 42);
+    emissions = SyntheticModels.sequence(model, numEmissions, 43);
+  }
+
+  @Benchmark
+  public int[] deltaPass() {
+    return HMM2.deltaPass(model, emissions);
+  }
+
+  @Benchmark
+  public int[] deltaPassBeam() {
+    return HMM2.deltaPass(model, emissions, 10.0);
+  }
+}
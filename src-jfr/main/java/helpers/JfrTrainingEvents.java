@@ -0,0 +1,43 @@
+package main.java.helpers;
+
+import jdk.jfr.EventType;
+
+/**
+ * Records training iterations as TrainingIterationEvent.
+ *
+ * Lives in src-jfr/ because jdk.jfr needs JDK 11+, while the rest of the tree
+ * targets Java 10. Loaded reflectively by TrainingEvents.
+ */
+class JfrTrainingEvents extends TrainingEvents {
+  private static final EventType TYPE = EventType.getEventType(TrainingIterationEvent.class);
+
+  @Override
+  Object begin() {
+    if (!TYPE.isEnabled()) {
+      return null;
+    }
+    TrainingIterationEvent event = new TrainingIterationEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void commit(Object started, IterationMetrics metrics) {
+    TrainingIterationEvent event = (TrainingIterationEvent) started;
+    event.end();
+    if (event.shouldCommit()) {
+      event.iteration = metrics.iteration;
+      event.logProb = metrics.logProb;
+      event.delta = metrics.delta;
+      event.alphaNanos = metrics.alphaNanos;
+      event.betaNanos = metrics.betaNanos;
+      event.gammaNanos = metrics.gammaNanos;
+      event.reEstimateNanos = metrics.reEstimateNanos;
+      event.allocatedBytes = metrics.allocatedBytes;
+      event.transitionChange = metrics.transitionChange;
+      event.emissionChange = metrics.emissionChange;
+      event.initialChange = metrics.initialChange;
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package main.java.helpers;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event spanning one iteration of HMM3.trainModel, with the fields
+ * of IterationMetrics. Disabled by default, enable it in a recording with
+ * hmm.TrainingIteration#enabled=true.
+ */
+@Name("hmm.TrainingIteration")
+@Label("HMM Training Iteration")
+@Category({"HMM", "Training"})
+@Description("One expectation and re-estimation iteration of Baum-Welch")
+@StackTrace(false)
+@Enabled(false)
+class TrainingIterationEvent extends jdk.jfr.Event {
+  @Label("Iteration")
+  int iteration;
+
+  @Label("Log Probability")
+  @Description("Log probability of the training data before re-estimation")
+  double logProb;
+
+  @Label("Delta")
+  @Description("Change of the log probability since the previous iteration")
+  double delta;
+
+  @Label("Alpha Pass")
+  @Timespan(Timespan.NANOSECONDS)
+  long alphaNanos;
+
+  @Label("Beta Pass")
+  @Timespan(Timespan.NANOSECONDS)
+  long betaNanos;
+
+  @Label("Gamma Pass")
+  @Timespan(Timespan.NANOSECONDS)
+  long gammaNanos;
+
+  @Label("Re-estimation")
+  @Timespan(Timespan.NANOSECONDS)
+  long reEstimateNanos;
+
+  @Label("Allocated")
+  @Description("Bytes allocated by the training thread, -1 if not counted")
+  @DataAmount(DataAmount.BYTES)
+  long allocatedBytes;
+
+  @Label("Transition Change")
+  @Description("Largest absolute change of an entry of A")
+  double transitionChange;
+
+  @Label("Emission Change")
+  @Description("Largest absolute change of an entry of B")
+  double emissionChange;
+
+  @Label("Initial Change")
+  @Description("Largest absolute change of an entry of pi")
+  double initialChange;
+}
@@ -0,0 +1,115 @@
+package main.java;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import main.java.helpers.HMMModel;
+import main.java.helpers.TestModels;
+import main.java.helpers.TrainingOptions;
+import main.java.helpers.TrainingResult;
+import org.junit.jupiter.api.Test;
+
+public class HMM3Test {
+  private static final double TOLERANCE = 1e-12;
+
+  /**
+   * The fused expectation step must train to the same model as the original
+   * alpha, beta, gamma and re-estimation passes.
+   */
+  @Test
+  public void fusedMatchesMaterialized() {
+    HMMModel truth = TestModels.model(5, 4, 1);
+    int[] emissions = TestModels.sequence(truth, 2000, 2);
+    HMMModel fused = TestModels.model(5, 4, 3);
+    HMMModel materialized = fused.copy();
+
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 20;
+    TrainingResult fusedResult = HMM3.trainModel(fused, emissions, options);
+    options.materializeGamma = true;
+    TrainingResult materializedResult = HMM3.trainModel(materialized, emissions, options);
+
+    assertEquals(materializedResult.iterations, fusedResult.iterations);
+    assertEquals(materializedResult.logProb, fusedResult.logProb,
+                 TOLERANCE * Math.abs(materializedResult.logProb));
+    TestModels.assertClose(materialized, fused, TOLERANCE);
+  }
+
+  @Test
+  public void fusedMatchesMaterializedWithSparseTransitions() {
+    HMMModel truth = TestModels.model(6, 3, 4);
+    int[] emissions = TestModels.sequence(truth, 1000, 5);
+    HMMModel fused = TestModels.model(6, 3, 6);
+    for (int i = 0; i < 6; i++) {
+      fused.a[i * 6 + (i + 3) % 6] = 0.0;
+    }
+    fused.useSparseTransitions(true);
+    HMMModel materialized = fused.copy();
+
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 10;
+    TrainingResult fusedResult = HMM3.trainModel(fused, emissions, options);
+    options.materializeGamma = true;
+    TrainingResult materializedResult = HMM3.trainModel(materialized, emissions, options);
+
+    assertEquals(materializedResult.logProb, fusedResult.logProb,
+                 TOLERANCE * Math.abs(materializedResult.logProb));
+    TestModels.assertClose(materialized, fused, TOLERANCE);
+  }
+
+  /**
+   * Re-estimating from no emissions would divide 0 by 0, so the caller's model must
+   * be left untouched.
+   */
+  @Test
+  public void rejectsSequencesWithoutEmissions() {
+    HMMModel model = TestModels.model(3, 2, 8);
+    HMMModel original = model.copy();
+    TrainingOptions options = new TrainingOptions();
+    assertThrows(IllegalArgumentException.class,
+                 () -> HMM3.trainModel(model, new ArrayList<int[]>(), options));
+    List<int[]> empty = Arrays.asList(new int[0], new int[0]);
+    assertThrows(IllegalArgumentException.class, () -> HMM3.trainModel(model, empty, options));
+    assertThrows(IllegalArgumentException.class,
+                 () -> HMM3.trainModel(model, new int[0], options));
+    options.materializeGamma = true;
+    assertThrows(IllegalArgumentException.class,
+                 () -> HMM3.trainModel(model, new int[0], options));
+    TestModels.assertClose(original, model, 0.0);
+  }
+
+  /**
+   * Training on a list holding one sequence is the same as training on the
+   * sequence, and empty sequences in the list contribute nothing.
+   */
+  @Test
+  public void multiSequenceMatchesSingleSequence() {
+    HMMModel truth = TestModels.model(4, 3, 9);
+    int[] emissions = TestModels.sequence(truth, 500, 10);
+    HMMModel single = TestModels.model(4, 3, 11);
+    HMMModel multi = single.copy();
+
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 15;
+    TrainingResult singleResult = HMM3.trainModel(single, emissions, options);
+    TrainingResult multiResult = HMM3.trainModel(multi,
+                                                 Arrays.asList(new int[0], emissions, new int[0]),
+                                                 options);
+
+    assertEquals(singleResult.logProb, multiResult.logProb, 0.0);
+    TestModels.assertClose(single, multi, 0.0);
+  }
+
+  @Test
+  public void materializedCannotBeCheckpointed() {
+    HMMModel model = TestModels.model(3, 2, 7);
+    TrainingOptions options = new TrainingOptions();
+    options.materializeGamma = true;
+    options.checkpointed = true;
+    assertThrows(IllegalArgumentException.class,
+                 () -> HMM3.trainModel(model, new int[] {0, 1, 0}, options));
+  }
+}
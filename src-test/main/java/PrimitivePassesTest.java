@@ -0,0 +1,133 @@
+package main.java;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import main.java.helpers.AlphaPass;
+import main.java.helpers.ArrayOperations;
+import main.java.helpers.FlatAlphaPass;
+import main.java.helpers.HMMModel;
+import main.java.helpers.Kernels;
+import main.java.helpers.TestModels;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The primitive passes keep the summation order of the original boxed loops, so
+ * with the scalar kernels their results are bit-identical. The reference loops
+ * below are the original Double[][] implementations.
+ */
+public class PrimitivePassesTest {
+  @Test
+  public void alphaPassIsBitIdentical() {
+    HMMModel model = TestModels.model(6, 4, 1);
+    int[] emissions = TestModels.sequence(model, 40, 2);
+    Double[][] A = ArrayOperations.toMatrix(model.a, 6, 6);
+    Double[][] B = ArrayOperations.toMatrix(model.b, 6, 4);
+    Double[][] pi = ArrayOperations.toMatrix(model.pi, 1, 6);
+
+    double expected = referenceAlphaPass(A, B, pi, emissions);
+    assertEquals(expected, HMM1.alphaPass(model, emissions), 0.0);
+    assertEquals(expected, HMM1.alphaPass(A, B, pi, emissions), 0.0);
+  }
+
+  @Test
+  public void alphaPassScaleIsBitIdentical() {
+    HMMModel model = TestModels.model(7, 3, 3);
+    int[] emissions = TestModels.sequence(model, 200, 4);
+    Double[][] A = ArrayOperations.toMatrix(model.a, 7, 7);
+    Double[][] B = ArrayOperations.toMatrix(model.b, 7, 3);
+    Double[][] pi = ArrayOperations.toMatrix(model.pi, 1, 7);
+
+    double[] expectedScales = new double[emissions.length];
+    Double[][] expectedAlpha = referenceAlphaPassScale(A, B, pi, emissions, expectedScales);
+    FlatAlphaPass actual = HMM3.alphaPassScale(model, emissions, Kernels.forName("scalar"));
+    assertArrayEquals(expectedScales, actual.scalingFactors);
+    for (int step = 0; step < emissions.length; step++) {
+      for (int i = 0; i < 7; i++) {
+        assertEquals(expectedAlpha[i][step], actual.alphaMat[step * 7 + i], 0.0);
+      }
+    }
+
+    AlphaPass boxed = HMM3.alphaPassScale(A, B, pi, emissions);
+    for (int step = 0; step < emissions.length; step++) {
+      assertEquals(expectedScales[step], boxed.scalingFactors[step],
+                   1e-13 * expectedScales[step]);
+    }
+  }
+
+  /**
+   * The Double[][] training adapter writes the trained primitive model back.
+   */
+  @Test
+  public void boxedTrainingMatchesPrimitive() {
+    HMMModel truth = TestModels.model(3, 3, 5);
+    int[] emissions = TestModels.sequence(truth, 500, 6);
+    HMMModel model = TestModels.model(3, 3, 7);
+    Double[][] A = ArrayOperations.toMatrix(model.a, 3, 3);
+    Double[][] B = ArrayOperations.toMatrix(model.b, 3, 3);
+    Double[][] pi = ArrayOperations.toMatrix(model.pi, 1, 3);
+
+    HMM3.trainModel(model, emissions);
+    HMM3.trainModel(A, B, pi, emissions);
+    TestModels.assertClose(model.a, ArrayOperations.flatten(A), 0.0, "A");
+    TestModels.assertClose(model.b, ArrayOperations.flatten(B), 0.0, "B");
+    TestModels.assertClose(model.pi, ArrayOperations.flatten(pi), 0.0, "pi");
+  }
+
+  private static double referenceAlphaPass(Double[][] A, Double[][] B, Double[][] pi,
+                                           int[] emissions) {
+    int numStates = A.length;
+    int numEmissions = emissions.length;
+    Double[][] alphaMat = new Double[numStates][numEmissions];
+    for (int step = 0; step < numEmissions; step++) {
+      for (int i = 0; i < numStates; i++) {
+        if (step == 0) {
+          alphaMat[i][step] = B[i][emissions[step]] * pi[0][i];
+        } else {
+          Double transitionSum = 0.0;
+          for (int j = 0; j < numStates; j++) {
+            transitionSum += A[j][i] * alphaMat[j][step-1];
+          }
+          alphaMat[i][step] = B[i][emissions[step]] * transitionSum;
+        }
+      }
+    }
+    double probSum = 0.0;
+    for (int i = 0; i < numStates; i++) {
+      probSum += alphaMat[i][numEmissions-1];
+    }
+    return probSum;
+  }
+
+  private static Double[][] referenceAlphaPassScale(Double[][] A, Double[][] B, Double[][] pi,
+                                                    int[] emissions, double[] scalingFactors) {
+    int numStates = A.length;
+    int numEmissions = emissions.length;
+    Double[][] alphaMat = new Double[numStates][numEmissions];
+    Double c;
+    for (int step = 0; step < numEmissions; step++) {
+      c = 0.0;
+      for (int i = 0; i < numStates; i++) {
+        if (step == 0) {
+          alphaMat[i][step] = B[i][emissions[step]] * pi[0][i];
+          c += alphaMat[i][step];
+        } else {
+          Double transitionSum = 0.0;
+          for (int j = 0; j < numStates; j++) {
+            transitionSum += A[j][i] * alphaMat[j][step-1];
+          }
+          alphaMat[i][step] = B[i][emissions[step]] * transitionSum;
+          c += alphaMat[i][step];
+        }
+        if (i == numStates-1) {
+          c = 1/c;
+          for (int scaleI = 0; scaleI < numStates; scaleI++) {
+            alphaMat[scaleI][step] *= c;
+          }
+        }
+      }
+      scalingFactors[step] = c;
+    }
+    return alphaMat;
+  }
+}
@@ -0,0 +1,93 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import main.java.HMM0;
+import org.junit.jupiter.api.Test;
+
+public class ArrayOperationsTest {
+  /**
+   * The blocked kernels still sum every cell in ascending k, so they must be
+   * bit-identical to the textbook loops, also across block boundaries.
+   */
+  @Test
+  public void blockedMultiplyIsExact() {
+    Random random = new Random(1);
+    int numRows = 70;
+    int numMultiplications = 130;
+    int numCols = 67;
+    double[] left = randomMatrix(random, numRows * numMultiplications);
+    double[] right = randomMatrix(random, numMultiplications * numCols);
+    double[] expected = naiveMultiply(left, right, numRows, numMultiplications, numCols);
+
+    assertArrayEquals(expected, ArrayOperations.matrixMultiply(left, right, numRows,
+                                                               numMultiplications, numCols));
+    double[] rightTransposed = ArrayOperations.transpose(right, numMultiplications, numCols);
+    assertArrayEquals(expected, ArrayOperations.matrixMultiplyTransposed(left, rightTransposed,
+                                                                         numRows,
+                                                                         numMultiplications,
+                                                                         numCols));
+    ForkJoinPool pool = new ForkJoinPool(3);
+    assertArrayEquals(expected, ArrayOperations.matrixMultiply(left, right, numRows,
+                                                               numMultiplications, numCols,
+                                                               pool));
+    pool.shutdown();
+    assertArrayEquals(expected, ArrayOperations.matrixMultiply(left, right, numRows,
+                                                               numMultiplications, numCols,
+                                                               null));
+  }
+
+  @Test
+  public void matrixPowerMatchesRepeatedProducts() {
+    HMMModel model = TestModels.model(6, 2, 2);
+    double[] expected = model.a;
+    for (int power = 2; power <= 13; power++) {
+      expected = naiveMultiply(expected, model.a, 6, 6, 6);
+    }
+    TestModels.assertClose(expected, ArrayOperations.matrixPower(model.a, 6, 13, null), 1e-15,
+                           "A^13");
+
+    double[] identity = ArrayOperations.matrixPower(model.a, 6, 0, null);
+    for (int i = 0; i < 6; i++) {
+      for (int j = 0; j < 6; j++) {
+        assertEquals(i == j ? 1.0 : 0.0, identity[i * 6 + j], 0.0);
+      }
+    }
+    assertThrows(IllegalArgumentException.class,
+                 () -> ArrayOperations.matrixPower(model.a, 6, -1, null));
+  }
+
+  @Test
+  public void forecastOneStepAhead() {
+    HMMModel model = TestModels.model(5, 4, 3);
+    TestModels.assertClose(HMM0.nextEmissionDistribution(model),
+                           HMM0.emissionDistribution(model, 1, null), 1e-15, "pi A B");
+  }
+
+  private static double[] randomMatrix(Random random, int size) {
+    double[] mat = new double[size];
+    for (int idx = 0; idx < size; idx++) {
+      mat[idx] = random.nextDouble() - 0.5;
+    }
+    return mat;
+  }
+
+  private static double[] naiveMultiply(double[] mat1, double[] mat2, int numRows,
+                                        int numMultiplications, int numCols) {
+    double[] outputMat = new double[numRows * numCols];
+    for (int i = 0; i < numRows; i++) {
+      for (int j = 0; j < numCols; j++) {
+        double sum = 0.0;
+        for (int k = 0; k < numMultiplications; k++) {
+          sum += mat1[i * numMultiplications + k] * mat2[k * numCols + j];
+        }
+        outputMat[i * numCols + j] = sum;
+      }
+    }
+    return outputMat;
+  }
+}
@@ -0,0 +1,90 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import main.java.HMM1;
+import org.junit.jupiter.api.Test;
+
+public class BatchScorerTest {
+  private static final double TOLERANCE = 1e-13;
+
+  /**
+   * Lengths repeat often enough to fill several blocks of 64, and the block sizes
+   * are not all multiples of the four sequences scored per load of A.
+   */
+  @Test
+  public void matchesSequentialScoring() {
+    HMMModel model = TestModels.model(7, 5, 1);
+    assertMatchesSequentialScoring(model, sequences(model, 300, 2));
+  }
+
+  @Test
+  public void matchesSequentialScoringWithSparseTransitions() {
+    HMMModel model = TestModels.model(9, 4, 3);
+    for (int i = 0; i < 9; i++) {
+      for (int j = 0; j < 9; j++) {
+        if (Math.abs(i - j) > 1) {
+          model.a[i * 9 + j] = 0.0;
+        }
+      }
+    }
+    model.useSparseTransitions(true);
+    assertMatchesSequentialScoring(model, sequences(TestModels.model(9, 4, 4), 200, 5));
+  }
+
+  /**
+   * The scaling sums are multiplied into a mantissa and exponent, which must not
+   * underflow however long the sequences are.
+   */
+  @Test
+  public void matchesSequentialScoringOnLongSequences() {
+    HMMModel model = TestModels.model(6, 8, 8);
+    int[][] sequences = new int[9][];
+    for (int idx = 0; idx < sequences.length; idx++) {
+      sequences[idx] = TestModels.sequence(model, 20000 + idx % 3, idx);
+    }
+    assertMatchesSequentialScoring(model, sequences);
+  }
+
+  @Test
+  public void scoresOnAnyPool() {
+    HMMModel model = TestModels.model(5, 3, 6);
+    int[][] sequences = sequences(model, 150, 7);
+    BatchScorer scorer = new BatchScorer(model);
+    double[] expected = scorer.logLikelihoods(sequences, null);
+    ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      assertArrayEquals(expected, scorer.logLikelihoods(sequences, pool));
+      assertArrayEquals(expected, scorer.logLikelihoods(Arrays.asList(sequences), pool));
+      assertArrayEquals(expected, HMM1.logLikelihoods(model, Arrays.asList(sequences), pool));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static void assertMatchesSequentialScoring(HMMModel model, int[][] sequences) {
+    double[] actual = new BatchScorer(model).logLikelihoods(sequences, null);
+    assertEquals(sequences.length, actual.length);
+    for (int idx = 0; idx < sequences.length; idx++) {
+      double expected = HMM1.logLikelihood(model, sequences[idx]);
+      assertEquals(expected, actual[idx], TOLERANCE * Math.abs(expected), "sequence " + idx);
+    }
+  }
+
+  /**
+   * Sequences of 1 to 40 emissions, with a few lengths shared by many of them.
+   */
+  private static int[][] sequences(HMMModel model, int count, long seed) {
+    Random random = new Random(seed);
+    int[][] sequences = new int[count][];
+    for (int idx = 0; idx < count; idx++) {
+      int length = random.nextBoolean() ? 1 + random.nextInt(40) : 10 + 10 * random.nextInt(2);
+      sequences[idx] = TestModels.sequence(model, length, seed * 1000 + idx);
+    }
+    return sequences;
+  }
+}
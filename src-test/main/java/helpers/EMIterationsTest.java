@@ -0,0 +1,153 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import org.junit.jupiter.api.Test;
+
+public class EMIterationsTest {
+  @Test
+  public void stopsAtMaxIters() {
+    int[] emissions = sequence();
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 7;
+    TrainingResult result = EMIterations.run(TestModels.model(4, 3, 3), step(emissions),
+                                             options);
+    assertEquals(7, result.iterations);
+    assertFalse(result.converged);
+  }
+
+  /**
+   * The first iteration always gains on -Double.MAX_VALUE, the second gains less
+   * than any sensible tolerance this large.
+   */
+  @Test
+  public void stopsOnTolerances() {
+    int[] emissions = sequence();
+    TrainingOptions options = new TrainingOptions();
+    options.absoluteTolerance = 1e6;
+    TrainingResult result = EMIterations.run(TestModels.model(4, 3, 3), step(emissions),
+                                             options);
+    assertEquals(2, result.iterations);
+    assertTrue(result.converged);
+
+    options.absoluteTolerance = 0.0;
+    options.relativeTolerance = 0.5;
+    result = EMIterations.run(TestModels.model(4, 3, 3), step(emissions), options);
+    assertEquals(2, result.iterations);
+    assertTrue(result.converged);
+  }
+
+  @Test
+  public void stopsWhenTheBudgetRunsOut() {
+    int[] emissions = sequence();
+    TrainingOptions options = new TrainingOptions();
+    options.timeBudgetMillis = 20;
+    ToDoubleFunction<HMMModel> step = step(emissions);
+    TrainingResult result = EMIterations.run(TestModels.model(4, 3, 3), model -> {
+      sleep(15);
+      return step.applyAsDouble(model);
+    }, options);
+    assertTrue(result.iterations >= 1 && result.iterations <= 2, "" + result.iterations);
+    assertFalse(result.converged);
+  }
+
+  /**
+   * A jump is only kept when it does not lower the log probability, so the steps
+   * taken from the model being trained never lose log probability, and SQUAREM meets
+   * the tolerance in fewer steps. On this problem plain EM crawls and stops at a
+   * lower log probability.
+   */
+  @Test
+  public void accelerationIsMonotoneAndFaster() {
+    int[] emissions = sequence();
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 5000;
+    options.relativeTolerance = 1e-10;
+    HMMModel plain = TestModels.model(4, 3, 3);
+    TrainingResult plainResult = EMIterations.run(plain, step(emissions), options);
+
+    options.accelerated = true;
+    HMMModel accelerated = TestModels.model(4, 3, 3);
+    List<Double> logProbs = new ArrayList<>();
+    ToDoubleFunction<HMMModel> step = step(emissions);
+    TrainingResult acceleratedResult = EMIterations.run(accelerated, model -> {
+      double logProb = step.applyAsDouble(model);
+      if (model == accelerated) {
+        logProbs.add(logProb);
+      }
+      return logProb;
+    }, options);
+
+    for (int idx = 1; idx < logProbs.size(); idx++) {
+      double previous = logProbs.get(idx - 1);
+      assertTrue(logProbs.get(idx) >= previous - 1e-12 * Math.abs(previous),
+                 "step " + idx + ": " + logProbs.get(idx) + " < " + logProbs.get(idx - 1));
+    }
+    assertTrue(plainResult.converged && acceleratedResult.converged);
+    assertTrue(acceleratedResult.iterations < plainResult.iterations,
+               acceleratedResult.iterations + " >= " + plainResult.iterations);
+    double slack = 1e-6 * Math.abs(plainResult.logProb);
+    assertTrue(acceleratedResult.logProb >= plainResult.logProb - slack,
+               acceleratedResult.logProb + " < " + plainResult.logProb);
+  }
+
+  /**
+   * The projected jump is a valid model that keeps the zeros of the EM iterate.
+   */
+  @Test
+  public void extrapolationKeepsDistributions() {
+    int[] emissions = sequence();
+    HMMModel theta0 = TestModels.model(4, 3, 4);
+    for (int i = 0; i < 4; i++) {
+      theta0.a[i * 4 + (i + 1) % 4] = 0.0;
+    }
+    HMMModel theta1 = theta0.copy();
+    step(emissions).applyAsDouble(theta1);
+    HMMModel theta2 = theta1.copy();
+    step(emissions).applyAsDouble(theta2);
+    HMMModel jump = theta0.copy();
+    double stepLength = EMIterations.extrapolate(theta0, theta1, theta2, jump, 64.0);
+
+    assertTrue(stepLength >= 1.0 && stepLength <= 64.0);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(0.0, jump.a[i * 4 + (i + 1) % 4], 0.0);
+      assertEquals(1.0, sum(jump.a, i * 4, 4), 1e-12);
+      assertEquals(1.0, sum(jump.b, i * 3, 3), 1e-12);
+    }
+    assertEquals(1.0, sum(jump.pi, 0, 4), 1e-12);
+    assertEquals(0.0, EMIterations.extrapolate(theta0, theta0, theta0, jump, 64.0), 0.0);
+  }
+
+  private static int[] sequence() {
+    return TestModels.sequence(TestModels.model(4, 3, 1), 1000, 2);
+  }
+
+  private static ToDoubleFunction<HMMModel> step(int[] emissions) {
+    return model -> {
+      SufficientStatistics stats = ForwardBackward.expectation(model, emissions);
+      stats.reEstimate(model);
+      return stats.logProb;
+    };
+  }
+
+  private static double sum(double[] values, int offset, int length) {
+    double sum = 0.0;
+    for (int idx = 0; idx < length; idx++) {
+      sum += values[offset + idx];
+    }
+    return sum;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import main.java.HMM3;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class EmissionFileTest {
+  @TempDir
+  Path directory;
+
+  /**
+   * Alphabets of up to 256, 65536 and more symbols are packed in bytes, shorts and
+   * ints.
+   */
+  @Test
+  public void roundTripsEveryWidth() throws IOException {
+    for (int numSymbols : new int[] {2, 256, 300, 70000}) {
+      int[] emissions = {0, numSymbols - 1, numSymbols / 2, 1, 0};
+      Path path = directory.resolve("emissions" + numSymbols);
+      assertEquals(emissions.length,
+                   EmissionFile.write(path, numSymbols, Arrays.stream(emissions).iterator()));
+      EmissionFile file = EmissionFile.map(path);
+      assertEquals(numSymbols, file.numSymbols);
+      assertEquals(emissions.length, file.length());
+      for (int step = 0; step < emissions.length; step++) {
+        assertEquals(emissions[step], file.get(step));
+      }
+    }
+  }
+
+  @Test
+  public void convertsText() throws IOException {
+    Path path = directory.resolve("converted");
+    byte[] text = "3 0 1\n2  1\t0\n".getBytes("US-ASCII");
+    assertEquals(6, EmissionFile.convert(new ByteArrayInputStream(text), path, 4));
+    EmissionFile file = EmissionFile.map(path);
+    int[] emissions = new int[6];
+    for (int step = 0; step < 6; step++) {
+      emissions[step] = file.get(step);
+    }
+    assertArrayEquals(new int[] {3, 0, 1, 2, 1, 0}, emissions);
+  }
+
+  /**
+   * Training over the mapping runs the same checkpointed pass as over the array,
+   * so the trained models are bit-identical.
+   */
+  @Test
+  public void trainsLikeTheArray() throws IOException {
+    HMMModel truth = TestModels.model(4, 3, 1);
+    int[] emissions = TestModels.sequence(truth, 3000, 2);
+    EmissionFile file = write(emissions, 3);
+    HMMModel fromArray = TestModels.model(4, 3, 3);
+    HMMModel fromFile = fromArray.copy();
+
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 10;
+    options.checkpointed = true;
+    TrainingResult expected = HMM3.trainModel(fromArray, emissions, options);
+    TrainingResult actual = HMM3.trainModel(fromFile, file, options);
+
+    assertEquals(expected.logProb, actual.logProb, 0.0);
+    TestModels.assertClose(fromArray, fromFile, 0.0);
+  }
+
+  @Test
+  public void decodesLikeTheArray() throws IOException {
+    HMMModel model = TestModels.model(5, 4, 4);
+    int[] emissions = TestModels.sequence(model, 2000, 5);
+    LogViterbi viterbi = new LogViterbi(model);
+    int[] expected = viterbi.decode(emissions);
+    EmissionFile states = viterbi.decode(write(emissions, 4), Double.POSITIVE_INFINITY,
+                                         directory, directory.resolve("states"));
+    assertEquals(expected.length, states.length());
+    for (int step = 0; step < expected.length; step++) {
+      assertEquals(expected[step], states.get(step));
+    }
+  }
+
+  /**
+   * A file over more symbols than the model would index past the rows of B.
+   */
+  @Test
+  public void rejectsLargerAlphabets() throws IOException {
+    HMMModel model = TestModels.model(2, 2, 6);
+    EmissionFile file = write(new int[] {0, 2, 1}, 3);
+    assertThrows(IllegalArgumentException.class,
+                 () -> HMM3.trainModel(model, file, new TrainingOptions()));
+    assertThrows(IllegalArgumentException.class,
+                 () -> new LogViterbi(model).decode(file, Double.POSITIVE_INFINITY, directory,
+                                                    directory.resolve("states")));
+  }
+
+  private EmissionFile write(int[] emissions, int numSymbols) throws IOException {
+    Path path = directory.resolve("emissions");
+    EmissionFile.write(path, numSymbols, Arrays.stream(emissions).iterator());
+    return EmissionFile.map(path);
+  }
+}
@@ -0,0 +1,117 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import main.java.HMM3;
+import org.junit.jupiter.api.Test;
+
+public class ForwardBackwardTest {
+  /**
+   * Bound on the difference between Baum-Welch with the float alpha store and in
+   * double, after 30 iterations, for A, B and pi.
+   */
+  private static final double SINGLE_PRECISION_DIVERGENCE = 1e-8;
+
+  /**
+   * Recomputing a segment from its checkpoint repeats the forward recursion
+   * exactly, so the counts only differ from the fused pass by the order in which
+   * they are summed.
+   */
+  @Test
+  public void checkpointedMatchesFused() {
+    HMMModel model = TestModels.model(6, 4, 6);
+    int[] emissions = TestModels.sequence(model, 1000, 7);
+    SufficientStatistics expected = ForwardBackward.expectation(model, emissions);
+    for (int interval : new int[] {0, 1, 7, 999, 1000, 1500}) {
+      SufficientStatistics actual = ForwardBackward.checkpointedExpectation(model, emissions,
+                                                                            interval);
+      assertEquals(expected.logProb, actual.logProb, 1e-12 * Math.abs(expected.logProb));
+      assertRelativelyClose(expected.initialGamma, actual.initialGamma, 1e-12);
+      assertRelativelyClose(expected.transitionCounts, actual.transitionCounts, 1e-12);
+      assertRelativelyClose(expected.transitionTotals, actual.transitionTotals, 1e-12);
+      assertRelativelyClose(expected.emissionCounts, actual.emissionCounts, 1e-12);
+      assertRelativelyClose(expected.gammaTotals, actual.gammaTotals, 1e-12);
+    }
+  }
+
+  @Test
+  public void checkpointedTrainingMatchesFused() {
+    HMMModel truth = TestModels.model(5, 3, 8);
+    int[] emissions = TestModels.sequence(truth, 3000, 9);
+    HMMModel fused = TestModels.model(5, 3, 10);
+    HMMModel checkpointed = fused.copy();
+
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 20;
+    TrainingResult expected = HMM3.trainModel(fused, emissions, options);
+    options.checkpointed = true;
+    options.checkpointInterval = 64;
+    TrainingResult actual = HMM3.trainModel(checkpointed, emissions, options);
+
+    assertEquals(expected.iterations, actual.iterations);
+    assertEquals(expected.logProb, actual.logProb, 1e-12 * Math.abs(expected.logProb));
+    TestModels.assertClose(fused, checkpointed, 1e-12);
+  }
+
+  /**
+   * The float store only rounds the stored alphas, so one step has exactly the log
+   * probability of the double step and expected counts within float precision.
+   */
+  @Test
+  public void singlePrecisionStepKeepsLogProb() {
+    HMMModel model = TestModels.model(16, 8, 1);
+    int[] emissions = TestModels.sequence(model, 5000, 2);
+    SufficientStatistics expected = ForwardBackward.expectation(model, emissions);
+    SufficientStatistics actual = ForwardBackward.singlePrecisionExpectation(model, emissions,
+                                                                             new Workspace());
+
+    assertEquals(expected.logProb, actual.logProb, 0.0);
+    assertRelativelyClose(expected.transitionCounts, actual.transitionCounts, 1e-7);
+    assertRelativelyClose(expected.emissionCounts, actual.emissionCounts, 1e-7);
+  }
+
+  @Test
+  public void singlePrecisionTrainingStaysClose() {
+    assertSinglePrecisionTrainingStaysClose(false);
+  }
+
+  @Test
+  public void singlePrecisionCheckpointedTrainingStaysClose() {
+    assertSinglePrecisionTrainingStaysClose(true);
+  }
+
+  private static void assertSinglePrecisionTrainingStaysClose(boolean checkpointed) {
+    HMMModel truth = TestModels.model(16, 8, 3);
+    int[] emissions = TestModels.sequence(truth, 20000, 4);
+    HMMModel reference = TestModels.model(16, 8, 5);
+    HMMModel single = reference.copy();
+
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 30;
+    options.checkpointed = checkpointed;
+    TrainingResult expected = HMM3.trainModel(reference, emissions, options);
+    options.singlePrecision = true;
+    TrainingResult actual = HMM3.trainModel(single, emissions, options);
+
+    assertEquals(expected.iterations, actual.iterations);
+    assertEquals(expected.logProb, actual.logProb, 1e-9 * Math.abs(expected.logProb));
+    TestModels.assertClose(reference, single, SINGLE_PRECISION_DIVERGENCE);
+  }
+
+  @Test
+  public void singlePrecisionIsNotMaterialized() {
+    TrainingOptions options = new TrainingOptions();
+    options.singlePrecision = true;
+    options.materializeGamma = true;
+    assertThrows(IllegalArgumentException.class, options::validate);
+  }
+
+  static void assertRelativelyClose(double[] expected, double[] actual, double tolerance) {
+    assertEquals(expected.length, actual.length);
+    for (int idx = 0; idx < expected.length; idx++) {
+      assertEquals(expected[idx], actual[idx], tolerance * Math.abs(expected[idx]),
+                   "[" + idx + "]");
+    }
+  }
+}
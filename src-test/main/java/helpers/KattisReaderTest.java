@@ -0,0 +1,104 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class KattisReaderTest {
+  /**
+   * The fast path must round exactly like Double.parseDouble, whichever way the
+   * number is written.
+   */
+  @Test
+  public void readsDoublesLikeParseDouble() throws IOException {
+    Random random = new Random(1);
+    StringBuilder text = new StringBuilder();
+    String[] tokens = new String[5000];
+    for (int idx = 0; idx < tokens.length; idx++) {
+      double value = random.nextDouble() * Math.pow(10, random.nextInt(12) - 6);
+      switch (idx % 5) {
+        case 0: tokens[idx] = Double.toString(value); break;
+        case 1: tokens[idx] = String.format(Locale.ROOT, "%.3f", value); break;
+        case 2: tokens[idx] = String.format(Locale.ROOT, "%.15g", value); break;
+        case 3: tokens[idx] = String.format(Locale.ROOT, "%.6e", -value); break;
+        default: tokens[idx] = Long.toString(random.nextInt(1000)) + "."; break;
+      }
+      text.append(tokens[idx]).append(idx % 7 == 0 ? "\n" : " ");
+    }
+    KattisReader reader = reader(text.toString());
+    for (String token : tokens) {
+      assertEquals(Double.parseDouble(token), reader.readDouble(), 0.0, token);
+    }
+    assertFalse(reader.hasNext());
+  }
+
+  /**
+   * Matrices and arrays written by KattisWriter read back exactly, also when they
+   * span several buffer fills.
+   */
+  @Test
+  public void roundTripsThroughTheWriter() throws IOException {
+    HMMModel model = TestModels.model(40, 300, 2);
+    int[] emissions = TestModels.sequence(model, 100000, 3);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    KattisWriter writer = new KattisWriter(bytes);
+    writer.writeMatrix(model.a, 40, 40);
+    writer.writeMatrix(model.b, 40, 300);
+    writer.writeMatrix(model.pi, 1, 40);
+    writer.writeLine(-1234.5);
+    writer.flush();
+    String text = new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+
+    KattisReader reader = reader(text + emissions.length + " "
+                                 + ArrayOperations.arrayToString(emissions));
+    HMMModel read = reader.readModel();
+    TestModels.assertClose(model, read, 0.0);
+    assertEquals(-1234.5, reader.readDouble(), 0.0);
+    assertArrayEquals(emissions, reader.readArray());
+    assertFalse(reader.hasNext());
+  }
+
+  @Test
+  public void writesTheSameTextAsArrayOperations() throws IOException {
+    HMMModel model = TestModels.model(3, 4, 4);
+    int[] emissions = {3, 0, 2, 1};
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    KattisWriter writer = new KattisWriter(bytes);
+    writer.writeMatrix(model.b, 3, 4);
+    writer.writeArray(emissions);
+    writer.flush();
+    assertEquals(ArrayOperations.matrixToString(model.b, 3, 4) + "\n"
+                 + ArrayOperations.arrayToString(emissions) + "\n",
+                 new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void readsDimensionsWrittenAsDoubles() throws IOException {
+    KattisReader reader = reader("2.0 1.00 0.25 0.75\n");
+    assertArrayEquals(new double[] {0.25, 0.75}, reader.readMatrix());
+    assertEquals(2, reader.numRows);
+    assertEquals(1, reader.numCols);
+  }
+
+  @Test
+  public void rejectsMalformedIntegers() throws IOException {
+    assertThrows(IOException.class, () -> reader("2.5").readInt());
+    assertThrows(IOException.class, () -> reader("x").readInt());
+    assertThrows(IOException.class, () -> reader("  ").readDouble());
+    assertTrue(reader(" 7").hasNext());
+  }
+
+  private static KattisReader reader(String text) {
+    return new KattisReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)));
+  }
+}
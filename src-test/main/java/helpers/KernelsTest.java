@@ -0,0 +1,151 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Random;
+import main.java.HMM3;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The vector kernels sum lane-wise and with fused multiply-adds, so they may differ
+ * from the scalar ones by a few ulps per term, never more. Lengths cover inputs
+ * shorter than a vector, exact multiples and a tail, at nonzero offsets.
+ */
+public class KernelsTest {
+  private static final int[] LENGTHS = {1, 3, 4, 8, 13, 64, 257};
+  private static final double TOLERANCE = 1e-13;
+
+  private final Kernels scalar = Kernels.forName("scalar");
+  private final Random random = new Random(1);
+  private Kernels vector;
+
+  @BeforeEach
+  public void loadVector() {
+    try {
+      vector = Kernels.forName("vector");
+    } catch (IllegalArgumentException e) {
+      vector = null;
+    }
+  }
+
+  @Test
+  public void dot() {
+    assumeVector();
+    for (int length : LENGTHS) {
+      double[] x = values(length + 2);
+      double[] y = values(length + 5);
+      double expected = scalar.dot(0.25, x, 2, y, 5, length);
+      assertEquals(expected, vector.dot(0.25, x, 2, y, 5, length),
+                   TOLERANCE * Math.abs(expected), "length " + length);
+    }
+  }
+
+  @Test
+  public void weightedDot() {
+    assumeVector();
+    for (int length : LENGTHS) {
+      double[] x = values(length + 1);
+      double[] y = values(length + 3);
+      double[] z = values(length);
+      double expected = scalar.dot(0.5, 0.75, x, 1, y, 3, z, 0, length);
+      assertEquals(expected, vector.dot(0.5, 0.75, x, 1, y, 3, z, 0, length),
+                   TOLERANCE * Math.abs(expected), "length " + length);
+    }
+  }
+
+  @Test
+  public void scaledProducts() {
+    assumeVector();
+    for (int length : LENGTHS) {
+      double[] x = values(length);
+      double[] y = values(length + 2);
+      double[] z = values(length + 1);
+      double[] expected = new double[length + 4];
+      double[] actual = new double[length + 4];
+      double expectedSum = scalar.scaledProducts(0.3, x, 0, y, 2, z, 1, 1.7, expected, 4,
+                                                 length);
+      double actualSum = vector.scaledProducts(0.3, x, 0, y, 2, z, 1, 1.7, actual, 4, length);
+      assertEquals(expectedSum, actualSum, TOLERANCE * Math.abs(expectedSum));
+      assertRelativelyClose(expected, actual);
+    }
+  }
+
+  @Test
+  public void axpy() {
+    assumeVector();
+    for (int length : LENGTHS) {
+      double[] x = values(length + 3);
+      double[] expected = values(length + 1);
+      double[] actual = expected.clone();
+      scalar.axpy(0.6, x, 3, expected, 1, length);
+      vector.axpy(0.6, x, 3, actual, 1, length);
+      assertRelativelyClose(expected, actual);
+    }
+  }
+
+  @Test
+  public void addProducts() {
+    assumeVector();
+    for (int length : LENGTHS) {
+      double[] x = values(length + 1);
+      double[] y = values(length + 2);
+      double[] expected = values(length + 3);
+      double[] actual = expected.clone();
+      scalar.addProducts(0.4, x, 1, y, 2, expected, 3, length);
+      vector.addProducts(0.4, x, 1, y, 2, actual, 3, length);
+      assertRelativelyClose(expected, actual);
+    }
+  }
+
+  /**
+   * The whole passes on the vector kernels against the scalar ones.
+   */
+  @Test
+  public void passes() {
+    assumeVector();
+    HMMModel model = TestModels.model(37, 5, 2);
+    int[] emissions = TestModels.sequence(model, 300, 3);
+    FlatAlphaPass expected = HMM3.alphaPassScale(model, emissions, scalar);
+    FlatAlphaPass actual = HMM3.alphaPassScale(model, emissions, vector);
+    assertRelativelyClose(expected.alphaMat, actual.alphaMat);
+    assertRelativelyClose(expected.scalingFactors, actual.scalingFactors);
+    assertRelativelyClose(HMM3.betaPassScale(model, emissions, expected.scalingFactors, scalar),
+                          HMM3.betaPassScale(model, emissions, expected.scalingFactors, vector));
+  }
+
+  /**
+   * A bad hmm.kernels falls back to the scalar kernels instead of failing the static
+   * initializer of Kernels.
+   */
+  @Test
+  public void unknownNamesFallBackToScalar() {
+    assertThrows(IllegalArgumentException.class, () -> Kernels.forName("Vector"));
+    assertSame(scalar, Kernels.select("Vector"));
+    assertSame(vector != null ? vector.getClass() : scalar.getClass(),
+               Kernels.select("vector").getClass());
+  }
+
+  private void assumeVector() {
+    assumeTrue(vector != null, "vector kernels unavailable");
+  }
+
+  private double[] values(int length) {
+    double[] values = new double[length];
+    for (int idx = 0; idx < length; idx++) {
+      values[idx] = random.nextDouble();
+    }
+    return values;
+  }
+
+  private static void assertRelativelyClose(double[] expected, double[] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int idx = 0; idx < expected.length; idx++) {
+      assertEquals(expected[idx], actual[idx], TOLERANCE * Math.abs(expected[idx]),
+                   "[" + idx + "]");
+    }
+  }
+}
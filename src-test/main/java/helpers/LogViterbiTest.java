@@ -0,0 +1,152 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import main.java.HMM2;
+import org.junit.jupiter.api.Test;
+
+public class LogViterbiTest {
+  /**
+   * On a short sequence every state path can be enumerated, and the decoded one
+   * must be the most likely.
+   */
+  @Test
+  public void findsTheMostLikelyPath() {
+    HMMModel model = TestModels.model(3, 4, 1);
+    int[] emissions = TestModels.sequence(model, 7, 2);
+    int[] path = new int[emissions.length];
+    int[] best = null;
+    double bestLogProb = Double.NEGATIVE_INFINITY;
+    int numPaths = (int) Math.pow(3, emissions.length);
+    for (int code = 0; code < numPaths; code++) {
+      int rest = code;
+      for (int step = 0; step < path.length; step++) {
+        path[step] = rest % 3;
+        rest /= 3;
+      }
+      double logProb = pathLogProb(model, emissions, path);
+      if (logProb > bestLogProb) {
+        bestLogProb = logProb;
+        best = path.clone();
+      }
+    }
+    assertArrayEquals(best, new LogViterbi(model).decode(emissions));
+  }
+
+  /**
+   * Up to N=256 the backpointers are bytes and above that shorts, and both must
+   * decode like the full delta table. Int backpointers need N > 65536.
+   */
+  @Test
+  public void matchesReferenceForByteAndShortBackpointers() {
+    for (int numStates : new int[] {5, 256, 300}) {
+      HMMModel model = TestModels.model(numStates, 6, numStates);
+      int[] emissions = TestModels.sequence(model, 150, numStates + 1);
+      assertArrayEquals(referenceDecode(model, emissions), new LogViterbi(model).decode(emissions),
+                        "N=" + numStates);
+    }
+  }
+
+  /**
+   * The probabilities of a sequence this long underflow in linear space, which
+   * used to leave every delta at 0 and the final argMax at -1.
+   */
+  @Test
+  public void decodesLongSequences() {
+    HMMModel model = TestModels.model(4, 3, 3);
+    int[] emissions = TestModels.sequence(model, 20000, 4);
+    int[] expected = referenceDecode(model, emissions);
+    assertArrayEquals(expected, HMM2.deltaPass(model, emissions));
+    assertArrayEquals(expected, HMM2.deltaPass(ArrayOperations.toMatrix(model.a, 4, 4),
+                                               ArrayOperations.toMatrix(model.b, 4, 3),
+                                               ArrayOperations.toMatrix(model.pi, 1, 4),
+                                               emissions));
+  }
+
+  @Test
+  public void avoidsImpossibleTransitions() {
+    HMMModel model = TestModels.model(5, 3, 5);
+    for (int i = 0; i < 5; i++) {
+      model.a[i * 5 + (i + 1) % 5] = 0.0;
+      model.a[i * 5 + (i + 2) % 5] = 0.0;
+    }
+    int[] emissions = TestModels.sequence(TestModels.model(5, 3, 6), 500, 7);
+    int[] path = new LogViterbi(model).decode(emissions);
+    assertTrue(Double.isFinite(pathLogProb(model, emissions, path)));
+    assertArrayEquals(referenceDecode(model, emissions), path);
+  }
+
+  /**
+   * A beam wide enough to keep the best path changes nothing, and a narrow one
+   * still yields a possible path.
+   */
+  @Test
+  public void beamPruning() {
+    HMMModel model = TestModels.model(20, 5, 8);
+    int[] emissions = TestModels.sequence(model, 1000, 9);
+    LogViterbi viterbi = new LogViterbi(model);
+    int[] exact = viterbi.decode(emissions);
+    assertArrayEquals(exact, viterbi.decode(emissions, Double.POSITIVE_INFINITY));
+    assertArrayEquals(exact, viterbi.decode(emissions, 1e3));
+
+    int[] pruned = viterbi.decode(emissions, 0.5);
+    assertEquals(emissions.length, pruned.length);
+    double prunedLogProb = pathLogProb(model, emissions, pruned);
+    assertTrue(Double.isFinite(prunedLogProb));
+    assertTrue(prunedLogProb <= pathLogProb(model, emissions, exact));
+  }
+
+  private static double pathLogProb(HMMModel model, int[] emissions, int[] path) {
+    double logProb = Math.log(model.pi[path[0]]);
+    for (int step = 0; step < path.length; step++) {
+      if (step > 0) {
+        logProb += Math.log(model.a[path[step - 1] * model.aStride + path[step]]);
+      }
+      logProb += Math.log(model.b[path[step] * model.bStride + emissions[step]]);
+    }
+    return logProb;
+  }
+
+  /**
+   * Textbook log-space Viterbi over the full N*T delta table, with ties going to
+   * the highest predecessor as in the original deltaPass.
+   */
+  private static int[] referenceDecode(HMMModel model, int[] emissions) {
+    int numStates = model.numStates;
+    int numEmissions = emissions.length;
+    double[][] delta = new double[numEmissions][numStates];
+    int[][] from = new int[numEmissions][numStates];
+    for (int i = 0; i < numStates; i++) {
+      delta[0][i] = Math.log(model.pi[i]) + Math.log(model.b[i * model.bStride + emissions[0]]);
+    }
+    for (int step = 1; step < numEmissions; step++) {
+      for (int i = 0; i < numStates; i++) {
+        double best = Double.NEGATIVE_INFINITY;
+        int argBest = 0;
+        for (int j = 0; j < numStates; j++) {
+          double value = delta[step - 1][j] + Math.log(model.a[j * model.aStride + i]);
+          if (value >= best) {
+            best = value;
+            argBest = j;
+          }
+        }
+        delta[step][i] = best + Math.log(model.b[i * model.bStride + emissions[step]]);
+        from[step][i] = argBest;
+      }
+    }
+    int[] path = new int[numEmissions];
+    double best = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < numStates; i++) {
+      if (delta[numEmissions - 1][i] >= best) {
+        best = delta[numEmissions - 1][i];
+        path[numEmissions - 1] = i;
+      }
+    }
+    for (int step = numEmissions - 1; step > 0; step--) {
+      path[step - 1] = from[step][path[step]];
+    }
+    return path;
+  }
+}
@@ -0,0 +1,52 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ModelFileTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  public void roundTripsBitForBit() throws IOException {
+    HMMModel model = TestModels.model(5, 7, 1);
+    model.a[3] = Double.MIN_VALUE;
+    Path path = directory.resolve("model.hmmb");
+    ModelFile.write(path, model, new TrainingResult(-123.456, 17));
+
+    ModelFile file = ModelFile.map(path);
+    assertEquals(5, file.numStates);
+    assertEquals(7, file.numSymbols);
+    assertEquals(17, file.iterations);
+    assertEquals(-123.456, file.logProb, 0.0);
+    HMMModel loaded = file.toModel();
+    for (int idx = 0; idx < model.a.length; idx++) {
+      assertEquals(Double.doubleToRawLongBits(model.a[idx]),
+                   Double.doubleToRawLongBits(loaded.a[idx]));
+    }
+    TestModels.assertClose(model, loaded, 0.0);
+  }
+
+  @Test
+  public void untrainedModelHasNoLogProb() throws IOException {
+    Path path = directory.resolve("untrained.hmmb");
+    ModelFile.write(path, TestModels.model(2, 2, 2), null);
+    ModelFile file = ModelFile.map(path);
+    assertTrue(Double.isNaN(file.logProb));
+    assertEquals(0, file.iterations);
+  }
+
+  @Test
+  public void rejectsOtherFiles() throws IOException {
+    Path path = directory.resolve("text.hmmb");
+    Files.write(path, "2 2 0.5 0.5 0.5 0.5 0.5 0.5 0.5 0.5".getBytes("US-ASCII"));
+    assertThrows(IOException.class, () -> ModelFile.map(path));
+  }
+}
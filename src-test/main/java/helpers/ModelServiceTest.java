@@ -0,0 +1,189 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import main.java.HMM1;
+import main.java.HMM2;
+import main.java.HMM3;
+import main.java.HMMServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ModelServiceTest {
+  @TempDir
+  Path directory;
+
+  /**
+   * The resident model answers like the one-shot programs do.
+   */
+  @Test
+  public void answersLikeTheOneShotPasses() {
+    HMMModel model = TestModels.model(5, 4, 1);
+    int[] emissions = TestModels.sequence(model, 300, 2);
+    ModelService service = new ModelService();
+    assertEquals("ok 5 4", service.handle(modelRequest("m", model)));
+
+    assertEquals("ok " + HMM1.logLikelihood(model, emissions),
+                 service.handle("score m " + sequence(emissions)));
+    assertEquals("ok" + states(HMM2.deltaPass(model, emissions)),
+                 service.handle("decode m " + sequence(emissions)));
+
+    double[] next = ModelService.nextEmissionDistribution(model, model.pi);
+    assertEquals("ok 1 4" + values(next), service.handle("next m"));
+    StreamingScorer scorer = new StreamingScorer(model);
+    scorer.push(emissions, 0, emissions.length);
+    next = ModelService.nextEmissionDistribution(model, scorer.alpha());
+    assertEquals("ok 1 4" + values(next), service.handle("next m " + sequence(emissions)));
+    assertEquals(1.0, sum(next), 1e-12);
+  }
+
+  /**
+   * Training replaces the model with a trained copy, so a model handed out before
+   * is never changed under its user.
+   */
+  @Test
+  public void trainsACopy() {
+    HMMModel truth = TestModels.model(3, 3, 3);
+    int[] emissions = TestModels.sequence(truth, 1000, 4);
+    HMMModel start = TestModels.model(3, 3, 5);
+    ModelService service = new ModelService();
+    service.put("m", start.copy());
+    HMMModel before = service.get("m");
+
+    HMMModel expected = start.copy();
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 15;
+    TrainingResult result = HMM3.trainModel(expected, emissions, options);
+    assertEquals("ok " + result.logProb + " " + result.iterations,
+                 service.handle("train m " + sequence(emissions) + " 15"));
+    TestModels.assertClose(expected, service.get("m"), 0.0);
+    TestModels.assertClose(start, before, 0.0);
+  }
+
+  @Test
+  public void managesModels() throws IOException {
+    HMMModel model = TestModels.model(4, 2, 6);
+    ModelService service = new ModelService();
+    service.put("b", model);
+    service.put("a", model);
+    assertEquals("ok a b", service.handle("list"));
+
+    Path path = directory.resolve("a.hmm");
+    assertEquals("ok", service.handle("save a " + path));
+    assertEquals("ok 4 2", service.handle("load c " + path));
+    TestModels.assertClose(model, service.get("c"), 0.0);
+    assertEquals("ok", service.handle("drop b"));
+    assertEquals("ok a c", service.handle("list"));
+
+    assertTrue(service.handle("drop b").startsWith("error Unknown model b"));
+    assertTrue(service.handle("score x 1 0").startsWith("error Unknown model x"));
+    assertTrue(service.handle("score a 2 0 2").startsWith("error Emission 2"));
+    assertTrue(service.handle("frobnicate a").startsWith("error Unknown command"));
+    assertTrue(service.handle("score").startsWith("error Missing model name"));
+  }
+
+  /**
+   * Concurrent requests take separate workspaces and give the sequential answers.
+   */
+  @Test
+  public void answersConcurrentRequests() throws Exception {
+    HMMModel model = TestModels.model(6, 4, 7);
+    ModelService service = new ModelService();
+    service.put("m", model);
+    List<String> requests = new ArrayList<>();
+    List<String> expected = new ArrayList<>();
+    for (int idx = 0; idx < 64; idx++) {
+      int[] emissions = TestModels.sequence(model, 50 + 13 * idx, idx);
+      String request = (idx % 2 == 0 ? "decode m " : "score m ") + sequence(emissions);
+      requests.add(request);
+      expected.add(service.handle(request));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> answers = new ArrayList<>();
+      for (String request : requests) {
+        answers.add(executor.submit(() -> service.handle(request)));
+      }
+      for (int idx = 0; idx < requests.size(); idx++) {
+        assertEquals(expected.get(idx), answers.get(idx).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * The server writes the answers in request order, and a request after a model
+   * change sees the new model.
+   */
+  @Test
+  public void serverAnswersInOrder() throws IOException {
+    HMMModel first = TestModels.model(3, 3, 8);
+    HMMModel second = TestModels.model(3, 3, 9);
+    int[] emissions = TestModels.sequence(first, 200, 10);
+    String requests = modelRequest("m", first) + "\n"
+                      + "score m " + sequence(emissions) + "\n"
+                      + modelRequest("m", second) + "\n"
+                      + "score m " + sequence(emissions) + "\n"
+                      + "list\nquit\nlist\n";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      HMMServer.serve(new ByteArrayInputStream(requests.getBytes(StandardCharsets.US_ASCII)),
+                      out, new ModelService(), executor);
+    } finally {
+      executor.shutdown();
+    }
+    String[] answers = new String(out.toByteArray(), StandardCharsets.US_ASCII).split("\n");
+    assertArrayEquals(new String[] {"ok 3 3", "ok " + HMM1.logLikelihood(first, emissions),
+                                    "ok 3 3", "ok " + HMM1.logLikelihood(second, emissions),
+                                    "ok m"}, answers);
+  }
+
+  private static String modelRequest(String name, HMMModel model) {
+    return "model " + name + " "
+           + ArrayOperations.matrixToString(model.a, model.numStates, model.numStates) + " "
+           + ArrayOperations.matrixToString(model.b, model.numStates, model.numSymbols) + " "
+           + ArrayOperations.matrixToString(model.pi, 1, model.numStates);
+  }
+
+  private static String sequence(int[] emissions) {
+    return emissions.length + " " + ArrayOperations.arrayToString(emissions).trim();
+  }
+
+  private static String states(int[] states) {
+    StringBuilder result = new StringBuilder();
+    for (int state : states) {
+      result.append(' ').append(state);
+    }
+    return result.toString();
+  }
+
+  private static String values(double[] values) {
+    StringBuilder result = new StringBuilder();
+    for (double value : values) {
+      result.append(' ').append(value);
+    }
+    return result.toString();
+  }
+
+  private static double sum(double[] values) {
+    double sum = 0.0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,124 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import main.java.HMM3;
+import org.junit.jupiter.api.Test;
+
+public class MultiRestartTrainingTest {
+  /**
+   * Restart 0 trains the given model itself, so with no other restart the driver is
+   * trainModel.
+   */
+  @Test
+  public void singleRestartMatchesTrainModel() {
+    HMMModel truth = TestModels.model(4, 3, 1);
+    int[] emissions = TestModels.sequence(truth, 2000, 2);
+    HMMModel single = TestModels.model(4, 3, 3);
+    HMMModel restarted = single.copy();
+
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 60;
+    options.restarts = 1;
+    TrainingResult expected = HMM3.trainModel(single, emissions, options);
+    TrainingResult actual = HMM3.trainModelRestarts(restarted, emissions, options);
+
+    assertEquals(expected.iterations, actual.iterations);
+    assertEquals(expected.converged, actual.converged);
+    assertEquals(expected.logProb, actual.logProb, 0.0);
+    TestModels.assertClose(single, restarted, 0.0);
+  }
+
+  /**
+   * Without abandonment restart 0 runs to the end, so the best restart is at least as
+   * good as training the given model alone. The result does not depend on the pool.
+   */
+  @Test
+  public void keepsTheBestRestart() {
+    HMMModel truth = TestModels.model(4, 4, 4);
+    int[] emissions = TestModels.sequence(truth, 1500, 5);
+    HMMModel start = TestModels.model(4, 4, 6);
+    HMMModel alone = start.copy();
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 80;
+    TrainingResult aloneResult = HMM3.trainModel(alone, emissions, options);
+
+    options.restarts = 6;
+    options.seed = 7;
+    options.abandonMargin = Double.POSITIVE_INFINITY;
+    HMMModel common = start.copy();
+    TrainingResult commonResult = HMM3.trainModelRestarts(common, emissions, options);
+    assertTrue(commonResult.logProb >= aloneResult.logProb,
+               commonResult.logProb + " < " + aloneResult.logProb);
+    /**
+     * As with trainModel, the log probability is that of the last expectation step,
+     * and the re-estimation after it can only improve the model.
+     */
+    assertTrue(ForwardBackward.expectation(common, emissions).logProb >= commonResult.logProb);
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      options.pool = pool;
+      HMMModel pooled = start.copy();
+      TrainingResult pooledResult = HMM3.trainModelRestarts(pooled, emissions, options);
+      assertEquals(commonResult.logProb, pooledResult.logProb, 0.0);
+      TestModels.assertClose(common, pooled, 0.0);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Abandoning trailing restarts only skips work, the winner is still a restart that
+   * ran to the end.
+   */
+  @Test
+  public void abandonsTrailingRestarts() {
+    HMMModel truth = TestModels.model(4, 3, 8);
+    int[] emissions = TestModels.sequence(truth, 1500, 9);
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 60;
+    options.restarts = 8;
+    options.abandonAfter = 3;
+    options.abandonMargin = 0.0;
+    HMMModel model = TestModels.model(4, 3, 10);
+    TrainingResult result = HMM3.trainModelRestarts(model, emissions, options);
+    assertTrue(result.iterations > 3);
+    assertTrue(result.logProb <= 0.0 && result.logProb > (-1) * Double.MAX_VALUE);
+  }
+
+  /**
+   * Perturbation keeps zeros at zero, keeps the rows distributions, and is fixed by
+   * its seed.
+   */
+  @Test
+  public void perturbationKeepsStructure() {
+    HMMModel model = TestModels.model(6, 3, 11);
+    for (int i = 0; i < 6; i++) {
+      model.a[i * 6 + (i + 2) % 6] = 0.0;
+    }
+    HMMModel first = model.copy();
+    HMMModel second = model.copy();
+    MultiRestartTraining.perturb(first, new Random(12));
+    MultiRestartTraining.perturb(second, new Random(12));
+    TestModels.assertClose(first, second, 0.0);
+
+    for (int i = 0; i < 6; i++) {
+      assertEquals(0.0, first.a[i * 6 + (i + 2) % 6], 0.0);
+      assertEquals(1.0, sum(first.a, i * 6, 6), 1e-12);
+      assertEquals(1.0, sum(first.b, i * 3, 3), 1e-12);
+    }
+    assertEquals(1.0, sum(first.pi, 0, 6), 1e-12);
+  }
+
+  private static double sum(double[] values, int offset, int length) {
+    double sum = 0.0;
+    for (int idx = 0; idx < length; idx++) {
+      sum += values[offset + idx];
+    }
+    return sum;
+  }
+}
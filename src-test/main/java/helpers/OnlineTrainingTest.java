@@ -0,0 +1,119 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import main.java.HMM3;
+import org.junit.jupiter.api.Test;
+
+public class OnlineTrainingTest {
+  /**
+   * One pass over the data in 600 mini-batches ends within 2e-3 nats per emission of
+   * 30 batch Baum-Welch iterations, on held out emissions.
+   */
+  @Test
+  public void approachesBatchTraining() {
+    HMMModel truth = TestModels.model(3, 4, 1);
+    sharpen(truth);
+    int[] emissions = TestModels.sequence(truth, 60000, 2);
+    int[] heldOut = TestModels.sequence(truth, 10000, 3);
+    HMMModel start = TestModels.model(3, 4, 4);
+
+    HMMModel batch = start.copy();
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 30;
+    HMM3.trainModel(batch, emissions, options);
+
+    HMMModel online = start.copy();
+    OnlineTraining training = new OnlineTraining(online, new TrainingOptions());
+    for (int from = 0; from < emissions.length; from += 100) {
+      training.update(Arrays.copyOfRange(emissions, from, from + 100));
+    }
+    assertEquals(600, training.updates());
+
+    double batchLogProb = ForwardBackward.expectation(batch, heldOut).logProb;
+    double onlineLogProb = ForwardBackward.expectation(online, heldOut).logProb;
+    assertEquals(batchLogProb, onlineLogProb, 2e-3 * heldOut.length);
+  }
+
+  /**
+   * Batches of 10000 count as 100 steps of the schedule each and are swept 100
+   * times, which ends within 2e-3 nats per emission of batch Baum-Welch run to
+   * convergence. 30 batch iterations fall 0.15 nats per emission short of it.
+   */
+  @Test
+  public void sweepsLargeBatches() {
+    HMMModel truth = TestModels.model(3, 4, 1);
+    sharpen(truth);
+    int[] emissions = TestModels.sequence(truth, 60000, 2);
+    int[] heldOut = TestModels.sequence(truth, 10000, 3);
+    HMMModel start = TestModels.model(3, 4, 4);
+
+    HMMModel batch = start.copy();
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 300;
+    HMM3.trainModel(batch, emissions, options);
+
+    HMMModel online = start.copy();
+    OnlineTraining training = new OnlineTraining(online, new TrainingOptions());
+    for (int from = 0; from < emissions.length; from += 10000) {
+      training.update(Arrays.copyOfRange(emissions, from, from + 10000));
+    }
+    assertEquals(6, training.updates());
+
+    double batchLogProb = ForwardBackward.expectation(batch, heldOut).logProb;
+    double onlineLogProb = ForwardBackward.expectation(online, heldOut).logProb;
+    assertEquals(batchLogProb, onlineLogProb, 2e-3 * heldOut.length);
+  }
+
+  /**
+   * Only a batch that starts a sequence updates pi, and zeros of A stay zero.
+   */
+  @Test
+  public void continuesSequences() {
+    HMMModel model = TestModels.model(4, 3, 5);
+    for (int i = 0; i < 4; i++) {
+      model.a[i * 4 + (i + 1) % 4] = 0.0;
+    }
+    int[] emissions = TestModels.sequence(TestModels.model(4, 3, 6), 3000, 7);
+    OnlineTraining training = new OnlineTraining(model, new TrainingOptions());
+
+    training.update(Arrays.copyOfRange(emissions, 0, 1000));
+    double[] pi = model.pi.clone();
+    HMMModel snapshot = training.snapshot();
+    training.update(Arrays.copyOfRange(emissions, 1000, 2000));
+    assertArrayEquals(pi, model.pi);
+    TestModels.assertClose(pi, snapshot.pi, 0.0, "snapshot pi");
+    assertTrue(snapshot.b[0] != model.b[0]);
+
+    training.endSequence();
+    training.update(Arrays.copyOfRange(emissions, 2000, 3000));
+    assertTrue(!Arrays.equals(pi, model.pi));
+    for (int i = 0; i < 4; i++) {
+      assertEquals(0.0, model.a[i * 4 + (i + 1) % 4], 0.0);
+    }
+    assertEquals(0.0, training.update(new int[0]), 0.0);
+    assertEquals(3, training.updates());
+  }
+
+  /**
+   * Puts most of the weight of every row on one entry, so the states are easy to
+   * tell apart.
+   */
+  private static void sharpen(HMMModel model) {
+    for (int i = 0; i < model.numStates; i++) {
+      model.a[i * model.aStride + i] += 4.0;
+      model.b[i * model.bStride + i] += 4.0;
+    }
+    for (int i = 0; i < model.numStates; i++) {
+      for (int j = 0; j < model.numStates; j++) {
+        model.a[i * model.aStride + j] /= 5.0;
+      }
+      for (int k = 0; k < model.numSymbols; k++) {
+        model.b[i * model.bStride + k] /= 5.0;
+      }
+    }
+  }
+}
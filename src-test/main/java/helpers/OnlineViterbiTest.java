@@ -0,0 +1,93 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.stream.IntStream;
+import main.java.HMM2;
+import org.junit.jupiter.api.Test;
+
+public class OnlineViterbiTest {
+  /**
+   * Without a lag a state is only committed once every surviving path runs through
+   * it, so the streamed path is the offline one.
+   */
+  @Test
+  public void matchesOfflineDecodingWithoutLag() {
+    HMMModel model = TestModels.model(6, 4, 1);
+    int[] emissions = TestModels.sequence(model, 5000, 2);
+    assertArrayEquals(HMM2.deltaPass(model, emissions), decode(model, emissions, 0));
+  }
+
+  /**
+   * Near-uniform emissions keep the paths from coalescing for many steps, so the
+   * pending buffer has to grow past its initial capacity.
+   */
+  @Test
+  public void growsWhilePathsDoNotCoalesce() {
+    HMMModel model = TestModels.model(4, 2, 3);
+    for (int i = 0; i < 4; i++) {
+      model.a[i * 4 + i] = 0.0;
+      model.b[i * 2] = 0.5 + 1e-6 * i;
+      model.b[i * 2 + 1] = 0.5 - 1e-6 * i;
+    }
+    for (int i = 0; i < 4; i++) {
+      double sum = 0.0;
+      for (int j = 0; j < 4; j++) {
+        sum += model.a[i * 4 + j];
+      }
+      for (int j = 0; j < 4; j++) {
+        model.a[i * 4 + j] /= sum;
+      }
+    }
+    int[] emissions = TestModels.sequence(model, 2000, 4);
+    OnlineViterbi viterbi = new OnlineViterbi(model, 0, Double.POSITIVE_INFINITY);
+    long maxPending = 0;
+    for (int emission : emissions) {
+      viterbi.push(emission, state -> { });
+      maxPending = Math.max(maxPending, viterbi.numSteps() - viterbi.numCommitted());
+    }
+    assertTrue(maxPending > 64, "max pending " + maxPending);
+    assertArrayEquals(HMM2.deltaPass(model, emissions), decode(model, emissions, 0));
+  }
+
+  /**
+   * A lag bounds the pending steps, and every step is still committed exactly once
+   * along a possible path.
+   */
+  @Test
+  public void commitsWithinTheLag() {
+    HMMModel model = TestModels.model(8, 3, 5);
+    for (int i = 0; i < 8; i++) {
+      model.a[i * 8 + (i + 1) % 8] = 0.0;
+    }
+    int[] emissions = TestModels.sequence(TestModels.model(8, 3, 7), 3000, 6);
+    int maxLag = 4;
+    OnlineViterbi viterbi = new OnlineViterbi(model, maxLag, Double.POSITIVE_INFINITY);
+    int[] path = new int[emissions.length];
+    int[] numCommitted = new int[1];
+    for (int emission : emissions) {
+      int count = viterbi.push(emission, state -> path[numCommitted[0]++] = state);
+      assertEquals(viterbi.numCommitted(), numCommitted[0]);
+      assertTrue(count >= 0 && viterbi.numSteps() - viterbi.numCommitted() <= maxLag);
+    }
+    viterbi.flush(state -> path[numCommitted[0]++] = state);
+    assertEquals(emissions.length, numCommitted[0]);
+    assertEquals(0, viterbi.flush(state -> { }));
+    assertTrue(IntStream.range(1, path.length)
+                   .allMatch(step -> model.a[path[step - 1] * model.aStride + path[step]] > 0.0));
+  }
+
+  private static int[] decode(HMMModel model, int[] emissions, int maxLag) {
+    OnlineViterbi viterbi = new OnlineViterbi(model, maxLag, Double.POSITIVE_INFINITY);
+    int[] path = new int[emissions.length];
+    int[] numCommitted = new int[1];
+    for (int emission : emissions) {
+      viterbi.push(emission, state -> path[numCommitted[0]++] = state);
+    }
+    viterbi.flush(state -> path[numCommitted[0]++] = state);
+    assertEquals(emissions.length, numCommitted[0]);
+    return path;
+  }
+}
@@ -0,0 +1,85 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.ForkJoinPool;
+import main.java.HMM3;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class ParallelForwardTest {
+  private static ForkJoinPool pool;
+
+  @BeforeAll
+  public static void startPool() {
+    pool = new ForkJoinPool(4);
+  }
+
+  @AfterAll
+  public static void stopPool() {
+    pool.shutdown();
+  }
+
+  /**
+   * The chunked scan gives the same scaled alphas and log probability as the
+   * sequential pass, up to rounding.
+   */
+  @Test
+  public void matchesSequentialPass() {
+    HMMModel model = TestModels.model(8, 6, 1);
+    int[] emissions = TestModels.sequence(model, 20000, 2);
+    FlatAlphaPass expected = HMM3.alphaPassScale(model, emissions);
+    FlatAlphaPass actual = ParallelForward.alphaPassScale(model, emissions, pool, 8);
+
+    TestModels.assertClose(expected.alphaMat, actual.alphaMat, 1e-12, "alpha");
+    double expectedLogProb = HMM3.calculateLogProb(expected.scalingFactors);
+    assertEquals(expectedLogProb, HMM3.calculateLogProb(actual.scalingFactors),
+                 1e-12 * Math.abs(expectedLogProb));
+  }
+
+  @Test
+  public void shortSequencesRunSequentially() {
+    HMMModel model = TestModels.model(3, 2, 3);
+    int[] emissions = TestModels.sequence(model, 100, 4);
+    FlatAlphaPass expected = HMM3.alphaPassScale(model, emissions);
+    FlatAlphaPass actual = ParallelForward.alphaPassScale(model, emissions, pool, 8);
+    TestModels.assertClose(expected.alphaMat, actual.alphaMat, 0.0, "alpha");
+    TestModels.assertClose(expected.scalingFactors, actual.scalingFactors, 0.0, "scales");
+  }
+
+  @Test
+  public void handlesEmptySequences() {
+    HMMModel model = TestModels.model(3, 2, 3);
+    FlatAlphaPass actual = ParallelForward.alphaPassScale(model, new int[0], pool, 8);
+    assertEquals(0, actual.alphaMat.length);
+    assertEquals(0, actual.scalingFactors.length);
+  }
+
+  @Test
+  public void trainsLikeTheSequentialForwardSweep() {
+    HMMModel truth = TestModels.model(4, 3, 5);
+    int[] emissions = TestModels.sequence(truth, 5000, 6);
+    HMMModel sequential = TestModels.model(4, 3, 7);
+    HMMModel parallel = sequential.copy();
+
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 10;
+    TrainingResult expected = HMM3.trainModel(sequential, emissions, options);
+    options.parallelForward = true;
+    options.pool = pool;
+    TrainingResult actual = HMM3.trainModel(parallel, emissions, options);
+
+    assertEquals(expected.logProb, actual.logProb, 1e-12 * Math.abs(expected.logProb));
+    TestModels.assertClose(sequential, parallel, 1e-10);
+  }
+
+  @Test
+  public void rejectsCheckpointedParallelForward() {
+    TrainingOptions options = new TrainingOptions();
+    options.parallelForward = true;
+    options.checkpointed = true;
+    assertThrows(IllegalArgumentException.class, options::validate);
+  }
+}
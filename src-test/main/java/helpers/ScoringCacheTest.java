@@ -0,0 +1,119 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+public class ScoringCacheTest {
+  /**
+   * A resumed session pushes the same emissions in the same order as a fresh one, so
+   * the scores are identical, and only the appended emissions are computed.
+   */
+  @Test
+  public void resumesGrowingSequences() {
+    HMMModel model = TestModels.model(5, 4, 1);
+    int[] emissions = TestModels.sequence(model, 1000, 2);
+    ScoringCache cache = new ScoringCache(1 << 20);
+    long expectedReused = 0;
+    for (int length = 100; length <= 1000; length += 100) {
+      int[] prefix = Arrays.copyOf(emissions, length);
+      assertEquals(fresh(model, prefix), cache.session(model, prefix).logLikelihood(), 0.0);
+      expectedReused += length - 100;
+    }
+    assertEquals(1, cache.misses());
+    assertEquals(9, cache.hits());
+    assertEquals(expectedReused, cache.reusedSteps());
+
+    int[] whole = Arrays.copyOf(emissions, 1000);
+    StreamingScorer session = cache.session(model, whole);
+    session.push(0);
+    assertEquals(fresh(model, whole), cache.session(model, whole).logLikelihood(), 0.0);
+  }
+
+  /**
+   * A sequence that leaves a cached one resumes from the longest cached prefix it
+   * shares with it, not from the diverging one.
+   */
+  @Test
+  public void resumesFromTheLongestSharedPrefix() {
+    HMMModel model = TestModels.model(4, 3, 3);
+    int[] emissions = TestModels.sequence(model, 300, 4);
+    ScoringCache cache = new ScoringCache(1 << 20);
+    cache.session(model, Arrays.copyOf(emissions, 100));
+    cache.session(model, emissions);
+
+    int[] diverging = emissions.clone();
+    diverging[150] = (diverging[150] + 1) % 3;
+    long reused = cache.reusedSteps();
+    assertEquals(fresh(model, diverging), cache.session(model, diverging).logLikelihood(), 0.0);
+    assertEquals(100, cache.reusedSteps() - reused);
+
+    HMMModel other = model.copy();
+    assertEquals(fresh(other, emissions), cache.session(other, emissions).logLikelihood(), 0.0);
+    assertEquals(2, cache.misses());
+  }
+
+  @Test
+  public void staysWithinTheMemoryBound() {
+    HMMModel model = TestModels.model(8, 3, 5);
+    ScoringCache cache = new ScoringCache(1000);
+    for (int idx = 0; idx < 50; idx++) {
+      int[] emissions = TestModels.sequence(model, 20, idx);
+      cache.session(model, emissions);
+      assertTrue(cache.usedBytes() <= 1000, "used " + cache.usedBytes());
+    }
+    assertTrue(cache.evictions() > 0);
+    assertEquals(50, cache.size() + cache.evictions());
+
+    int[] evicted = TestModels.sequence(model, 20, 0);
+    int[] kept = TestModels.sequence(model, 20, 49);
+    assertEquals(fresh(model, evicted), cache.session(model, evicted).logLikelihood(), 0.0);
+    assertEquals(fresh(model, kept), cache.session(model, kept).logLikelihood(), 0.0);
+    assertEquals(51, cache.misses());
+    assertEquals(1, cache.hits());
+  }
+
+  /**
+   * After the model is modified and invalidated, scores come from the new model.
+   */
+  @Test
+  public void invalidatesModifiedModels() {
+    HMMModel model = TestModels.model(4, 3, 6);
+    int[] emissions = TestModels.sequence(model, 200, 7);
+    ScoringCache cache = new ScoringCache(1 << 20);
+    cache.session(model, emissions);
+    model.copyFrom(TestModels.model(4, 3, 8));
+    cache.invalidate(model);
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.usedBytes());
+    assertEquals(fresh(model, emissions), cache.session(model, emissions).logLikelihood(), 0.0);
+  }
+
+  /**
+   * The service keeps the sessions of a model only until it is replaced.
+   */
+  @Test
+  public void serviceDropsSessionsOfReplacedModels() {
+    HMMModel first = TestModels.model(3, 3, 9);
+    HMMModel second = TestModels.model(3, 3, 10);
+    int[] emissions = TestModels.sequence(first, 100, 11);
+    String sequence = emissions.length + " " + ArrayOperations.arrayToString(emissions).trim();
+    ModelService service = new ModelService();
+    service.put("m", first);
+    service.handle("score m " + sequence);
+    assertEquals("ok " + fresh(first, emissions), service.handle("score m " + sequence));
+    assertTrue(service.handle("stats").startsWith("ok 1 1 0 1 "));
+
+    service.put("m", second);
+    assertTrue(service.handle("stats").startsWith("ok 1 1 0 0 0"));
+    assertEquals("ok " + fresh(second, emissions), service.handle("score m " + sequence));
+  }
+
+  private static double fresh(HMMModel model, int[] emissions) {
+    StreamingScorer scorer = new StreamingScorer(model);
+    scorer.push(emissions, 0, emissions.length);
+    return scorer.logLikelihood();
+  }
+}
@@ -0,0 +1,136 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import main.java.HMM1;
+import main.java.HMM3;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Skipping a zero term never changes a sum, so every pass gives bit-identical
+ * results with the sparse and the dense representation of a banded A. The vector
+ * kernels of the fused pass only run on dense rows and sum in a different order,
+ * so with them training agrees within rounding instead.
+ */
+public class SparseTransitionsTest {
+  private static final int NUM_STATES = 12;
+  private static final double FUSED_TOLERANCE = Kernels.get().name().equals("scalar") ? 0.0 : 1e-12;
+
+  @Test
+  public void storesTheNonZeroPattern() {
+    HMMModel model = bandedModel(false);
+    SparseTransitions transitions = SparseTransitions.of(model.a, NUM_STATES);
+    assertEquals(3 * NUM_STATES - 2, transitions.numNonZeros());
+    for (int i = 0; i < NUM_STATES; i++) {
+      for (int idx = transitions.rowStarts[i]; idx < transitions.rowStarts[i + 1]; idx++) {
+        assertTrue(Math.abs(transitions.rowColumns[idx] - i) <= 1);
+      }
+    }
+    model.chooseTransitions();
+    assertNotNull(model.transitions);
+    HMMModel dense = TestModels.model(NUM_STATES, 3, 1);
+    dense.chooseTransitions();
+    assertNull(dense.transitions);
+  }
+
+  @Test
+  public void forwardPassesAreBitIdentical() {
+    HMMModel dense = bandedModel(false);
+    HMMModel sparse = bandedModel(true);
+    int[] emissions = TestModels.sequence(dense, 2000, 2);
+    int[] shortEmissions = Arrays.copyOf(emissions, 40);
+
+    assertEquals(HMM1.alphaPass(dense, shortEmissions), HMM1.alphaPass(sparse, shortEmissions),
+                 0.0);
+    assertEquals(HMM1.logLikelihood(dense, emissions), HMM1.logLikelihood(sparse, emissions),
+                 0.0);
+    Kernels scalar = Kernels.forName("scalar");
+    FlatAlphaPass denseAlpha = HMM3.alphaPassScale(dense, emissions, scalar);
+    FlatAlphaPass sparseAlpha = HMM3.alphaPassScale(sparse, emissions, scalar);
+    assertArrayEquals(denseAlpha.alphaMat, sparseAlpha.alphaMat);
+    assertArrayEquals(denseAlpha.scalingFactors, sparseAlpha.scalingFactors);
+    assertArrayEquals(HMM3.betaPassScale(dense, emissions, denseAlpha.scalingFactors, scalar),
+                      HMM3.betaPassScale(sparse, emissions, sparseAlpha.scalingFactors, scalar));
+
+    int[][] batch = {emissions, shortEmissions, Arrays.copyOf(emissions, 700)};
+    assertArrayEquals(new BatchScorer(dense).logLikelihoods(batch, null),
+                      new BatchScorer(sparse).logLikelihoods(batch, null));
+  }
+
+  @Test
+  public void decodingIsBitIdentical() {
+    HMMModel dense = bandedModel(false);
+    HMMModel sparse = bandedModel(true);
+    int[] emissions = TestModels.sequence(dense, 2000, 3);
+    assertArrayEquals(new LogViterbi(dense).decode(emissions),
+                      new LogViterbi(sparse).decode(emissions));
+  }
+
+  /**
+   * Baum-Welch keeps the zeros of A at exactly zero, so the pattern stays valid
+   * through training.
+   */
+  @Test
+  public void trainingKeepsTheBand() {
+    HMMModel truth = bandedModel(false);
+    int[] emissions = TestModels.sequence(truth, 3000, 4);
+    for (boolean materializeGamma : new boolean[] {false, true}) {
+      HMMModel dense = perturbedBandedModel();
+      HMMModel sparse = dense.copy();
+      sparse.useSparseTransitions(true);
+
+      TrainingOptions options = new TrainingOptions();
+      options.maxIters = 10;
+      options.materializeGamma = materializeGamma;
+      TrainingResult denseResult = HMM3.trainModel(dense, emissions, options);
+      TrainingResult sparseResult = HMM3.trainModel(sparse, emissions, options);
+
+      assertEquals(denseResult.logProb, sparseResult.logProb,
+                   FUSED_TOLERANCE * Math.abs(denseResult.logProb));
+      TestModels.assertClose(dense, sparse, FUSED_TOLERANCE);
+      for (int i = 0; i < NUM_STATES; i++) {
+        for (int j = 0; j < NUM_STATES; j++) {
+          if (Math.abs(i - j) > 1) {
+            assertEquals(0.0, sparse.a[i * NUM_STATES + j], 0.0);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A random model with A cut down to its tridiagonal band and renormalized.
+   */
+  private static HMMModel bandedModel(boolean sparse) {
+    HMMModel model = TestModels.model(NUM_STATES, 5, 5);
+    cutToBand(model);
+    model.useSparseTransitions(sparse);
+    return model;
+  }
+
+  private static HMMModel perturbedBandedModel() {
+    HMMModel model = TestModels.model(NUM_STATES, 5, 6);
+    cutToBand(model);
+    return model;
+  }
+
+  private static void cutToBand(HMMModel model) {
+    for (int i = 0; i < NUM_STATES; i++) {
+      double sum = 0.0;
+      for (int j = 0; j < NUM_STATES; j++) {
+        if (Math.abs(i - j) > 1) {
+          model.a[i * NUM_STATES + j] = 0.0;
+        }
+        sum += model.a[i * NUM_STATES + j];
+      }
+      for (int j = 0; j < NUM_STATES; j++) {
+        model.a[i * NUM_STATES + j] /= sum;
+      }
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import main.java.HMM1;
+import main.java.HMM3;
+import org.junit.jupiter.api.Test;
+
+public class StreamingScorerTest {
+  private static final double TOLERANCE = 1e-12;
+
+  /**
+   * The streamed log-likelihood is the one HMM3 computes from the scaling factors
+   * of the full alpha-pass.
+   */
+  @Test
+  public void matchesScaledAlphaPass() {
+    HMMModel model = TestModels.model(8, 5, 1);
+    int[] emissions = TestModels.sequence(model, 3000, 2);
+    FlatAlphaPass alpha = HMM3.alphaPassScale(model, emissions, Kernels.forName("scalar"));
+    double expected = HMM3.calculateLogProb(alpha.scalingFactors);
+
+    double actual = StreamingScorer.logLikelihood(model, Arrays.stream(emissions));
+    assertEquals(expected, actual, TOLERANCE * Math.abs(expected));
+    assertEquals(actual, HMM1.logLikelihood(model, emissions), 0.0);
+  }
+
+  @Test
+  public void matchesUnscaledAlphaPassOnShortSequences() {
+    HMMModel model = TestModels.model(4, 3, 3);
+    int[] emissions = TestModels.sequence(model, 30, 4);
+    assertEquals(Math.log(HMM1.alphaPass(model, emissions)),
+                 HMM1.logLikelihood(model, emissions), TOLERANCE * 30);
+  }
+
+  /**
+   * The unscaled product underflows to 0 long before the scaled score loses any
+   * precision.
+   */
+  @Test
+  public void doesNotUnderflowOnLongSequences() {
+    HMMModel model = TestModels.model(4, 6, 5);
+    int[] emissions = TestModels.sequence(model, 100000, 6);
+    assertEquals(0.0, HMM1.alphaPass(model, emissions), 0.0);
+    double logProb = HMM1.logLikelihood(model, emissions);
+    assertTrue(Double.isFinite(logProb) && logProb < 0.0, "logProb " + logProb);
+  }
+
+  /**
+   * Pushing in pieces, from a copy, or after a reset gives the same score as
+   * pushing the whole sequence at once.
+   */
+  @Test
+  public void pushesCopiesAndResets() {
+    HMMModel model = TestModels.model(5, 4, 7);
+    int[] emissions = TestModels.sequence(model, 500, 8);
+    double expected = StreamingScorer.logLikelihood(model, Arrays.stream(emissions));
+
+    StreamingScorer scorer = new StreamingScorer(model);
+    scorer.push(emissions, 0, 200);
+    StreamingScorer copy = scorer.copy();
+    scorer.push(emissions, 200, 500);
+    copy.push(emissions, 200, 500);
+    assertEquals(expected, scorer.logLikelihood(), 0.0);
+    assertEquals(expected, copy.logLikelihood(), 0.0);
+    assertEquals(500, copy.numSteps());
+
+    scorer.reset();
+    scorer.push(emissions, 0, 500);
+    assertEquals(expected, scorer.logLikelihood(), 0.0);
+  }
+
+  @Test
+  public void parsesWhitespaceSeparatedSymbols() throws IOException {
+    HMMModel model = TestModels.model(3, 12, 9);
+    int[] emissions = {0, 11, 3, 10, 7, 7, 2, 0, 9};
+    String text = "0 11\t3\n10  7\r\n7 2 0\n9\n";
+    double actual = StreamingScorer.logLikelihood(
+        model, new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)));
+    assertEquals(StreamingScorer.logLikelihood(model, Arrays.stream(emissions)), actual, 0.0);
+  }
+
+  @Test
+  public void rejectsSymbolsOutsideTheAlphabet() {
+    StreamingScorer scorer = new StreamingScorer(TestModels.model(3, 2, 10));
+    assertThrows(IllegalArgumentException.class, () -> scorer.push(2));
+    assertThrows(IllegalArgumentException.class, () -> scorer.push(-1));
+  }
+}
@@ -0,0 +1,71 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+public class SufficientStatisticsTest {
+  /**
+   * The tree reduction of the parallel E-step must give the sum of the
+   * per-sequence statistics, up to the order of the additions.
+   */
+  @Test
+  public void parallelExpectationSumsSequences() {
+    HMMModel model = TestModels.model(4, 5, 1);
+    List<int[]> sequences = new ArrayList<>();
+    SufficientStatistics expected = new SufficientStatistics(4, 5);
+    for (int seq = 0; seq < 7; seq++) {
+      int[] emissions = TestModels.sequence(model, 50 + 30 * seq, 10 + seq);
+      sequences.add(emissions);
+      expected.add(ForwardBackward.expectation(model, emissions));
+    }
+    TrainingOptions options = new TrainingOptions();
+    ForkJoinPool pool = new ForkJoinPool(3);
+    options.pool = pool;
+    SufficientStatistics actual = ParallelExpectation.expectation(model, sequences, options);
+    pool.shutdown();
+
+    assertEquals(expected.numSequences, actual.numSequences);
+    assertEquals(expected.logProb, actual.logProb, 1e-12 * Math.abs(expected.logProb));
+    TestModels.assertClose(expected.initialGamma, actual.initialGamma, 1e-12, "initialGamma");
+    TestModels.assertClose(expected.transitionCounts, actual.transitionCounts, 1e-9,
+                           "transitionCounts");
+    TestModels.assertClose(expected.emissionCounts, actual.emissionCounts, 1e-9,
+                           "emissionCounts");
+  }
+
+  /**
+   * Rows without expected counts keep their old values rather than becoming NaN.
+   */
+  @Test
+  public void reEstimateKeepsRowsWithoutCounts() {
+    HMMModel model = TestModels.model(3, 2, 2);
+    HMMModel original = model.copy();
+    SufficientStatistics stats = new SufficientStatistics(3, 2);
+    stats.reEstimate(model);
+    TestModels.assertClose(original, model, 0.0);
+
+    /**
+     * State 1 is only seen at the last step: its emissions are re-estimated, its
+     * transitions are not.
+     */
+    stats.numSequences = 1;
+    stats.initialGamma[0] = 1.0;
+    stats.transitionCounts[0] = 1.0;
+    stats.transitionTotals[0] = 1.0;
+    stats.emissionCounts[0] = 1.0;
+    stats.emissionCounts[3] = 1.0;
+    stats.gammaTotals[0] = 1.0;
+    stats.gammaTotals[1] = 1.0;
+    stats.reEstimate(model);
+    assertEquals(1.0, model.a(0, 0), 0.0);
+    assertEquals(original.a(1, 0), model.a(1, 0), 0.0);
+    assertEquals(original.a(2, 2), model.a(2, 2), 0.0);
+    assertEquals(1.0, model.b(1, 1), 0.0);
+    assertEquals(original.b(2, 0), model.b(2, 0), 0.0);
+    assertEquals(1.0, model.pi[0], 0.0);
+  }
+}
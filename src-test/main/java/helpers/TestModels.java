@@ -0,0 +1,90 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+/**
+ * Seeded models, sequences and comparisons shared by the tests.
+ */
+public class TestModels {
+  /**
+   * Function that builds a random model whose rows are proper distributions, with
+   * every entry kept away from zero.
+   * @param  numStates N.
+   * @param  numSymbols M.
+   * @param  seed The random seed.
+   * @return The model, with dense transitions.
+   */
+  public static HMMModel model(int numStates, int numSymbols, long seed) {
+    Random random = new Random(seed);
+    HMMModel model = new HMMModel(numStates, numSymbols);
+    for (int i = 0; i < numStates; i++) {
+      fillDistribution(random, model.a, i * numStates, numStates);
+      fillDistribution(random, model.b, i * numSymbols, numSymbols);
+    }
+    fillDistribution(random, model.pi, 0, numStates);
+    return model;
+  }
+
+  /**
+   * Function that samples an emission sequence from a model.
+   * @param  model The model to sample from.
+   * @param  length T.
+   * @param  seed The random seed.
+   * @return The emission sequence.
+   */
+  public static int[] sequence(HMMModel model, int length, long seed) {
+    Random random = new Random(seed);
+    int[] emissions = new int[length];
+    int state = sample(random, model.pi, 0, model.numStates);
+    for (int step = 0; step < length; step++) {
+      emissions[step] = sample(random, model.b, state * model.bStride, model.numSymbols);
+      state = sample(random, model.a, state * model.aStride, model.numStates);
+    }
+    return emissions;
+  }
+
+  /**
+   * Asserts that two arrays agree element-wise within an absolute tolerance.
+   */
+  public static void assertClose(double[] expected, double[] actual, double tolerance,
+                                 String name) {
+    assertEquals(expected.length, actual.length, name + " length");
+    for (int idx = 0; idx < expected.length; idx++) {
+      assertEquals(expected[idx], actual[idx], tolerance, name + "[" + idx + "]");
+    }
+  }
+
+  /**
+   * Asserts that two models have the same A, B and pi within an absolute tolerance.
+   */
+  public static void assertClose(HMMModel expected, HMMModel actual, double tolerance) {
+    assertClose(expected.a, actual.a, tolerance, "A");
+    assertClose(expected.b, actual.b, tolerance, "B");
+    assertClose(expected.pi, actual.pi, tolerance, "pi");
+  }
+
+  private static void fillDistribution(Random random, double[] values, int offset, int length) {
+    double sum = 0.0;
+    for (int idx = 0; idx < length; idx++) {
+      values[offset + idx] = 0.1 + random.nextDouble();
+      sum += values[offset + idx];
+    }
+    for (int idx = 0; idx < length; idx++) {
+      values[offset + idx] /= sum;
+    }
+  }
+
+  private static int sample(Random random, double[] values, int offset, int length) {
+    double target = random.nextDouble();
+    double sum = 0.0;
+    for (int idx = 0; idx < length - 1; idx++) {
+      sum += values[offset + idx];
+      if (target < sum) {
+        return idx;
+      }
+    }
+    return length - 1;
+  }
+}
@@ -0,0 +1,92 @@
+package main.java.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import main.java.HMM3;
+import org.junit.jupiter.api.Test;
+
+public class TrainingMonitorTest {
+  /**
+   * The listener sees every iteration in order, with the log probabilities that
+   * training acts on. Listening does not change the trained model.
+   */
+  @Test
+  public void reportsEveryIteration() {
+    HMMModel truth = TestModels.model(4, 3, 1);
+    int[] emissions = TestModels.sequence(truth, 1000, 2);
+    HMMModel start = TestModels.model(4, 3, 3);
+
+    for (boolean materializeGamma : new boolean[] {false, true}) {
+      TrainingOptions options = new TrainingOptions();
+      options.maxIters = 12;
+      options.materializeGamma = materializeGamma;
+      HMMModel quiet = start.copy();
+      TrainingResult quietResult = HMM3.trainModel(quiet, emissions, options);
+
+      List<IterationMetrics> reported = new ArrayList<>();
+      options.listener = reported::add;
+      HMMModel listened = start.copy();
+      TrainingResult result = HMM3.trainModel(listened, emissions, options);
+
+      TestModels.assertClose(quiet, listened, 0.0);
+      assertEquals(quietResult.logProb, result.logProb, 0.0);
+      assertEquals(result.iterations, reported.size());
+      double best = (-1) * Double.MAX_VALUE;
+      for (int idx = 0; idx < reported.size(); idx++) {
+        IterationMetrics metrics = reported.get(idx);
+        assertEquals(idx + 1, metrics.iteration);
+        if (idx == 0) {
+          assertTrue(Double.isNaN(metrics.delta));
+        } else {
+          assertEquals(metrics.logProb - reported.get(idx - 1).logProb, metrics.delta, 0.0);
+        }
+        assertTrue(metrics.alphaNanos >= 0 && metrics.betaNanos >= 0
+                   && metrics.reEstimateNanos >= 0);
+        assertTrue(metrics.totalNanos >= metrics.alphaNanos + metrics.betaNanos
+                                          + metrics.gammaNanos + metrics.reEstimateNanos);
+        if (!materializeGamma) {
+          assertEquals(0, metrics.gammaNanos);
+        }
+        best = Math.max(best, metrics.logProb);
+      }
+      assertEquals(result.logProb, best, 0.0);
+    }
+  }
+
+  /**
+   * The parameter changes are those of the re-estimation, and the log probability is
+   * that of the model before it.
+   */
+  @Test
+  public void measuresParameterChanges() {
+    HMMModel truth = TestModels.model(3, 4, 4);
+    int[] emissions = TestModels.sequence(truth, 800, 5);
+    HMMModel before = TestModels.model(3, 4, 6);
+    HMMModel after = before.copy();
+
+    List<IterationMetrics> reported = new ArrayList<>();
+    TrainingOptions options = new TrainingOptions();
+    options.maxIters = 1;
+    options.listener = reported::add;
+    HMM3.trainModel(after, emissions, options);
+
+    IterationMetrics metrics = reported.get(0);
+    assertEquals(ForwardBackward.expectation(before, emissions).logProb, metrics.logProb, 0.0);
+    assertEquals(maxChange(before.a, after.a), metrics.transitionChange, 0.0);
+    assertEquals(maxChange(before.b, after.b), metrics.emissionChange, 0.0);
+    assertEquals(maxChange(before.pi, after.pi), metrics.initialChange, 0.0);
+    assertTrue(metrics.transitionChange > 0.0);
+    assertTrue(metrics.toString().startsWith("iteration 1 logProb "));
+  }
+
+  private static double maxChange(double[] before, double[] after) {
+    double max = 0.0;
+    for (int idx = 0; idx < before.length; idx++) {
+      max = Math.max(max, Math.abs(after[idx] - before[idx]));
+    }
+    return max;
+  }
+}
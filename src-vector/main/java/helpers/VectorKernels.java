@@ -0,0 +1,121 @@
+package main.java.helpers;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels on the preferred (widest) double vector shape of the platform, with a
+ * scalar loop for the tail. Each lane keeps its own partial sum, which is only
+ * reduced at the end, so sums are not in ascending index order.
+ *
+ * Lives in src-vector/ because it needs JDK 16+ and the incubator module, while
+ * the rest of the tree targets Java 10. Loaded reflectively by Kernels.
+ */
+class VectorKernels extends Kernels {
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  VectorKernels() {
+    /**
+     * Fail here rather than on first use if the module is not resolved.
+     */
+    DoubleVector.zero(SPECIES);
+  }
+
+  @Override
+  public String name() {
+    return "vector";
+  }
+
+  @Override
+  public double dot(double sum, double[] x, int xOffset, double[] y, int yOffset, int length) {
+    DoubleVector acc = DoubleVector.zero(SPECIES);
+    int bound = SPECIES.loopBound(length);
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + k);
+      DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + k);
+      acc = vx.fma(vy, acc);
+    }
+    double tail = 0.0;
+    for (; k < length; k++) {
+      tail += x[xOffset + k] * y[yOffset + k];
+    }
+    return sum + (acc.reduceLanes(VectorOperators.ADD) + tail);
+  }
+
+  @Override
+  public double dot(double sum, double weight, double[] x, int xOffset, double[] y, int yOffset,
+                    double[] z, int zOffset, int length) {
+    DoubleVector acc = DoubleVector.zero(SPECIES);
+    int bound = SPECIES.loopBound(length);
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + k);
+      DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + k);
+      DoubleVector vz = DoubleVector.fromArray(SPECIES, z, zOffset + k);
+      acc = vx.mul(weight).mul(vy).fma(vz, acc);
+    }
+    double tail = 0.0;
+    for (; k < length; k++) {
+      tail += weight * x[xOffset + k] * y[yOffset + k] * z[zOffset + k];
+    }
+    return sum + (acc.reduceLanes(VectorOperators.ADD) + tail);
+  }
+
+  @Override
+  public void axpy(double weight, double[] x, int xOffset, double[] out, int outOffset,
+                   int length) {
+    DoubleVector vweight = DoubleVector.broadcast(SPECIES, weight);
+    int bound = SPECIES.loopBound(length);
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + k);
+      DoubleVector vout = DoubleVector.fromArray(SPECIES, out, outOffset + k);
+      vx.fma(vweight, vout).intoArray(out, outOffset + k);
+    }
+    for (; k < length; k++) {
+      out[outOffset + k] += weight * x[xOffset + k];
+    }
+  }
+
+  @Override
+  public void addProducts(double weight, double[] x, int xOffset, double[] y, int yOffset,
+                          double[] out, int outOffset, int length) {
+    int bound = SPECIES.loopBound(length);
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + k);
+      DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + k);
+      DoubleVector vout = DoubleVector.fromArray(SPECIES, out, outOffset + k);
+      vx.mul(weight).fma(vy, vout).intoArray(out, outOffset + k);
+    }
+    for (; k < length; k++) {
+      out[outOffset + k] += weight * x[xOffset + k] * y[yOffset + k];
+    }
+  }
+
+  @Override
+  public double scaledProducts(double weight, double[] x, int xOffset, double[] y, int yOffset,
+                               double[] z, int zOffset, double divisor, double[] out,
+                               int outOffset, int length) {
+    DoubleVector acc = DoubleVector.zero(SPECIES);
+    int bound = SPECIES.loopBound(length);
+    int k = 0;
+    for (; k < bound; k += SPECIES.length()) {
+      DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + k);
+      DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + k);
+      DoubleVector vz = DoubleVector.fromArray(SPECIES, z, zOffset + k);
+      DoubleVector value = vx.mul(weight).mul(vy).mul(vz).div(divisor);
+      value.intoArray(out, outOffset + k);
+      acc = acc.add(value);
+    }
+    double tail = 0.0;
+    for (; k < length; k++) {
+      double value = (weight * x[xOffset + k] * y[yOffset + k] * z[zOffset + k]) / divisor;
+      out[outOffset + k] = value;
+      tail += value;
+    }
+    return acc.reduceLanes(VectorOperators.ADD) + tail;
+  }
+}
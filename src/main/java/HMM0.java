@@ -1,19 +1,58 @@
 package main.java;
-import java.util.Scanner;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 
 import main.java.helpers.ArrayOperations;
+import main.java.helpers.HMMModel;
+import main.java.helpers.KattisReader;
+import main.java.helpers.KattisWriter;
 
 public class HMM0 {
-  public static void main(String[] args) {
-    Scanner sc = new Scanner(System.in);
-    Double[][] A = ArrayOperations.stringToMatrix(sc.nextLine());
-    Double[][] B = ArrayOperations.stringToMatrix(sc.nextLine());
-    Double[][] pi = ArrayOperations.stringToMatrix(sc.nextLine());
-    sc.close();
+  /**
+   * Function that calculates the emission distribution one step ahead, i.e.
+   * pi * A * B.
+   * @param  model The HMM model.
+   * @return Returns the 1*M emission distribution as a flat array.
+   */
+  public static double[] nextEmissionDistribution(HMMModel model) {
+    int numStates = model.numStates;
+    double[] transitionDistribution = ArrayOperations.matrixMultiply(model.pi, model.a, 1,
+                                                                     numStates, numStates);
+    return ArrayOperations.matrixMultiply(transitionDistribution, model.b, 1, numStates,
+                                          model.numSymbols);
+  }
+
+  /**
+   * Function that calculates the emission distribution a number of steps ahead,
+   * i.e. pi * A^steps * B. A^steps is built by repeated squaring, so answering for
+   * millions of steps costs O(N^3 log steps) instead of one product per step.
+   * @param  model The HMM model.
+   * @param  steps The number of transitions to look ahead, 1 is the same as
+   * nextEmissionDistribution.
+   * @param  pool The pool for the matrix products, null runs them sequentially.
+   * @return Returns the 1*M emission distribution as a flat array.
+   */
+  public static double[] emissionDistribution(HMMModel model, long steps, ForkJoinPool pool) {
+    int numStates = model.numStates;
+    double[] transition = ArrayOperations.matrixPower(model.a, numStates, steps, pool);
+    double[] stateDistribution = ArrayOperations.matrixMultiply(model.pi, transition, 1,
+                                                                numStates, numStates);
+    return ArrayOperations.matrixMultiply(stateDistribution, model.b, 1, numStates,
+                                          model.numSymbols);
+  }
+
+  public static void main(String[] args) throws IOException {
+    KattisReader reader = new KattisReader(System.in);
+    HMMModel model = reader.readModel();
 
-    Double[][] transitionDistribution = ArrayOperations.matrixMultiply(pi, A);
-    Double[][] emissionDistribution = ArrayOperations.matrixMultiply(transitionDistribution, B);
-    String emissionString = ArrayOperations.matrixToString(emissionDistribution);
-    System.out.println(emissionString);
+    /**
+     * The number of steps to look ahead can be given as the first argument.
+     */
+    double[] emissionDistribution = args.length > 0
+        ? emissionDistribution(model, Long.parseLong(args[0]), null)
+        : nextEmissionDistribution(model);
+    KattisWriter writer = new KattisWriter(System.out);
+    writer.writeMatrix(emissionDistribution, 1, model.numSymbols);
+    writer.flush();
   }
 }
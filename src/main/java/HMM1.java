@@ -1,12 +1,20 @@
 package main.java;
-import java.util.Scanner;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
-import main.java.helpers.ArrayOperations;
+import main.java.helpers.BatchScorer;
+import main.java.helpers.HMMModel;
+import main.java.helpers.KattisReader;
+import main.java.helpers.KattisWriter;
+import main.java.helpers.StreamingScorer;
 
 public class HMM1 {
   /**
    * Function that calculates the probability of an emission sequence using the
-   * forward pass (alpha-pass) algorithm.
+   * forward pass (alpha-pass) algorithm. Adapter over the primitive alphaPass.
    * @param  A The A-matrix of an HMM, namely the transition matrix.
    * @param  B The B-matrix of an HMM, namely the emission probability matrix.
    * @param  pi The initial state distribution represented as a 1*N matrix.
@@ -14,33 +22,60 @@ public class HMM1 {
    * @return Returns the probability of the observed sequence as a scalar value.
    */
   public static Double alphaPass(Double[][] A, Double[][] B, Double[][] pi, int[] emissions) {
-    int numStates = A.length;
+    return alphaPass(HMMModel.fromMatrices(A, B, pi), emissions);
+  }
+
+  /**
+   * Function that calculates the probability of an emission sequence using the
+   * forward pass (alpha-pass) algorithm.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @return Returns the probability of the observed sequence as a scalar value.
+   */
+  public static double alphaPass(HMMModel model, int[] emissions) {
+    int numStates = model.numStates;
     int numEmissions = emissions.length;
+    double[] a = model.a;
+    double[] b = model.b;
+    int bStride = model.bStride;
     /**
-     * Matrix holding the alpha values. Since we need to keep track of both the
-     * current values and the values at the time-step before, an array will not
-     * suffice. The matrix has t=|emissions| columns to keep hold of the alpha
-     * values at every step. To free up RAM we could have a N*2 matrix instead
-     * where we just shift the column at every time step.
+     * Only the current and the previous alpha vectors are needed for the final
+     * probability, so we keep two N-vectors and swap them at every time step.
      */
-    Double[][] alphaMat = new Double[numStates][numEmissions];
+    double[] alpha = new double[numStates];
+    double[] nextAlpha = new double[numStates];
 
-    for (int step = 0; step < numEmissions; step++) {
-      for (int i = 0; i < numStates; i++) {
-        /**
-         * If we're at the first step we initialize the alpha matrix with the
-         * rules defined, i.e. making use of the initial state distribution.
-         */
-        if (step == 0) {
-          alphaMat[i][step] = B[i][emissions[step]] * pi[0][i];
-        } else { // Else we use the normal method of using the previous time step's values
-          Double transitionSum = 0.0;
-          for (int j = 0; j < numStates; j++) {
-            transitionSum += A[j][i] * alphaMat[j][step-1];
+    /**
+     * At the first step we initialize alpha with the rules defined, i.e. making
+     * use of the initial state distribution.
+     */
+    for (int i = 0; i < numStates; i++) {
+      alpha[i] = b[i * bStride + emissions[0]] * model.pi[i];
+    }
+    for (int step = 1; step < numEmissions; step++) {
+      /**
+       * Accumulates sum_j A[j][i] * alpha[j] row by row of A, so A is read
+       * contiguously. Each alpha[i] still sums its terms in ascending j.
+       */
+      if (model.transitions != null) {
+        model.transitions.forward(a, alpha, 0, nextAlpha, 0);
+      } else {
+        Arrays.fill(nextAlpha, 0.0);
+        for (int j = 0; j < numStates; j++) {
+          double prevAlpha = alpha[j];
+          int aRow = j * numStates;
+          for (int i = 0; i < numStates; i++) {
+            nextAlpha[i] += a[aRow + i] * prevAlpha;
           }
-          alphaMat[i][step] = B[i][emissions[step]] * transitionSum;
         }
       }
+      int emission = emissions[step];
+      for (int i = 0; i < numStates; i++) {
+        nextAlpha[i] = b[i * bStride + emission] * nextAlpha[i];
+      }
+      double[] tmp = alpha;
+      alpha = nextAlpha;
+      nextAlpha = tmp;
     }
 
     /**
@@ -49,20 +84,61 @@ public class HMM1 {
      */
     double probSum = 0.0;
     for (int i = 0; i < numStates; i++) {
-      probSum += alphaMat[i][numEmissions-1];
+      probSum += alpha[i];
     }
     return probSum;
   }
 
-  public static void main(String[] args) {
-    Scanner sc = new Scanner(System.in);
-    Double[][] A = ArrayOperations.stringToMatrix(sc.nextLine());
-    Double[][] B = ArrayOperations.stringToMatrix(sc.nextLine());
-    Double[][] pi = ArrayOperations.stringToMatrix(sc.nextLine());
-    int[] emissions = ArrayOperations.stringToArray(sc.nextLine());
-    sc.close();
-    
-    Double res = alphaPass(A, B, pi, emissions);
-    System.out.println(res);
+  /**
+   * Function that calculates the natural logarithm probability of an emission
+   * sequence with a scaled forward pass in O(N) memory. Unlike alphaPass this does
+   * not underflow on long sequences.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @return Returns the natural logarithm probability of the observed sequence.
+   */
+  public static double logLikelihood(HMMModel model, int[] emissions) {
+    return StreamingScorer.logLikelihood(model, Arrays.stream(emissions));
+  }
+
+  /**
+   * Function that calculates the natural logarithm probability of many emission
+   * sequences with BatchScorer. Reuse a BatchScorer instead when scoring several
+   * batches against the same model.
+   * @param  model The HMM model.
+   * @param  sequences The observed emission sequences.
+   * @param  pool The pool to run on, null uses the common pool.
+   * @return Returns the log-likelihoods in the order of the sequences.
+   */
+  public static double[] logLikelihoods(HMMModel model, List<int[]> sequences,
+                                        ForkJoinPool pool) {
+    return new BatchScorer(model).logLikelihoods(sequences, pool);
+  }
+
+  public static void main(String[] args) throws IOException {
+    KattisReader reader = new KattisReader(System.in);
+    HMMModel model = reader.readModel();
+    KattisWriter writer = new KattisWriter(System.out);
+
+    /**
+     * With --batch, every remaining line is a sequence, and the log-likelihood of
+     * each is written on its own line.
+     */
+    if (args.length > 0 && args[0].equals("--batch")) {
+      List<int[]> sequences = new ArrayList<>();
+      while (reader.hasNext()) {
+        sequences.add(reader.readArray());
+      }
+      for (double logProb : logLikelihoods(model, sequences, null)) {
+        writer.writeLine(logProb);
+      }
+      writer.flush();
+      return;
+    }
+
+    int[] emissions = reader.readArray();
+    double res = alphaPass(model, emissions);
+    writer.writeLine(res);
+    writer.flush();
   }
 }
@@ -1,12 +1,18 @@
 package main.java;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Paths;
 
-import main.java.helpers.ArrayOperations;
+import main.java.helpers.EmissionFile;
+import main.java.helpers.HMMModel;
+import main.java.helpers.KattisReader;
+import main.java.helpers.KattisWriter;
+import main.java.helpers.LogViterbi;
 
 public class HMM2 {
   /**
    * Function that implements the delta-pass algorithm, used for estimating
-   * the sequence of states given an emission sequence.
+   * the sequence of states given an emission sequence. Adapter over the
+   * primitive deltaPass.
    * @param  A The A-matrix of an HMM, namely the transition matrix.
    * @param  B The B-matrix of an HMM, namely the emission probability matrix.
    * @param  pi The initial state distribution represented as a 1*N matrix.
@@ -14,84 +20,52 @@ public class HMM2 {
    * @return Returns an integer array with the estimation of the state sequence.
    */
   public static int[] deltaPass(Double[][] A, Double[][] B, Double[][] pi, int[] emissions) {
-    int numStates = A.length;
-    int numEmissions = emissions.length;
-    /**
-     * Keep two matrices here for simplicity. One is used for holding the actual
-     * delta probabilities, while the other one is used for keeping track of the
-     * most likely state to have come from at any given step.
-     */
-    Double[][] deltaMat = new Double[numStates][numEmissions];
-    int[][] deltaIndexMat = new int[numStates][numEmissions];
+    return deltaPass(HMMModel.fromMatrices(A, B, pi), emissions);
+  }
 
-    for (int step = 0; step < numEmissions; step++) {
-      for (int i = 0; i < numStates; i++) {
-        if (step == 0) {
-          deltaMat[i][step] = B[i][emissions[step]] * pi[0][i];
-        } else {
-          Double maxProb = 0.0; // Value to be stored in the delta matrix.
-          int argMax = -1; // Value to be stored in the delta index matrix.
-          for (int j = 0; j < numStates; j++) {
-            Double currProb = A[j][i] * deltaMat[j][step-1] * B[i][emissions[step]];
-            if (currProb >= maxProb) {
-              maxProb = currProb;
-              argMax = j;
-            }
-          }
-          deltaMat[i][step] = maxProb;
-          /**
-           * The delta index matrix 'slacks' one step behind since the indices
-           * at step k come from the probability distribution at step k-1.
-           */
-          deltaIndexMat[i][step-1] = argMax;
-        }
-      }
-    }
+  /**
+   * Function that implements the delta-pass algorithm, used for estimating
+   * the sequence of states given an emission sequence. Works on log
+   * probabilities, so long sequences do not underflow.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @return Returns an integer array with the estimation of the state sequence.
+   */
+  public static int[] deltaPass(HMMModel model, int[] emissions) {
+    return new LogViterbi(model).decode(emissions);
+  }
 
-    /**
-     * Two loops for 1) calculating the max probability at the last step (=T) and
-     * 2) Setting all the values in the last column of the index matrix to that
-     * number (could equally well just store this index in a variable and let the
-     * matrix have dimensions N*(T-1) instead).
-     */
-    Double maxProb = 0.0;
-    Double currProb;
-    int argMax = -1;
-    for (int i = 0; i < numStates; i++) {
-      currProb = deltaMat[i][numEmissions-1];
-      if (currProb > maxProb) {
-        maxProb = currProb;
-        argMax = i;
-      }
-    }
-    for (int i = 0; i < numStates; i++) {
-      deltaIndexMat[i][numEmissions-1] = argMax;
-    }
+  /**
+   * Function that implements the delta-pass algorithm with beam pruning. States
+   * whose log delta falls more than beamWidth below the best state of a step are
+   * not followed any further, which trades exactness for speed on large N.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  beamWidth The beam in natural log units, Double.POSITIVE_INFINITY for none.
+   * @return Returns an integer array with the estimation of the state sequence.
+   */
+  public static int[] deltaPass(HMMModel model, int[] emissions, double beamWidth) {
+    return new LogViterbi(model).decode(emissions, beamWidth);
+  }
 
+  public static void main(String[] args) throws IOException {
+    KattisReader reader = new KattisReader(System.in);
+    HMMModel model = reader.readModel();
     /**
-     * Fills the probableStates array with values taken from the delta index matrix.
+     * With --emissions followed by the path of an emission file and an output path,
+     * the mapped file is decoded and the states are written to the output path as
+     * an emission file; standard input then holds only the model.
      */
-    int[] probableStates = new int[numEmissions];
-    for (int i = numEmissions-1; i >= 0; i--){
-      if (i == numEmissions - 1) {
-        probableStates[i] = deltaIndexMat[0][i];
-      } else {
-        probableStates[i] = deltaIndexMat[probableStates[i+1]][i];
-      }
+    if (args.length > 2 && args[0].equals("--emissions")) {
+      new LogViterbi(model).decode(EmissionFile.map(Paths.get(args[1])),
+                                   Double.POSITIVE_INFINITY, null, Paths.get(args[2]));
+      return;
     }
-    return probableStates;
-  }
-
-  public static void main(String[] args) {
-    Scanner sc = new Scanner(System.in);
-    Double[][] A = ArrayOperations.stringToMatrix(sc.nextLine());
-    Double[][] B = ArrayOperations.stringToMatrix(sc.nextLine());
-    Double[][] pi = ArrayOperations.stringToMatrix(sc.nextLine());
-    int[] emissions = ArrayOperations.stringToArray(sc.nextLine());
-    sc.close();
+    int[] emissions = reader.readArray();
 
-    int[] probableStates = deltaPass(A, B, pi, emissions);
-    String res = ArrayOperations.arrayToString(probableStates);
-    System.out.println(res);
+    int[] probableStates = deltaPass(model, emissions);
+    KattisWriter writer = new KattisWriter(System.out);
+    writer.writeArray(probableStates);
+    writer.flush();
   }
 }
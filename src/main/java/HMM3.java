@@ -1,14 +1,41 @@
 package main.java;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import main.java.helpers.AlphaPass;
-import main.java.helpers.Gamma;
 import main.java.helpers.ArrayOperations;
+import main.java.helpers.Gamma;
+import main.java.helpers.EMIterations;
+import main.java.helpers.EmissionFile;
+import main.java.helpers.FlatAlphaPass;
+import main.java.helpers.FlatGamma;
+import main.java.helpers.ForwardBackward;
+import main.java.helpers.HMMModel;
+import main.java.helpers.Kernels;
+import main.java.helpers.KattisReader;
+import main.java.helpers.KattisWriter;
+import main.java.helpers.ModelFile;
+import main.java.helpers.MultiRestartTraining;
+import main.java.helpers.OnlineTraining;
+import main.java.helpers.ParallelExpectation;
+import main.java.helpers.ParallelForward;
+import main.java.helpers.SparseTransitions;
+import main.java.helpers.StreamingScorer;
+import main.java.helpers.SufficientStatistics;
+import main.java.helpers.TrainingListener;
+import main.java.helpers.TrainingMonitor;
+import main.java.helpers.TrainingOptions;
+import main.java.helpers.TrainingResult;
+import main.java.helpers.Workspace;
 import java.lang.Math;
 
 public class HMM3 {
   /**
    * Function that calculates the probability of an emission sequence using the
    * forward pass (alpha-pass) algorithm, as well as scaling the alpha matrix.
+   * Adapter over the primitive alphaPassScale.
    * @param  A The A-matrix of an HMM, namely the transition matrix.
    * @param  B The B-matrix of an HMM, namely the emission probability matrix.
    * @param  pi The initial state distribution represented as a 1*N matrix.
@@ -18,55 +45,100 @@ public class HMM3 {
    */
   public static AlphaPass alphaPassScale(Double[][] A, Double[][] B, Double[][] pi, int[] emissions) {
     int numStates = A.length;
+    FlatAlphaPass flat = alphaPassScale(HMMModel.fromMatrices(A, B, pi), emissions);
+    Double[][] alphaMat = toStateMajor(flat.alphaMat, numStates, emissions.length);
+    Double[] scalingFactors = new Double[emissions.length];
+    for (int step = 0; step < emissions.length; step++) {
+      scalingFactors[step] = flat.scalingFactors[step];
+    }
+    return new AlphaPass(alphaMat, scalingFactors);
+  }
+
+  /**
+   * Function that calculates the probability of an emission sequence using the
+   * forward pass (alpha-pass) algorithm, as well as scaling the alpha matrix.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @return Returns a FlatAlphaPass object containing the time-major alpha matrix
+   * as well as the scaling factors.
+   */
+  public static FlatAlphaPass alphaPassScale(HMMModel model, int[] emissions) {
+    return alphaPassScale(model, emissions, Kernels.get());
+  }
+
+  /**
+   * Function that calculates the probability of an emission sequence using the
+   * forward pass (alpha-pass) algorithm, as well as scaling the alpha matrix.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  kernels The implementation of the inner loops.
+   * @return Returns a FlatAlphaPass object containing the time-major alpha matrix
+   * as well as the scaling factors.
+   */
+  public static FlatAlphaPass alphaPassScale(HMMModel model, int[] emissions, Kernels kernels) {
+    int numStates = model.numStates;
     int numEmissions = emissions.length;
+    SparseTransitions sparse = model.transitions;
     /**
-     * Matrix holding the alpha values. Since we need to keep track of both the
-     * current values and the values at the time-step before, an array will not
-     * suffice. The matrix has t=|emissions| columns to keep hold of the alpha
-     * values at every step. To free up RAM we could have a N*2 matrix instead
-     * where we just shift the column at every time step.
+     * A is transposed once, so sum_j A[j][i] * alpha[j] is a dot product of two
+     * contiguous vectors. Sparse transitions walk the nonzeros of column i instead.
      */
-    Double[][] alphaMat = new Double[numStates][numEmissions];
-    Double[] scalingFactors = new Double[numEmissions];
-    Double c; // Variable used for scaling.
-    for (int step = 0; step < numEmissions; step++) {
+    double[] aT = sparse == null ? ArrayOperations.transpose(model.a, numStates, numStates)
+                                 : null;
+    double[] b = model.b;
+    int bStride = model.bStride;
+    double[] alphaMat = new double[numStates * numEmissions];
+    double[] scalingFactors = new double[numEmissions];
+    double c; // Variable used for scaling.
+
+    /**
+     * At the first step we initialize the alpha matrix with the rules defined,
+     * i.e. making use of the initial state distribution.
+     */
+    c = 0.0;
+    for (int i = 0; i < numStates; i++) {
+      alphaMat[i] = b[i * bStride + emissions[0]] * model.pi[i];
+      c += alphaMat[i];
+    }
+    c = 1/c;
+    for (int i = 0; i < numStates; i++) {
+      alphaMat[i] *= c;
+    }
+    scalingFactors[0] = c;
+
+    for (int step = 1; step < numEmissions; step++) {
+      int prev = (step - 1) * numStates;
+      int curr = step * numStates;
+      if (sparse != null) {
+        sparse.forward(model.a, alphaMat, prev, alphaMat, curr);
+      } else {
+        for (int i = 0; i < numStates; i++) {
+          alphaMat[curr + i] = kernels.dot(0.0, aT, i * numStates, alphaMat, prev, numStates);
+        }
+      }
+      int emission = emissions[step];
       c = 0.0;
       for (int i = 0; i < numStates; i++) {
-        /**
-         * If we're at the first step we initialize the alpha matrix with the
-         * rules defined, i.e. making use of the initial state distribution.
-         */
-        if (step == 0) {
-          alphaMat[i][step] = B[i][emissions[step]] * pi[0][i];
-          c += alphaMat[i][step];
-        } else { // Else we use the normal method of using the previous time step's values
-          Double transitionSum = 0.0;
-          for (int j = 0; j < numStates; j++) {
-            transitionSum += A[j][i] * alphaMat[j][step-1];
-          }
-          alphaMat[i][step] = B[i][emissions[step]] * transitionSum;
-          c += alphaMat[i][step];
-        }
-        /**
-         * If last value in current column, we scale the entirety of the current
-         * column of the matrix, as per the Stamp tutorial.
-         */
-        if (i == numStates-1) {
-          c = 1/c;
-          for (int scaleI = 0; scaleI < numStates; scaleI++) {
-            alphaMat[scaleI][step] *= c;
-          }
-        }
+        alphaMat[curr + i] = b[i * bStride + emission] * alphaMat[curr + i];
+        c += alphaMat[curr + i];
+      }
+      /**
+       * Scale the entirety of the current column of the matrix, as per the Stamp
+       * tutorial.
+       */
+      c = 1/c;
+      for (int i = 0; i < numStates; i++) {
+        alphaMat[curr + i] *= c;
       }
       scalingFactors[step] = c;
     }
-    return new AlphaPass(alphaMat, scalingFactors);
+    return new FlatAlphaPass(numStates, alphaMat, scalingFactors);
   }
 
   /**
    * Function that performs the Beta-pass (or backwards-pass) algorithm for computing
    * the most likely state sequence, starting from the back and progressing to the front
-   * (time-step-wise).
+   * (time-step-wise). Adapter over the primitive betaPassScale.
    * @param  A The A-matrix of an HMM, namely the transition matrix.
    * @param  B The B-matrix of an HMM, namely the emission probability matrix.
    * @param  pi The initial state distribution represented as a 1*N matrix.
@@ -75,28 +147,76 @@ public class HMM3 {
    */
   public static Double[][] betaPassScale(Double[][] A, Double[][] B, Double[][] pi,
                                          int[] emissions, Double[] scalingFactors) {
-    int numStates = A.length;
+    double[] scaling = new double[scalingFactors.length];
+    for (int step = 0; step < scaling.length; step++) {
+      scaling[step] = scalingFactors[step];
+    }
+    double[] beta = betaPassScale(HMMModel.fromMatrices(A, B, pi), emissions, scaling);
+    return toStateMajor(beta, A.length, emissions.length);
+  }
+
+  /**
+   * Function that performs the Beta-pass (or backwards-pass) algorithm, starting
+   * from the back and progressing to the front (time-step-wise).
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  scalingFactors The scaling factors computed by the alpha-pass.
+   * @return Returns the time-major beta matrix, beta_t(i) at [t * N + i].
+   */
+  public static double[] betaPassScale(HMMModel model, int[] emissions, double[] scalingFactors) {
+    return betaPassScale(model, emissions, scalingFactors, Kernels.get());
+  }
+
+  /**
+   * Function that performs the Beta-pass (or backwards-pass) algorithm, starting
+   * from the back and progressing to the front (time-step-wise).
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  scalingFactors The scaling factors computed by the alpha-pass.
+   * @param  kernels The implementation of the inner loops.
+   * @return Returns the time-major beta matrix, beta_t(i) at [t * N + i].
+   */
+  public static double[] betaPassScale(HMMModel model, int[] emissions, double[] scalingFactors,
+                                       Kernels kernels) {
+    int numStates = model.numStates;
     int numEmissions = emissions.length;
-    Double[][] betaMat = new Double[numStates][numEmissions];
+    double[] a = model.a;
+    /**
+     * B is transposed once, so the column B[.][o] is contiguous.
+     */
+    double[] bT = ArrayOperations.transpose(model.b, numStates, model.bStride);
+    SparseTransitions sparse = model.transitions;
+    double[] betaMat = new double[numStates * numEmissions];
     /**
      * Setting the last column of the beta matrix to the scaling factors.
      */
+    int last = (numEmissions - 1) * numStates;
     for (int i = 0; i < numStates; i++) {
-      betaMat[i][numEmissions-1] = scalingFactors[numEmissions-1];
+      betaMat[last + i] = scalingFactors[numEmissions-1];
     }
 
-    Double currProb;
+    double currProb;
     /**
      * Starting from the back instead of the front since this is a backwards-pass.
      */
     for (int step = numEmissions-2; step >= 0; step--) {
+      int curr = step * numStates;
+      int next = curr + numStates;
+      int emission = emissions[step+1] * numStates;
       for (int i = 0; i < numStates; i++) {
-        currProb = 0.0;
-        for (int j = 0; j < numStates; j++) {
-          currProb += A[i][j] * B[j][emissions[step+1]] * betaMat[j][step+1];
+        if (sparse != null) {
+          currProb = 0.0;
+          int aRow = i * numStates;
+          for (int idx = sparse.rowStarts[i]; idx < sparse.rowStarts[i + 1]; idx++) {
+            int j = sparse.rowColumns[idx];
+            currProb += a[aRow + j] * bT[emission + j] * betaMat[next + j];
+          }
+        } else {
+          currProb = kernels.dot(0.0, 1.0, a, i * numStates, bT, emission, betaMat, next,
+                                 numStates);
         }
         currProb *= scalingFactors[step];
-        betaMat[i][step] = currProb;
+        betaMat[curr + i] = currProb;
       }
     }
     return betaMat;
@@ -107,7 +227,7 @@ public class HMM3 {
    * probability of being in state i at time t given the emission sequence and the
    * current estimation of the HMM model) and di-gamma (the probability of being in
    * state i at time t and transitioning to state j at the next time step, given the
-   * same parameters).
+   * same parameters). Adapter over the primitive computeGamma.
    * @param  A The A-matrix of an HMM, namely the transition matrix.
    * @param  B The B-matrix of an HMM, namely the emission probability matrix.
    * @param  pi The initial state distribution represented as a 1*N matrix.
@@ -122,79 +242,288 @@ public class HMM3 {
                                         Double[][] beta) {
     int numStates = A.length;
     int numEmissions = emissions.length;
-    Double[][] alpha = alphaObj.alphaMat;
+    FlatAlphaPass flatAlpha = new FlatAlphaPass(numStates,
+        toTimeMajor(alphaObj.alphaMat, numStates, numEmissions), null);
+    FlatGamma flat = computeGamma(HMMModel.fromMatrices(A, B, pi), emissions, flatAlpha,
+                                  toTimeMajor(beta, numStates, numEmissions));
 
-    Double[][] monoGamma = new Double[numStates][numEmissions];
+    Double[][] monoGamma = toStateMajor(flat.monoGamma, numStates, numEmissions);
     Double[][][] diGamma = new Double[numStates][numStates][numEmissions];
-    Double denom;
-    Double currVal;
     for (int step = 0; step < numEmissions-1; step++) {
-      denom = 0.0;
       for (int i = 0; i < numStates; i++) {
         for (int j = 0; j < numStates; j++) {
-          denom += alpha[i][step] * A[i][j] * B[j][emissions[step+1]] * beta[j][step+1];
+          diGamma[i][j][step] = flat.diGamma[(step * numStates + i) * numStates + j];
         }
       }
-      for (int i = 0; i < numStates; i++) {
-        currVal = 0.0;
-        for (int j= 0; j < numStates; j++) {
-          diGamma[i][j][step] = (alpha[i][step] * A[i][j] * B[j][emissions[step+1]]
-                                 * beta[j][step+1]) / denom;
-          currVal += diGamma[i][j][step];
+    }
+    return new Gamma(monoGamma, diGamma);
+  }
+
+  /**
+   * Function for computing the mono-gamma and di-gamma matrices on primitive,
+   * time-major storage.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  alphaObj An object containing the time-major alpha matrix.
+   * @param  beta The time-major beta matrix.
+   * @return Returns a FlatGamma object. The di-gamma array holds T-1 steps of N*N
+   * values since there is no transition out of the last step.
+   */
+  public static FlatGamma computeGamma(HMMModel model, int[] emissions,
+                                       FlatAlphaPass alphaObj, double[] beta) {
+    return computeGamma(model, emissions, alphaObj, beta, Kernels.get());
+  }
+
+  /**
+   * Function for computing the mono-gamma and di-gamma matrices on primitive,
+   * time-major storage.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  alphaObj An object containing the time-major alpha matrix.
+   * @param  beta The time-major beta matrix.
+   * @param  kernels The implementation of the inner loops.
+   * @return Returns a FlatGamma object. The di-gamma array holds T-1 steps of N*N
+   * values since there is no transition out of the last step.
+   */
+  public static FlatGamma computeGamma(HMMModel model, int[] emissions, FlatAlphaPass alphaObj,
+                                       double[] beta, Kernels kernels) {
+    int numStates = model.numStates;
+    int numEmissions = emissions.length;
+    int numPairs = numStates * numStates;
+    double[] a = model.a;
+    double[] bT = ArrayOperations.transpose(model.b, numStates, model.bStride);
+    SparseTransitions sparse = model.transitions;
+    double[] alpha = alphaObj.alphaMat;
+
+    double[] monoGamma = new double[numStates * numEmissions];
+    double[] diGamma = new double[numPairs * Math.max(numEmissions - 1, 0)];
+    double denom;
+    for (int step = 0; step < numEmissions-1; step++) {
+      int curr = step * numStates;
+      int next = curr + numStates;
+      int emission = emissions[step+1] * numStates;
+      int diRow = step * numPairs;
+      if (sparse != null) {
+        /**
+         * Only the nonzeros of A have a di-gamma, the rest of the step stays zero.
+         */
+        denom = 0.0;
+        for (int i = 0; i < numStates; i++) {
+          int aRow = i * numStates;
+          for (int idx = sparse.rowStarts[i]; idx < sparse.rowStarts[i + 1]; idx++) {
+            int j = sparse.rowColumns[idx];
+            denom += alpha[curr + i] * a[aRow + j] * bT[emission + j] * beta[next + j];
+          }
+        }
+        for (int i = 0; i < numStates; i++) {
+          int aRow = i * numStates;
+          double currVal = 0.0;
+          for (int idx = sparse.rowStarts[i]; idx < sparse.rowStarts[i + 1]; idx++) {
+            int j = sparse.rowColumns[idx];
+            double value = (alpha[curr + i] * a[aRow + j] * bT[emission + j] * beta[next + j])
+                           / denom;
+            diGamma[diRow + aRow + j] = value;
+            currVal += value;
+          }
+          monoGamma[curr + i] = currVal;
+        }
+      } else {
+        denom = 0.0;
+        for (int i = 0; i < numStates; i++) {
+          denom = kernels.dot(denom, alpha[curr + i], a, i * numStates, bT, emission, beta,
+                              next, numStates);
+        }
+        for (int i = 0; i < numStates; i++) {
+          int aRow = i * numStates;
+          monoGamma[curr + i] = kernels.scaledProducts(alpha[curr + i], a, aRow, bT, emission,
+                                                       beta, next, denom, diGamma,
+                                                       diRow + aRow, numStates);
         }
-        monoGamma[i][step] = currVal;
       }
     }
 
+    int last = (numEmissions - 1) * numStates;
     denom = 0.0;
     for (int i = 0; i < numStates; i++) {
-      denom += alpha[i][numEmissions-1];
+      denom += alpha[last + i];
     }
     for (int i = 0; i < numStates; i++) {
-      monoGamma[i][numEmissions-1] = alpha[i][numEmissions-1] / denom;
+      monoGamma[last + i] = alpha[last + i] / denom;
     }
-    return new Gamma(monoGamma, diGamma);
+    return new FlatGamma(numStates, monoGamma, diGamma);
   }
 
   /**
    * The main function for training the HMM model. Calls all the pass algorithms as well
    * as the gamma, re-estimation and logarithm probability functions. Void function
    * so only changes the values of the matrices instead of returning anything.
+   * Adapter over the primitive trainModel.
    * @param aApprox The approximated A-matrix of an HMM, namely the transition matrix.
    * @param bApprox The approximated B-matrix of an HMM, namely the emission probability matrix.
    * @param piApprox The estimated initial state distribution represented as a 1*N matrix.
    * @param emissions The observed emission sequence in an array.
    */
   public static void trainModel(Double[][] aApprox, Double[][] bApprox, Double[][] piApprox, int[] emissions) {
-    /**
-     * Value set to fit the Kattis time limits, in case the log probability doesn't
-     * converge quickly enough.
-     */
-    int maxIters = 100;
-    Double oldLogProb = (-1) * Double.MAX_VALUE;
+    HMMModel model = HMMModel.fromMatrices(aApprox, bApprox, piApprox);
+    trainModel(model, emissions);
+    model.copyTo(aApprox, bApprox, piApprox);
+  }
+
+  /**
+   * The main function for training the HMM model on primitive storage. Updates the
+   * parameters of the model in place.
+   * @param model The approximated HMM model, used as the starting guess.
+   * @param emissions The observed emission sequence in an array.
+   * @return The best log probability seen and the number of iterations run.
+   */
+  public static TrainingResult trainModel(HMMModel model, int[] emissions) {
+    return trainModel(model, emissions, new TrainingOptions());
+  }
 
-    Double logProb;
+  /**
+   * The main function for training the HMM model on primitive storage. Updates the
+   * parameters of the model in place.
+   * @param model The approximated HMM model, used as the starting guess.
+   * @param emissions The observed emission sequence in an array.
+   * @param options Iteration limit, stopping criteria, acceleration and choice of
+   * expectation step.
+   * @return The best log probability seen, the number of iterations run and whether
+   * the tolerances were met.
+   * @throws IllegalArgumentException If there are no emissions, since re-estimating
+   * from no data would overwrite the model with NaN, or if the options cannot be
+   * combined.
+   */
+  public static TrainingResult trainModel(HMMModel model, int[] emissions,
+                                          TrainingOptions options) {
+    options.validate();
+    if (emissions.length == 0) {
+      throw new IllegalArgumentException("No emissions to train on");
+    }
     /**
-     * Runs for 1 to maxIters iterations, breaking early if the logarithm probability
-     * converges.
+     * Runs for 1 to maxIters iterations, stopping early once the gain in logarithm
+     * probability falls below the tolerances or the time budget is used up.
      */
-    for (int iter = 0; iter < maxIters; iter++) {
-      AlphaPass alpha = alphaPassScale(aApprox, bApprox, piApprox, emissions);
-      Double[][] beta = betaPassScale(aApprox, bApprox, piApprox, emissions, alpha.scalingFactors);
-      Gamma gamma = computeGamma(aApprox, bApprox, piApprox, emissions, alpha, beta);
-      reEstimate(aApprox, bApprox, piApprox, gamma, emissions);
+    TrainingMonitor monitor = new TrainingMonitor(options.listener);
+    Workspace workspace = new Workspace();
+    return EMIterations.run(model, current -> emStep(current, emissions, options, monitor,
+                                                     workspace), options);
+  }
+
+  /**
+   * The main function for training on a memory-mapped emission file, for sequences
+   * too long for the heap. Always uses the checkpointed expectation step, since the
+   * fused one stores the N*T alpha matrix.
+   * @param model The approximated HMM model, used as the starting guess.
+   * @param emissions The observed emissions.
+   * @param options Iteration limit, stopping criteria, acceleration, checkpoint
+   * interval and whether the recomputed segment is stored in float.
+   * @return The best log probability seen, the number of iterations run and whether
+   * the tolerances were met.
+   * @throws IllegalArgumentException If the file has more symbols than the model, or
+   * the options ask for the materialized or the parallel forward passes, which need
+   * the whole sequence in memory.
+   */
+  public static TrainingResult trainModel(HMMModel model, EmissionFile emissions,
+                                          TrainingOptions options) {
+    emissions.checkSymbols(model);
+    if (options.materializeGamma || options.parallelForward) {
+      throw new IllegalArgumentException("Training on an emission file is always "
+                                         + "checkpointed");
+    }
+    TrainingMonitor monitor = new TrainingMonitor(options.listener);
+    return EMIterations.run(model, current -> {
+      monitor.start(current);
+      SufficientStatistics stats = ForwardBackward.checkpointedExpectation(
+          current, emissions, options.checkpointInterval, options.singlePrecision);
+      monitor.expectationDone(stats);
+      stats.reEstimate(current);
+      monitor.end(current, stats.logProb);
+      return stats.logProb;
+    }, options);
+  }
+
+  /**
+   * One expectation and re-estimation iteration with the expectation step chosen by
+   * the options. The fused step reuses the alpha matrix of the workspace.
+   * @return The logarithm probability of the model before re-estimation.
+   */
+  private static double emStep(HMMModel model, int[] emissions, TrainingOptions options,
+                               TrainingMonitor monitor, Workspace workspace) {
+    monitor.start(model);
+    double logProb;
+    if (options.materializeGamma) {
+      FlatAlphaPass alpha = options.parallelForward
+          ? ParallelForward.alphaPassScale(model, emissions, options.pool)
+          : alphaPassScale(model, emissions);
+      monitor.alphaDone();
+      double[] beta = betaPassScale(model, emissions, alpha.scalingFactors);
+      monitor.betaDone();
+      FlatGamma gamma = computeGamma(model, emissions, alpha, beta);
+      monitor.gammaDone();
+      reEstimate(model, gamma, emissions);
       logProb = calculateLogProb(alpha.scalingFactors);
-      if (logProb > oldLogProb) {
-        oldLogProb = logProb;
-      } else {
-        break;
-      }
+    } else {
+      SufficientStatistics stats = ForwardBackward.expectation(model, emissions, options,
+                                                               workspace);
+      monitor.expectationDone(stats);
+      stats.reEstimate(model);
+      logProb = stats.logProb;
     }
+    monitor.end(model, logProb);
+    return logProb;
+  }
 
+  /**
+   * Trains options.restarts randomized starting guesses concurrently on
+   * options.pool, abandoning the ones that fall clearly behind, and keeps the best.
+   * Uses the fused or checkpointed expectation step, materializeGamma is ignored.
+   * @param model The starting guess, perturbed for all restarts but the first.
+   * Receives the best trained model.
+   * @param emissions The observed emission sequence in an array.
+   * @param options Iteration limit, expectation step, pool and restart settings.
+   * @return The log probability and number of iterations of the best restart.
+   */
+  public static TrainingResult trainModelRestarts(HMMModel model, int[] emissions,
+                                                  TrainingOptions options) {
+    return MultiRestartTraining.train(model, emissions, options);
+  }
+
+  /**
+   * Trains one HMM model on many independent emission sequences. Every iteration
+   * runs the expectation step of all sequences in parallel on options.pool, sums
+   * their statistics with a tree reduction and performs a single re-estimation.
+   * @param model The approximated HMM model, used as the starting guess.
+   * @param sequences The observed emission sequences.
+   * @param options Iteration limit, per-sequence expectation step and pool.
+   * @return The best log probability seen and the number of iterations run.
+   * @throws IllegalArgumentException If there is no sequence with any emission,
+   * since re-estimating from no data would overwrite the model with NaN, or if the
+   * options cannot be combined.
+   */
+  public static TrainingResult trainModel(HMMModel model, List<int[]> sequences,
+                                          TrainingOptions options) {
+    options.validate();
+    boolean hasEmissions = false;
+    for (int[] emissions : sequences) {
+      hasEmissions |= emissions.length > 0;
+    }
+    if (!hasEmissions) {
+      throw new IllegalArgumentException("No emissions to train on");
+    }
+    TrainingMonitor monitor = new TrainingMonitor(options.listener);
+    return EMIterations.run(model, current -> {
+      monitor.start(current);
+      SufficientStatistics stats = ParallelExpectation.expectation(current, sequences, options);
+      monitor.expectationDone(stats);
+      stats.reEstimate(current);
+      monitor.end(current, stats.logProb);
+      return stats.logProb;
+    }, options);
   }
 
   /**
    * Function for re-estimating the A, B and pi matrices using the gamma matrices.
+   * Adapter over the primitive reEstimate.
    * @param aApprox The approximated A-matrix of an HMM, namely the transition matrix.
    * @param bApprox The approximated B-matrix of an HMM, namely the emission probability matrix.
    * @param piApprox The estimated initial state distribution represented as a 1*N matrix.
@@ -206,76 +535,214 @@ public class HMM3 {
                                 Gamma gammaObj, int[] emissions) {
     int numStates = aApprox.length;
     int numEmissions = emissions.length;
-    Double[][] monoGamma = gammaObj.monoGamma;
-    Double[][][] diGamma = gammaObj.diGamma;
+    int numPairs = numStates * numStates;
+    double[] diGamma = new double[numPairs * Math.max(numEmissions - 1, 0)];
+    for (int step = 0; step < numEmissions-1; step++) {
+      for (int i = 0; i < numStates; i++) {
+        for (int j = 0; j < numStates; j++) {
+          diGamma[step * numPairs + i * numStates + j] = gammaObj.diGamma[i][j][step];
+        }
+      }
+    }
+    FlatGamma flat = new FlatGamma(numStates,
+        toTimeMajor(gammaObj.monoGamma, numStates, numEmissions), diGamma);
+    HMMModel model = HMMModel.fromMatrices(aApprox, bApprox, piApprox);
+    reEstimate(model, flat, emissions);
+    model.copyTo(aApprox, bApprox, piApprox);
+  }
+
+  /**
+   * Function for re-estimating the A, B and pi matrices of a model in place using
+   * the flat gamma matrices.
+   * @param model The approximated HMM model.
+   * @param gammaObj FlatGamma object containing the time-major mono-gamma and di-gamma.
+   * @param emissions The observed emission sequence in an array.
+   */
+  public static void reEstimate(HMMModel model, FlatGamma gammaObj, int[] emissions) {
+    int numStates = model.numStates;
+    int numSymbols = model.numSymbols;
+    int numEmissions = emissions.length;
+    int numPairs = numStates * numStates;
+    double[] monoGamma = gammaObj.monoGamma;
+    double[] diGamma = gammaObj.diGamma;
 
     /**
      * Re-estimates the values of the initial probability distribution using the first
      * time-step of the mono-gamma array.
      */
     for (int i = 0; i < numStates; i++) {
-      piApprox[0][i] = monoGamma[i][0];
+      model.pi[i] = monoGamma[i];
     }
 
-    Double numer;
-    Double denom;
+    double numer;
+    double denom;
     /**
      * Re-estimates the A matrix using both the di-gamma and the mono-gamma arrays.
      */
     for (int i = 0; i < numStates; i++) {
-      for (int j = 0; j < numStates; j++) {
+      denom = 0.0;
+      for (int step = 0; step < numEmissions-1; step++) {
+        denom += monoGamma[step * numStates + i];
+      }
+      /**
+       * With sparse transitions only the nonzeros are summed over time, the
+       * structural zeros of A have no di-gamma and stay zero.
+       */
+      SparseTransitions sparse = model.transitions;
+      int numNonZeros = sparse != null ? sparse.rowStarts[i + 1] - sparse.rowStarts[i] : numStates;
+      for (int idx = 0; idx < numNonZeros; idx++) {
+        int j = sparse != null ? sparse.rowColumns[sparse.rowStarts[i] + idx] : idx;
         numer = 0.0;
-        denom = 0.0;
         for (int step = 0; step < numEmissions-1; step++) {
-          numer += diGamma[i][j][step];
-          denom += monoGamma[i][step];
+          numer += diGamma[step * numPairs + i * numStates + j];
         }
-        aApprox[i][j] = numer/denom;
+        model.a[i * numStates + j] = numer/denom;
       }
     }
 
     /**
-    * Re-estimates the B matrix using the mono-gamma arrays.
+     * Re-estimates the B matrix using the mono-gamma arrays. A single sweep over
+     * time adds gamma_t(i) to the numerator of the symbol actually emitted, instead
+     * of testing every symbol at every step.
      */
+    double[] numers = new double[numSymbols];
     for (int i = 0; i < numStates; i++) {
-      for (int j = 0; j < bApprox[0].length; j++) {
-        numer = 0.0;
-        denom = 0.0;
-        for (int step = 0; step < numEmissions; step++) {
-          if (emissions[step] == j) {
-            numer += monoGamma[i][step];
-          }
-          denom += monoGamma[i][step];
-        }
-        bApprox[i][j] = numer/denom;
+      Arrays.fill(numers, 0.0);
+      denom = 0.0;
+      for (int step = 0; step < numEmissions; step++) {
+        double value = monoGamma[step * numStates + i];
+        numers[emissions[step]] += value;
+        denom += value;
+      }
+      for (int k = 0; k < numSymbols; k++) {
+        model.b[i * model.bStride + k] = numers[k]/denom;
       }
     }
   }
 
   /**
    * Function for calculating the natural logarithm probability of having observed the
-   * given emission sequence given the current HMM estimation.
+   * given emission sequence given the current HMM estimation. Adapter over the
+   * primitive calculateLogProb.
    * @param  scalingFactors Array holding the scaling factors (c in the stamp tutorial).
    * @return Returns the logarithm probability as a Double value.
    */
   public static Double calculateLogProb(Double[] scalingFactors) {
-    Double logProb = 0.0;
+    double[] scaling = new double[scalingFactors.length];
+    for (int i = 0; i < scaling.length; i++) {
+      scaling[i] = scalingFactors[i];
+    }
+    return calculateLogProb(scaling);
+  }
+
+  /**
+   * Function for calculating the natural logarithm probability of having observed the
+   * given emission sequence given the current HMM estimation.
+   * @param  scalingFactors Array holding the scaling factors (c in the stamp tutorial).
+   * @return Returns the natural logarithm probability.
+   */
+  public static double calculateLogProb(double[] scalingFactors) {
+    double logProb = 0.0;
     for (int i = 0; i < scalingFactors.length; i++) {
-      logProb += Math.log(scalingFactors[i]); // TODO: Natural logarithm here?
+      logProb += Math.log(scalingFactors[i]);
     }
     return logProb * (-1);
   }
 
-  public static void main(String[] args) {
-    Scanner sc = new Scanner(System.in);
-    Double[][] A = ArrayOperations.stringToMatrix(sc.nextLine());
-    Double[][] B = ArrayOperations.stringToMatrix(sc.nextLine());
-    Double[][] pi = ArrayOperations.stringToMatrix(sc.nextLine());
-    int[] emissions = ArrayOperations.stringToArray(sc.nextLine());
-    sc.close();
-
-    trainModel(A, B, pi, emissions);
-    System.out.println(ArrayOperations.matrixToString(A));
-    System.out.println(ArrayOperations.matrixToString(B));
+  /**
+   * Converts a time-major flat matrix ([t * N + i]) into the boxed N*T layout used
+   * by the Double[][] adapters.
+   */
+  private static Double[][] toStateMajor(double[] flat, int numStates, int numEmissions) {
+    Double[][] outputMat = new Double[numStates][numEmissions];
+    for (int step = 0; step < numEmissions; step++) {
+      for (int i = 0; i < numStates; i++) {
+        outputMat[i][step] = flat[step * numStates + i];
+      }
+    }
+    return outputMat;
+  }
+
+  /**
+   * Inverse of toStateMajor.
+   */
+  private static double[] toTimeMajor(Double[][] mat, int numStates, int numEmissions) {
+    double[] outputArr = new double[numStates * numEmissions];
+    for (int step = 0; step < numEmissions; step++) {
+      for (int i = 0; i < numStates; i++) {
+        outputArr[step * numStates + i] = mat[i][step];
+      }
+    }
+    return outputArr;
+  }
+
+  public static void main(String[] args) throws IOException {
+    /**
+     * With --trace, the metrics of every iteration are written to standard error.
+     * With --online followed by a batch size, the emissions are fed to stepwise EM
+     * in batches of that size instead of running batch Baum-Welch. With --single,
+     * the alpha matrix of the expectation step, or its checkpointed segment, is
+     * stored in float. With --parallel,
+     * the forward sweep is split into chunks run on all cores. With --emissions
+     * followed by the path of an emission file, the model is trained on the mapped
+     * file and standard input holds only the model.
+     */
+    TrainingOptions options = new TrainingOptions();
+    int batchSize = 0;
+    Path emissionsPath = null;
+    int argIdx = 0;
+    while (args.length > argIdx && args[argIdx].startsWith("--")) {
+      if (args[argIdx].equals("--trace")) {
+        options.listener = TrainingListener.printTo(System.err);
+        argIdx++;
+      } else if (args[argIdx].equals("--single")) {
+        options.singlePrecision = true;
+        argIdx++;
+      } else if (args[argIdx].equals("--parallel")) {
+        options.parallelForward = true;
+        argIdx++;
+      } else if (args[argIdx].equals("--emissions") && args.length > argIdx + 1) {
+        emissionsPath = Paths.get(args[argIdx + 1]);
+        argIdx += 2;
+      } else if (args[argIdx].equals("--online") && args.length > argIdx + 1) {
+        batchSize = Integer.parseInt(args[argIdx + 1]);
+        argIdx += 2;
+      } else {
+        throw new IllegalArgumentException("Unknown option " + args[argIdx]);
+      }
+    }
+    KattisReader reader = new KattisReader(System.in);
+    HMMModel model = reader.readModel();
+    int[] emissions = emissionsPath == null ? reader.readArray() : null;
+    EmissionFile emissionFile = emissionsPath != null ? EmissionFile.map(emissionsPath) : null;
+    TrainingResult result;
+    if (emissionFile != null) {
+      result = trainModel(model, emissionFile, options);
+    } else if (batchSize > 0) {
+      OnlineTraining online = new OnlineTraining(model, options);
+      double logProb = 0.0;
+      for (int from = 0; from < emissions.length; from += batchSize) {
+        int to = Math.min(emissions.length, from + batchSize);
+        logProb += online.update(Arrays.copyOfRange(emissions, from, to));
+      }
+      result = new TrainingResult(logProb, online.updates());
+    } else {
+      result = trainModel(model, emissions, options);
+    }
+    /**
+     * Optionally stores the trained model in the binary model format as well. The
+     * log probability of training belongs to the model before the last
+     * re-estimation, so the one of the stored model takes another forward pass.
+     */
+    if (args.length > argIdx) {
+      result.logProb = emissionFile != null
+          ? StreamingScorer.logLikelihood(model, emissionFile.iterator())
+          : StreamingScorer.logLikelihood(model, Arrays.stream(emissions));
+      ModelFile.write(Paths.get(args[argIdx]), model, result);
+    }
+    KattisWriter writer = new KattisWriter(System.out);
+    writer.writeMatrix(model.a, model.numStates, model.numStates);
+    writer.writeMatrix(model.b, model.numStates, model.numSymbols);
+    writer.flush();
   }
 }
@@ -0,0 +1,192 @@
+package main.java;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import main.java.helpers.ModelService;
+
+/**
+ * Long-running counterpart of HMM0-HMM3: keeps named models resident and answers
+ * line-delimited requests (see ModelService for the commands), so a query no longer
+ * pays for JVM startup, class loading and JIT warm-up.
+ *
+ * Without arguments the requests are read from standard input and answered on
+ * standard output. With --port followed by a port number the server listens on
+ * the loopback interface instead, one request stream per connection.
+ *
+ * Every request runs as its own task, on a virtual thread where the JVM has them
+ * (Java 21+; this class is compiled for Java 10, so they are looked up
+ * reflectively) and on a cached thread pool otherwise. Requests of one stream
+ * therefore run concurrently, but their answers are written in request order.
+ * Requests that change the models (model, load, drop, train) are barriers: they
+ * start once the requests before them in the stream are done, and the requests
+ * after them wait for them, so a stream always sees its own changes.
+ */
+public class HMMServer {
+  /**
+   * Requests of one stream that may be running or waiting to be written before the
+   * stream stops reading more.
+   */
+  private static final int MAX_IN_FLIGHT = 1024;
+  private static final Future<String> END_OF_STREAM = CompletableFuture.completedFuture(null);
+
+  public static void main(String[] args) throws IOException {
+    ModelService service = new ModelService();
+    ExecutorService executor = newRequestExecutor();
+    if (args.length > 1 && args[0].equals("--port")) {
+      listen(Integer.parseInt(args[1]), service, executor);
+    } else {
+      serve(System.in, System.out, service, executor);
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Accepts connections on the loopback interface forever, serving each one as a
+   * request stream of its own.
+   */
+  private static void listen(int port, ModelService service, ExecutorService executor)
+      throws IOException {
+    try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+      while (!server.isClosed()) {
+        Socket socket = server.accept();
+        executor.execute(() -> {
+          try (Socket connection = socket) {
+            serve(connection.getInputStream(), connection.getOutputStream(), service, executor);
+          } catch (IOException e) {
+            /**
+             * The client went away; its remaining requests are dropped.
+             */
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Function that answers the requests of one stream until it ends or a line
+   * "quit" is read.
+   * @param in The request lines.
+   * @param out Receives one answer line per request, in request order.
+   * @param service The models to answer from.
+   * @param executor Runs the requests and the writing of the answers.
+   */
+  public static void serve(InputStream in, OutputStream out, ModelService service,
+                           ExecutorService executor) throws IOException {
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(in, StandardCharsets.US_ASCII));
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+    BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<>(MAX_IN_FLIGHT);
+    Future<?> responder = executor.submit(() -> {
+      writeAnswers(pending, writer);
+      return null;
+    });
+    /**
+     * The last barrier, and the requests started after it.
+     */
+    CompletableFuture<?> barrier = CompletableFuture.completedFuture(null);
+    List<CompletableFuture<?>> sinceBarrier = new ArrayList<>();
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String request = line.trim();
+        if (request.isEmpty()) {
+          continue;
+        }
+        if (request.equals("quit")) {
+          break;
+        }
+        CompletableFuture<String> answer;
+        if (ModelService.modifiesModels(request)) {
+          sinceBarrier.add(barrier);
+          answer = CompletableFuture.allOf(sinceBarrier.toArray(new CompletableFuture<?>[0]))
+              .thenApplyAsync(done -> service.handle(request), executor);
+          barrier = answer;
+          sinceBarrier.clear();
+        } else {
+          answer = barrier.thenApplyAsync(done -> service.handle(request), executor);
+          if (sinceBarrier.size() >= MAX_IN_FLIGHT) {
+            sinceBarrier.removeIf(Future::isDone);
+          }
+          sinceBarrier.add(answer);
+        }
+        pending.put(answer);
+      }
+      pending.put(END_OF_STREAM);
+      responder.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      responder.cancel(true);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Writes the answers in request order, flushing whenever no further answer is
+   * ready, so a client waiting for one answer is not kept waiting by buffering.
+   */
+  private static void writeAnswers(BlockingQueue<Future<String>> pending, Writer writer)
+      throws IOException, InterruptedException {
+    while (true) {
+      Future<String> answer = pending.take();
+      if (answer == END_OF_STREAM) {
+        break;
+      }
+      String line;
+      try {
+        line = answer.get();
+      } catch (ExecutionException e) {
+        line = "error " + e.getCause();
+      }
+      writer.write(line);
+      writer.write('\n');
+      if (pending.isEmpty()) {
+        writer.flush();
+      }
+    }
+    writer.flush();
+  }
+
+  /**
+   * @return An executor starting a virtual thread per task if the JVM has them, a
+   * cached pool of daemon threads otherwise.
+   */
+  static ExecutorService newRequestExecutor() {
+    try {
+      Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtual.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      /**
+       * Before Java 21 the method is missing, or throws without --enable-preview.
+       */
+      return Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+}
@@ -1,10 +1,17 @@
 package main.java.helpers;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Helper class for operations on Arrays, such as matrix multiplication and transformation of matrices to and 
  * from strings formatted according to Kattis input/output requirements. 
  */
 public class ArrayOperations {
+  /**
+   * Edge of the square tiles used by the blocked kernels, 64*64 doubles = 32 KiB.
+   */
+  private static final int BLOCK_SIZE = 64;
+
 	/**
    * Function that turns a matrix represented by a string into an actual Java
    * 2-D array.
@@ -34,34 +41,232 @@ public class ArrayOperations {
   
   /**
    * Function that calculates the result of a matrix multiplication between two
-   * matrices.
+   * matrices. Adapter over the primitive matrixMultiply.
    * @param  mat1 The first of the two matrices to be multiplied.
    * @param  mat2 The second of the two matrices to be multiplied.
    * @return The resulting matrix.
    */
   public static Double[][] matrixMultiply(Double[][] mat1, Double[][] mat2) {
     int numRows = mat1.length;
-    /**
-     * The number of multiplications needed for every single cell of the
-     * resulting matrix is equal to the # of columns in the first matrix (and
-     * equally the # of columns in the second matrix).
-     */
     int numMultiplications = mat1[0].length;
     int numCols = mat2[0].length;
+    double[] product = matrixMultiply(flatten(mat1), flatten(mat2), numRows,
+                                      numMultiplications, numCols);
     Double[][] outputMat = new Double[numRows][numCols];
+    unflatten(product, outputMat);
+    return outputMat;
+  }
 
-    for (int i = 0; i < numRows; i++) {
-      for (int j = 0; j < numCols; j++) {
-        Double columnSum = 0.0;
-        for (int k = 0; k < numMultiplications; k++) {
-          columnSum += mat1[i][k] * mat2[k][j];
+  /**
+   * Primitive matrix multiplication on row-major flat arrays.
+   * @param  mat1 The first matrix, numRows*numMultiplications.
+   * @param  mat2 The second matrix, numMultiplications*numCols.
+   * @param  numRows The number of rows of mat1.
+   * @param  numMultiplications The number of columns of mat1 (= rows of mat2).
+   * @param  numCols The number of columns of mat2.
+   * @return The resulting numRows*numCols matrix, row-major.
+   */
+  public static double[] matrixMultiply(double[] mat1, double[] mat2, int numRows,
+                                        int numMultiplications, int numCols) {
+    double[] outputMat = new double[numRows * numCols];
+    multiplyRows(mat1, mat2, outputMat, 0, numRows, numMultiplications, numCols);
+    return outputMat;
+  }
+
+  /**
+   * Primitive matrix multiplication where bands of rows of the result are computed
+   * in parallel on the given pool. Gives exactly the same result as the sequential
+   * version. As everywhere in this class, a null pool runs sequentially.
+   * @param  mat1 The first matrix, numRows*numMultiplications.
+   * @param  mat2 The second matrix, numMultiplications*numCols.
+   * @param  numRows The number of rows of mat1.
+   * @param  numMultiplications The number of columns of mat1 (= rows of mat2).
+   * @param  numCols The number of columns of mat2.
+   * @param  pool The pool to run on, null runs sequentially.
+   * @return The resulting numRows*numCols matrix, row-major.
+   */
+  public static double[] matrixMultiply(double[] mat1, double[] mat2, int numRows,
+                                        int numMultiplications, int numCols, ForkJoinPool pool) {
+    if (pool == null) {
+      return matrixMultiply(mat1, mat2, numRows, numMultiplications, numCols);
+    }
+    double[] outputMat = new double[numRows * numCols];
+    int bandSize = Math.max(1, Math.min(BLOCK_SIZE,
+                                        (numRows + pool.getParallelism() - 1) / pool.getParallelism()));
+    int numBands = (numRows + bandSize - 1) / bandSize;
+    ParallelRanges.runAll(pool, numBands, band -> {
+      int from = band * bandSize;
+      multiplyRows(mat1, mat2, outputMat, from, Math.min(numRows, from + bandSize),
+                   numMultiplications, numCols);
+    });
+    return outputMat;
+  }
+
+  /**
+   * Computes rows [fromRow, toRow) of mat1 * mat2 in BLOCK_SIZE tiles, so that the
+   * tile of mat2 in use stays in cache while every row of the band streams over it.
+   * Within a tile the loops run i-k-j, so mat2 and the output row are both walked
+   * contiguously. Every output cell still sums its terms in ascending k, so the
+   * result is identical to the textbook i-j-k order.
+   */
+  private static void multiplyRows(double[] mat1, double[] mat2, double[] outputMat, int fromRow,
+                                   int toRow, int numMultiplications, int numCols) {
+    for (int kBlock = 0; kBlock < numMultiplications; kBlock += BLOCK_SIZE) {
+      int kEnd = Math.min(numMultiplications, kBlock + BLOCK_SIZE);
+      for (int jBlock = 0; jBlock < numCols; jBlock += BLOCK_SIZE) {
+        int jEnd = Math.min(numCols, jBlock + BLOCK_SIZE);
+        for (int i = fromRow; i < toRow; i++) {
+          int outRow = i * numCols;
+          int leftRow = i * numMultiplications;
+          for (int k = kBlock; k < kEnd; k++) {
+            double left = mat1[leftRow + k];
+            int rightRow = k * numCols;
+            for (int j = jBlock; j < jEnd; j++) {
+              outputMat[outRow + j] += left * mat2[rightRow + j];
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Primitive matrix multiplication where the second matrix is given transposed,
+   * so every output cell is a dot product of two contiguous rows. Useful when the
+   * transpose is already at hand or is reused for many products.
+   * @param  mat1 The first matrix, numRows*numMultiplications.
+   * @param  mat2Transposed The transpose of the second matrix, numCols*numMultiplications.
+   * @param  numRows The number of rows of mat1.
+   * @param  numMultiplications The number of columns of mat1.
+   * @param  numCols The number of columns of the product.
+   * @return The resulting numRows*numCols matrix, row-major.
+   */
+  public static double[] matrixMultiplyTransposed(double[] mat1, double[] mat2Transposed,
+                                                  int numRows, int numMultiplications,
+                                                  int numCols) {
+    double[] outputMat = new double[numRows * numCols];
+    for (int iBlock = 0; iBlock < numRows; iBlock += BLOCK_SIZE) {
+      int iEnd = Math.min(numRows, iBlock + BLOCK_SIZE);
+      for (int jBlock = 0; jBlock < numCols; jBlock += BLOCK_SIZE) {
+        int jEnd = Math.min(numCols, jBlock + BLOCK_SIZE);
+        for (int i = iBlock; i < iEnd; i++) {
+          int leftRow = i * numMultiplications;
+          for (int j = jBlock; j < jEnd; j++) {
+            int rightRow = j * numMultiplications;
+            double columnSum = 0.0;
+            for (int k = 0; k < numMultiplications; k++) {
+              columnSum += mat1[leftRow + k] * mat2Transposed[rightRow + k];
+            }
+            outputMat[i * numCols + j] = columnSum;
+          }
         }
-        outputMat[i][j] = columnSum;
       }
     }
     return outputMat;
   }
-  
+
+  /**
+   * Transposes a row-major matrix, tile by tile so that neither side is walked with
+   * a large stride for long.
+   * @param  mat The matrix, numRows*numCols.
+   * @param  numRows The number of rows.
+   * @param  numCols The number of columns.
+   * @return The numCols*numRows transpose, row-major.
+   */
+  public static double[] transpose(double[] mat, int numRows, int numCols) {
+    double[] outputMat = new double[numRows * numCols];
+    for (int iBlock = 0; iBlock < numRows; iBlock += BLOCK_SIZE) {
+      int iEnd = Math.min(numRows, iBlock + BLOCK_SIZE);
+      for (int jBlock = 0; jBlock < numCols; jBlock += BLOCK_SIZE) {
+        int jEnd = Math.min(numCols, jBlock + BLOCK_SIZE);
+        for (int i = iBlock; i < iEnd; i++) {
+          for (int j = jBlock; j < jEnd; j++) {
+            outputMat[j * numRows + i] = mat[i * numCols + j];
+          }
+        }
+      }
+    }
+    return outputMat;
+  }
+
+  /**
+   * Function that raises a square matrix to a power by repeated squaring, using
+   * O(log exponent) multiplications instead of exponent.
+   * @param  mat The square matrix, size*size.
+   * @param  size The number of rows (= columns).
+   * @param  exponent The power, at least 0.
+   * @param  pool The pool for the multiplications, null runs them sequentially.
+   * @return mat to the power of exponent, row-major.
+   */
+  public static double[] matrixPower(double[] mat, int size, long exponent, ForkJoinPool pool) {
+    if (exponent < 0) {
+      throw new IllegalArgumentException("Negative exponent " + exponent);
+    }
+    double[] result = null;
+    double[] power = mat;
+    while (exponent > 0) {
+      if ((exponent & 1) == 1) {
+        result = result == null ? power.clone()
+                                : matrixMultiply(result, power, size, size, size, pool);
+      }
+      exponent >>= 1;
+      if (exponent > 0) {
+        power = matrixMultiply(power, power, size, size, size, pool);
+      }
+    }
+    if (result == null) {
+      result = new double[size * size];
+      for (int i = 0; i < size; i++) {
+        result[i * size + i] = 1.0;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Copies a boxed 2D-array into a row-major primitive array.
+   * @param  mat The matrix to flatten. Must be rectangular.
+   * @return A flat array where element (i, j) lives at i * mat[0].length + j.
+   */
+  public static double[] flatten(Double[][] mat) {
+    int numCols = mat[0].length;
+    double[] outputArr = new double[mat.length * numCols];
+    for (int i = 0; i < mat.length; i++) {
+      for (int j = 0; j < numCols; j++) {
+        outputArr[i * numCols + j] = mat[i][j];
+      }
+    }
+    return outputArr;
+  }
+
+  /**
+   * Inverse of flatten, writes a row-major primitive array into an existing boxed
+   * 2D-array whose dimensions give the layout.
+   * @param flat The row-major values.
+   * @param mat The matrix to overwrite.
+   */
+  public static void unflatten(double[] flat, Double[][] mat) {
+    int numCols = mat[0].length;
+    for (int i = 0; i < mat.length; i++) {
+      for (int j = 0; j < numCols; j++) {
+        mat[i][j] = flat[i * numCols + j];
+      }
+    }
+  }
+
+  /**
+   * Builds a new boxed 2D-array from a row-major primitive array.
+   * @param  flat The row-major values.
+   * @param  numRows The number of rows.
+   * @param  numCols The number of columns.
+   * @return The boxed matrix.
+   */
+  public static Double[][] toMatrix(double[] flat, int numRows, int numCols) {
+    Double[][] outputMat = new Double[numRows][numCols];
+    unflatten(flat, outputMat);
+    return outputMat;
+  }
+
   /**
    * Inverse function of the stringToMatrix function -> turns a 2D-array into the
    * string representation needed to get the solution accepted in Kattis.
@@ -69,15 +274,32 @@ public class ArrayOperations {
    * @return String representation of the matrix according to the Kattis standards.
    */
   public static String matrixToString(Double[][] mat) {
-    String outputString = Integer.toString(mat.length) + " " + Integer.toString(mat[0].length);
+    StringBuilder output = new StringBuilder();
+    output.append(mat.length).append(' ').append(mat[0].length);
     for (int i = 0; i < mat.length; i++) {
       for (int j = 0; j < mat[0].length; j++) {
-        outputString += " " + mat[i][j];
+        output.append(' ').append(mat[i][j].doubleValue());
       }
     }
-    return outputString;
+    return output.toString();
   }
-  
+
+  /**
+   * Primitive overload of matrixToString for a row-major flat matrix.
+   * @param  mat The row-major values.
+   * @param  numRows The number of rows.
+   * @param  numCols The number of columns.
+   * @return String representation of the matrix according to the Kattis standards.
+   */
+  public static String matrixToString(double[] mat, int numRows, int numCols) {
+    StringBuilder output = new StringBuilder();
+    output.append(numRows).append(' ').append(numCols);
+    for (int idx = 0; idx < numRows * numCols; idx++) {
+      output.append(' ').append(mat[idx]);
+    }
+    return output.toString();
+  }
+
   /**
    * Function that tunrs an array represented by a string into an actual array.
    * @param  arrString The string representation of the array to be converted.
@@ -101,10 +323,10 @@ public class ArrayOperations {
    * @return String representation of the integer array. 
    */
   public static String arrayToString(int[] arr) {
-    String outputString = "";
+    StringBuilder output = new StringBuilder();
     for (int i = 0; i < arr.length; i++) {
-      outputString += Integer.toString(arr[i]) + " ";
+      output.append(arr[i]).append(' ');
     }
-    return outputString;
+    return output.toString();
   }
 }
@@ -0,0 +1,70 @@
+package main.java.helpers;
+
+/**
+ * Table of Viterbi backpointers, stored in the narrowest integer type that can
+ * hold a state index: byte for N <= 256, short for N <= 65536, int otherwise.
+ * Unsigned reads are used so that the full range of each type is available.
+ */
+public class Backpointers {
+  private final byte[] bytes;
+  private final short[] shorts;
+  private final int[] ints;
+
+  public Backpointers(int numStates, int size) {
+    if (numStates <= 1 << 8) {
+      bytes = new byte[size];
+      shorts = null;
+      ints = null;
+    } else if (numStates <= 1 << 16) {
+      bytes = null;
+      shorts = new short[size];
+      ints = null;
+    } else {
+      bytes = null;
+      shorts = null;
+      ints = new int[size];
+    }
+  }
+
+  public void set(int index, int state) {
+    if (bytes != null) {
+      bytes[index] = (byte) state;
+    } else if (shorts != null) {
+      shorts[index] = (short) state;
+    } else {
+      ints[index] = state;
+    }
+  }
+
+  public int get(int index) {
+    if (bytes != null) {
+      return bytes[index] & 0xFF;
+    } else if (shorts != null) {
+      return shorts[index] & 0xFFFF;
+    }
+    return ints[index];
+  }
+
+  /**
+   * @return true if this table has room for size backpointers in the storage type
+   * picked for numStates, so it can be reused for them.
+   */
+  boolean holds(int numStates, int size) {
+    if (size() < size) {
+      return false;
+    }
+    if (numStates <= 1 << 8) {
+      return bytes != null;
+    }
+    return numStates <= 1 << 16 ? shorts != null : ints != null;
+  }
+
+  public int size() {
+    if (bytes != null) {
+      return bytes.length;
+    } else if (shorts != null) {
+      return shorts.length;
+    }
+    return ints.length;
+  }
+}
@@ -0,0 +1,259 @@
+package main.java.helpers;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Scores many emission sequences against one model. The sequences are grouped by
+ * length, and each group is split into blocks that run the scaled forward pass in
+ * lockstep: at every step the alpha vectors of the block are multiplied by A
+ * together, four sequences per load of A. Blocks run in parallel. The emission
+ * probabilities are kept per symbol (B transposed), so the column B[.][o] of every
+ * step is contiguous.
+ *
+ * The alphas are summed in the same order as StreamingScorer. Only the
+ * log-likelihood is formed differently, from the product of the scaling sums
+ * rather than the sum of their logarithms, so it agrees with HMM1.logLikelihood to
+ * rounding. A BatchScorer can be reused for any number of batches, as long as the
+ * model is not modified meanwhile.
+ */
+public class BatchScorer {
+  /**
+   * Maximum number of sequences advanced together. 64 alpha vectors of 64 states
+   * take 32 KiB, plus as much again for the next vectors.
+   */
+  private static final int BLOCK_SIZE = 64;
+  private static final double LN_2 = Math.log(2.0);
+
+  private final HMMModel model;
+  /** B transposed, B[i][k] at [k * N + i]. */
+  private final double[] emissionColumns;
+
+  public BatchScorer(HMMModel model) {
+    this.model = model;
+    this.emissionColumns = ArrayOperations.transpose(model.b, model.numStates, model.bStride);
+  }
+
+  /**
+   * Function that computes the natural logarithm probability of every sequence.
+   * @param  sequences The observed emission sequences. An empty sequence scores 0.
+   * @param  pool The pool to run on, null uses the common pool.
+   * @return The log-likelihoods, in the order of the sequences.
+   */
+  public double[] logLikelihoods(List<int[]> sequences, ForkJoinPool pool) {
+    return logLikelihoods(sequences.toArray(new int[0][]), pool);
+  }
+
+  public double[] logLikelihoods(int[][] sequences, ForkJoinPool pool) {
+    if (pool == null) {
+      pool = ForkJoinPool.commonPool();
+    }
+    int numSequences = sequences.length;
+    double[] logProbs = new double[numSequences];
+    if (numSequences == 0) {
+      return logProbs;
+    }
+
+    int[] order = orderByLength(sequences);
+
+    /**
+     * A block is a run of at most BLOCK_SIZE equal lengths in the sorted order.
+     */
+    int[] blockStarts = new int[numSequences + 1];
+    int numBlocks = 0;
+    for (int idx = 0; idx < numSequences; idx++) {
+      if (idx == 0 || idx - blockStarts[numBlocks - 1] == BLOCK_SIZE
+          || sequences[order[idx]].length != sequences[order[idx - 1]].length) {
+        blockStarts[numBlocks++] = idx;
+      }
+    }
+    blockStarts[numBlocks] = numSequences;
+
+    ParallelRanges.runAll(pool, numBlocks, block ->
+        scoreBlock(sequences, order, blockStarts[block], blockStarts[block + 1], logProbs));
+    return logProbs;
+  }
+
+  /**
+   * Sorts the sequence indices by length, stably, so sequences of the same length
+   * stay in input order and are read roughly in allocation order. Uses a counting
+   * sort unless the longest sequence is much longer than the number of sequences.
+   */
+  private static int[] orderByLength(int[][] sequences) {
+    int numSequences = sequences.length;
+    int[] order = new int[numSequences];
+    int maxLength = 0;
+    for (int[] sequence : sequences) {
+      maxLength = Math.max(maxLength, sequence.length);
+    }
+    if (maxLength <= 4 * numSequences) {
+      int[] starts = new int[maxLength + 2];
+      for (int[] sequence : sequences) {
+        starts[sequence.length + 1]++;
+      }
+      for (int length = 1; length < starts.length; length++) {
+        starts[length] += starts[length - 1];
+      }
+      for (int idx = 0; idx < numSequences; idx++) {
+        order[starts[sequences[idx].length]++] = idx;
+      }
+      return order;
+    }
+    /**
+     * Length in the high half of a long, index in the low half, so the sort needs
+     * no boxing and ties keep input order.
+     */
+    long[] keys = new long[numSequences];
+    for (int idx = 0; idx < numSequences; idx++) {
+      keys[idx] = ((long) sequences[idx].length << 32) | idx;
+    }
+    Arrays.sort(keys);
+    for (int idx = 0; idx < numSequences; idx++) {
+      order[idx] = (int) keys[idx];
+    }
+    return order;
+  }
+
+  /**
+   * Runs the forward pass of the sequences order[from] ... order[to - 1], which all
+   * have the same length, and writes their log-likelihoods.
+   */
+  private void scoreBlock(int[][] sequences, int[] order, int from, int to, double[] logProbs) {
+    int numStates = model.numStates;
+    int numEmissions = sequences[order[from]].length;
+    int size = to - from;
+    if (numEmissions == 0) {
+      return;
+    }
+    int[][] block = new int[size][];
+    for (int seq = 0; seq < size; seq++) {
+      block[seq] = sequences[order[from + seq]];
+    }
+    double[] alpha = new double[size * numStates];
+    double[] nextAlpha = new double[size * numStates];
+    /**
+     * The product of the column sums of every sequence, kept as a mantissa and a
+     * binary exponent so it neither underflows nor needs a logarithm per step.
+     */
+    double[] mantissas = new double[size];
+    long[] exponents = new long[size];
+    Arrays.fill(mantissas, 1.0);
+
+    for (int seq = 0; seq < size; seq++) {
+      int column = checkedColumn(block[seq][0], order[from + seq]);
+      int offset = seq * numStates;
+      for (int i = 0; i < numStates; i++) {
+        alpha[offset + i] = emissionColumns[column + i] * model.pi[i];
+      }
+      accumulate(mantissas, exponents, seq, normalize(alpha, offset));
+    }
+    for (int step = 1; step < numEmissions; step++) {
+      multiplyTransitions(alpha, nextAlpha, size);
+      for (int seq = 0; seq < size; seq++) {
+        int column = checkedColumn(block[seq][step], order[from + seq]);
+        int offset = seq * numStates;
+        for (int i = 0; i < numStates; i++) {
+          nextAlpha[offset + i] = emissionColumns[column + i] * nextAlpha[offset + i];
+        }
+        accumulate(mantissas, exponents, seq, normalize(nextAlpha, offset));
+      }
+      double[] tmp = alpha;
+      alpha = nextAlpha;
+      nextAlpha = tmp;
+    }
+    for (int seq = 0; seq < size; seq++) {
+      logProbs[order[from + seq]] = Math.log(mantissas[seq]) + exponents[seq] * LN_2;
+    }
+  }
+
+  /**
+   * Computes nextAlpha = alpha * A for all sequences of the block. Sequences are
+   * taken four at a time, so every element of A loaded from memory serves four
+   * multiply-adds. Sparse transitions are applied one sequence at a time.
+   */
+  private void multiplyTransitions(double[] alpha, double[] nextAlpha, int size) {
+    int numStates = model.numStates;
+    double[] a = model.a;
+    if (model.transitions != null) {
+      for (int offset = 0; offset < size * numStates; offset += numStates) {
+        model.transitions.forward(a, alpha, offset, nextAlpha, offset);
+      }
+      return;
+    }
+    Arrays.fill(nextAlpha, 0.0);
+    int seq = 0;
+    for (; seq + 4 <= size; seq += 4) {
+      int offset0 = seq * numStates;
+      int offset1 = offset0 + numStates;
+      int offset2 = offset1 + numStates;
+      int offset3 = offset2 + numStates;
+      for (int j = 0; j < numStates; j++) {
+        int aRow = j * numStates;
+        double prevAlpha0 = alpha[offset0 + j];
+        double prevAlpha1 = alpha[offset1 + j];
+        double prevAlpha2 = alpha[offset2 + j];
+        double prevAlpha3 = alpha[offset3 + j];
+        for (int i = 0; i < numStates; i++) {
+          double transition = a[aRow + i];
+          nextAlpha[offset0 + i] += transition * prevAlpha0;
+          nextAlpha[offset1 + i] += transition * prevAlpha1;
+          nextAlpha[offset2 + i] += transition * prevAlpha2;
+          nextAlpha[offset3 + i] += transition * prevAlpha3;
+        }
+      }
+    }
+    for (; seq < size; seq++) {
+      int offset = seq * numStates;
+      for (int j = 0; j < numStates; j++) {
+        int aRow = j * numStates;
+        double prevAlpha = alpha[offset + j];
+        for (int i = 0; i < numStates; i++) {
+          nextAlpha[offset + i] += a[aRow + i] * prevAlpha;
+        }
+      }
+    }
+  }
+
+  /**
+   * Scales one alpha vector to sum 1.
+   * @return The sum before scaling.
+   */
+  private double normalize(double[] alpha, int offset) {
+    int numStates = model.numStates;
+    double sum = 0.0;
+    for (int i = 0; i < numStates; i++) {
+      sum += alpha[offset + i];
+    }
+    double c = 1/sum;
+    for (int i = 0; i < numStates; i++) {
+      alpha[offset + i] *= c;
+    }
+    return sum;
+  }
+
+  /**
+   * Multiplies a column sum into the running product of a sequence. The product is
+   * only rescaled when it leaves [2^-256, 2^256], which takes many steps.
+   */
+  private static void accumulate(double[] mantissas, long[] exponents, int seq, double sum) {
+    double product = mantissas[seq] * sum;
+    if (product < 0x1p-256 || product > 0x1p256) {
+      int exponent = Math.getExponent(product);
+      product = Math.scalb(product, -exponent);
+      exponents[seq] += exponent;
+    }
+    mantissas[seq] = product;
+  }
+
+  /**
+   * @return The offset of the emission column of the symbol.
+   */
+  private int checkedColumn(int emission, int sequence) {
+    if (emission < 0 || emission >= model.numSymbols) {
+      throw new IllegalArgumentException("Emission " + emission + " outside of [0, "
+                                         + model.numSymbols + ") in sequence " + sequence);
+    }
+    return emission * model.numStates;
+  }
+}
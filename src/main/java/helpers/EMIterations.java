@@ -0,0 +1,178 @@
+package main.java.helpers;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Driver that repeats an EM step (expectation plus re-estimation in place) until
+ * the stopping criteria of the training options are met: the iteration limit, the
+ * time budget, or a gain in log probability below the tolerances.
+ *
+ * With options.accelerated the steps are combined SQUAREM-style (Varadhan and
+ * Roland, 2008, scheme S3): from theta0, two EM steps give theta1 and theta2, and
+ * with r = theta1 - theta0, v = theta2 - theta1 - r and alpha = -|r|/|v| the
+ * extrapolation theta0 - 2 alpha r + alpha^2 v jumps along the EM path. The jump is
+ * projected back onto valid distributions and followed by one more EM step. If its
+ * log probability falls below the one of theta1 it is rejected and training goes on
+ * from theta2, so the log probabilities seen never decrease.
+ */
+public class EMIterations {
+  /**
+   * Floor for extrapolated probabilities that are not structurally zero, so a jump
+   * cannot turn a parameter into a structural zero that EM could never revive.
+   */
+  private static final double MIN_PROBABILITY = 1e-10;
+  /**
+   * Factor by which the cap on the step length grows when a jump at the cap is
+   * accepted, and shrinks when one is rejected, as in the reference SQUAREM
+   * implementation. The cap starts at 1, the plain two-step EM move, so jumps only
+   * grow long once shorter ones have proven safe.
+   */
+  private static final double STEP_GROWTH = 4.0;
+
+  /**
+   * Function that trains a model until the stopping criteria are met.
+   * @param  model The starting guess, updated in place.
+   * @param  step One EM iteration: returns the log probability of the model it is
+   * given and re-estimates it in place.
+   * @param  options Iteration limit, tolerances, time budget and acceleration.
+   * @return The best log probability seen, the number of EM steps and whether the
+   * tolerances were met.
+   */
+  public static TrainingResult run(HMMModel model, ToDoubleFunction<HMMModel> step,
+                                   TrainingOptions options) {
+    long deadline = options.deadline();
+    if (options.accelerated) {
+      return runAccelerated(model, step, options, deadline);
+    }
+    double oldLogProb = (-1) * Double.MAX_VALUE;
+    int iterations = 0;
+    boolean converged = false;
+    while (iterations < options.maxIters && System.nanoTime() < deadline) {
+      iterations++;
+      double logProb = step.applyAsDouble(model);
+      converged = options.converged(oldLogProb, logProb);
+      oldLogProb = Math.max(oldLogProb, logProb);
+      if (converged) {
+        break;
+      }
+    }
+    return new TrainingResult(oldLogProb, iterations, converged);
+  }
+
+  private static TrainingResult runAccelerated(HMMModel model, ToDoubleFunction<HMMModel> step,
+                                               TrainingOptions options, long deadline) {
+    double oldLogProb = (-1) * Double.MAX_VALUE;
+    int iterations = 0;
+    boolean converged = false;
+    HMMModel theta0 = model.copy();
+    HMMModel theta1 = model.copy();
+    HMMModel jump = model.copy();
+    double maxStep = 1.0;
+    while (iterations < options.maxIters && System.nanoTime() < deadline) {
+      /**
+       * Two plain EM steps, theta0 -> theta1 -> theta2 (= model).
+       */
+      theta0.copyFrom(model);
+      iterations++;
+      double logProb0 = step.applyAsDouble(model);
+      converged = options.converged(oldLogProb, logProb0);
+      oldLogProb = Math.max(oldLogProb, logProb0);
+      if (converged || iterations == options.maxIters || System.nanoTime() >= deadline) {
+        break;
+      }
+      theta1.copyFrom(model);
+      iterations++;
+      double logProb1 = step.applyAsDouble(model);
+      converged = options.converged(oldLogProb, logProb1);
+      oldLogProb = Math.max(oldLogProb, logProb1);
+      if (converged || iterations == options.maxIters || System.nanoTime() >= deadline) {
+        break;
+      }
+
+      /**
+       * The extrapolated jump, followed by one EM step from it.
+       */
+      double stepLength = extrapolate(theta0, theta1, model, jump, maxStep);
+      if (stepLength == 0.0) {
+        continue;
+      }
+      iterations++;
+      double jumpLogProb = step.applyAsDouble(jump);
+      boolean accepted = jumpLogProb >= logProb1;
+      if (stepLength == maxStep) {
+        maxStep = accepted ? maxStep * STEP_GROWTH : Math.max(1.0, maxStep / STEP_GROWTH);
+      }
+      if (accepted) {
+        converged = options.converged(oldLogProb, jumpLogProb);
+        oldLogProb = Math.max(oldLogProb, jumpLogProb);
+        model.copyFrom(jump);
+        if (converged) {
+          break;
+        }
+      }
+    }
+    return new TrainingResult(oldLogProb, iterations, converged);
+  }
+
+  /**
+   * Writes the projected SQUAREM jump from theta0 over theta1 and theta2 into out.
+   * @param  maxStep The cap on the step length.
+   * @return The step length used, or 0 if theta2 - theta1 equals theta1 - theta0,
+   * i.e. there is no curvature to extrapolate along.
+   */
+  static double extrapolate(HMMModel theta0, HMMModel theta1, HMMModel theta2, HMMModel out,
+                            double maxStep) {
+    double rNorm = 0.0;
+    double vNorm = 0.0;
+    double[][] params0 = {theta0.a, theta0.b, theta0.pi};
+    double[][] params1 = {theta1.a, theta1.b, theta1.pi};
+    double[][] params2 = {theta2.a, theta2.b, theta2.pi};
+    for (int param = 0; param < 3; param++) {
+      for (int idx = 0; idx < params0[param].length; idx++) {
+        double r = params1[param][idx] - params0[param][idx];
+        double v = params2[param][idx] - params1[param][idx] - r;
+        rNorm += r * r;
+        vNorm += v * v;
+      }
+    }
+    if (vNorm == 0.0 || Double.isNaN(rNorm + vNorm)) {
+      return 0.0;
+    }
+    /**
+     * Step length of scheme S3, at least the plain two-step EM move (alpha = -1,
+     * which gives theta2 itself).
+     */
+    double stepLength = Math.min(maxStep, Math.max(1.0, Math.sqrt(rNorm / vNorm)));
+    double alpha = -stepLength;
+    double[][] paramsOut = {out.a, out.b, out.pi};
+    for (int param = 0; param < 3; param++) {
+      for (int idx = 0; idx < params0[param].length; idx++) {
+        double r = params1[param][idx] - params0[param][idx];
+        double v = params2[param][idx] - params1[param][idx] - r;
+        double value = params0[param][idx] - 2 * alpha * r + alpha * alpha * v;
+        /**
+         * Zeros of theta2 stay zero: either structural, or driven there by EM.
+         */
+        paramsOut[param][idx] = params2[param][idx] == 0.0 ? 0.0
+                                                            : Math.max(value, MIN_PROBABILITY);
+      }
+    }
+    out.transitions = theta2.transitions;
+    for (int i = 0; i < out.numStates; i++) {
+      normalize(out.a, i * out.aStride, out.numStates);
+      normalize(out.b, i * out.bStride, out.numSymbols);
+    }
+    normalize(out.pi, 0, out.numStates);
+    return stepLength;
+  }
+
+  private static void normalize(double[] values, int offset, int length) {
+    double sum = 0.0;
+    for (int idx = 0; idx < length; idx++) {
+      sum += values[offset + idx];
+    }
+    for (int idx = 0; idx < length; idx++) {
+      values[offset + idx] /= sum;
+    }
+  }
+}
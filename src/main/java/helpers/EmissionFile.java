@@ -0,0 +1,378 @@
+package main.java.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Binary file holding a sequence of symbols from an alphabet of size M, packed in
+ * the narrowest unsigned type that can hold them: 1 byte for M <= 256, 2 for
+ * M <= 65536, 4 otherwise. The file is memory-mapped rather than read, in chunks
+ * of 1 GiB, so sequences of billions of emissions can be consumed by the passes
+ * without ever being on the heap, and are indexed by long.
+ *
+ * Layout (24 byte header, then the symbols, all little-endian):
+ *   int magic "HMME", int version, int M, int bytes per symbol, long length
+ *
+ * Besides emissions, the format stores decoded state sequences (M = N) and serves
+ * as the scratch file of per-timestep buffers too large for the heap, such as the
+ * backpointers of LogViterbi.decode over an EmissionFile.
+ */
+public class EmissionFile {
+  public static final int MAGIC = 0x484D4D45;
+  public static final int VERSION = 1;
+  static final int HEADER_SIZE = 24;
+  private static final int CHUNK_SHIFT = 30;
+  private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+  private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+  public final int numSymbols;
+  private final int width;
+  private final long length;
+  private final MappedByteBuffer[] chunks;
+
+  private EmissionFile(int numSymbols, long length, MappedByteBuffer[] chunks) {
+    this.numSymbols = numSymbols;
+    this.width = width(numSymbols);
+    this.length = length;
+    this.chunks = chunks;
+  }
+
+  /**
+   * @return The number of symbols in the file.
+   */
+  public long length() {
+    return length;
+  }
+
+  /**
+   * Function that checks that the emissions can be used with a model, i.e. that
+   * every symbol the header allows is a column of its B.
+   * @param  model The model the emissions are used with.
+   * @throws IllegalArgumentException If the file has more symbols than the model.
+   */
+  public void checkSymbols(HMMModel model) {
+    if (numSymbols > model.numSymbols) {
+      throw new IllegalArgumentException("The emission file has M=" + numSymbols
+                                         + " symbols, but the model only M="
+                                         + model.numSymbols);
+    }
+  }
+
+  /**
+   * @return The symbol at position t.
+   */
+  public int get(long t) {
+    long pos = t * width;
+    ByteBuffer chunk = chunks[(int) (pos >>> CHUNK_SHIFT)];
+    int offset = (int) (pos & CHUNK_MASK);
+    if (width == 1) {
+      return chunk.get(offset) & 0xFF;
+    } else if (width == 2) {
+      return chunk.getShort(offset) & 0xFFFF;
+    }
+    return chunk.getInt(offset);
+  }
+
+  /**
+   * Stores a symbol at position t. Only for files opened by create or createScratch.
+   */
+  public void set(long t, int symbol) {
+    long pos = t * width;
+    ByteBuffer chunk = chunks[(int) (pos >>> CHUNK_SHIFT)];
+    int offset = (int) (pos & CHUNK_MASK);
+    if (width == 1) {
+      chunk.put(offset, (byte) symbol);
+    } else if (width == 2) {
+      chunk.putShort(offset, (short) symbol);
+    } else {
+      chunk.putInt(offset, symbol);
+    }
+  }
+
+  /**
+   * @return An iterator over the symbols from the first to the last.
+   */
+  public PrimitiveIterator.OfInt iterator() {
+    return new PrimitiveIterator.OfInt() {
+      private long next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < length;
+      }
+
+      @Override
+      public int nextInt() {
+        if (next >= length) {
+          throw new NoSuchElementException();
+        }
+        return get(next++);
+      }
+    };
+  }
+
+  /**
+   * Function that maps an emission file read-only and checks its header.
+   * @param  path The file to map.
+   * @return The mapped emission file.
+   */
+  public static EmissionFile map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header) < 0) {
+          break;
+        }
+      }
+      if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+        throw new IOException(path + " is not an emission file");
+      }
+      int version = header.getInt(4);
+      if (version != VERSION) {
+        throw new IOException(path + " has unsupported emission file version " + version);
+      }
+      int numSymbols = header.getInt(8);
+      long length = header.getLong(16);
+      if (numSymbols <= 0 || header.getInt(12) != width(numSymbols) || length < 0
+          || channel.size() != HEADER_SIZE + length * width(numSymbols)) {
+        throw new IOException(path + " has a corrupt emission file header");
+      }
+      return new EmissionFile(numSymbols, length,
+                              mapChunks(channel, FileChannel.MapMode.READ_ONLY,
+                                        length * width(numSymbols)));
+    }
+  }
+
+  /**
+   * Function that creates an emission file of a given length, replacing any
+   * existing file, and maps it for writing. The symbols start out as 0.
+   * @param  path The file to create.
+   * @param  numSymbols The alphabet size M.
+   * @param  length The number of symbols.
+   * @return The mapped file, to be filled with set.
+   */
+  public static EmissionFile create(Path path, int numSymbols, long length) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      return create(channel, numSymbols, length);
+    }
+  }
+
+  /**
+   * Function that creates a nameless scratch file for a buffer too large for the
+   * heap. The file is unlinked as soon as it is mapped, so the operating system
+   * writes its pages out only under memory pressure and frees them once the
+   * mapping is garbage collected.
+   * @param  directory Where the scratch file is created, null for the default
+   * temporary directory.
+   * @param  numSymbols The number of distinct values to store.
+   * @param  length The number of values.
+   * @return The mapped scratch file.
+   */
+  public static EmissionFile createScratch(Path directory, int numSymbols, long length)
+      throws IOException {
+    Path path = directory != null ? Files.createTempFile(directory, "hmm", ".scratch")
+                                  : Files.createTempFile("hmm", ".scratch");
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.DELETE_ON_CLOSE)) {
+      return create(channel, numSymbols, length);
+    }
+  }
+
+  private static EmissionFile create(FileChannel channel, int numSymbols, long length)
+      throws IOException {
+    if (numSymbols <= 0 || length < 0) {
+      throw new IllegalArgumentException("Invalid emission file size " + numSymbols + " x "
+                                         + length);
+    }
+    ByteBuffer header = header(numSymbols, length);
+    while (header.hasRemaining()) {
+      channel.write(header);
+    }
+    return new EmissionFile(numSymbols, length,
+                            mapChunks(channel, FileChannel.MapMode.READ_WRITE,
+                                      length * width(numSymbols)));
+  }
+
+  /**
+   * Function that writes an emission sequence to an emission file, streaming it
+   * through a small buffer, replacing any existing file.
+   * @param  path The file to write.
+   * @param  numSymbols The alphabet size M.
+   * @param  emissions The emissions, consumed until exhausted.
+   * @return The number of emissions written.
+   */
+  public static long write(Path path, int numSymbols, PrimitiveIterator.OfInt emissions)
+      throws IOException {
+    try (Writer writer = new Writer(path, numSymbols)) {
+      while (emissions.hasNext()) {
+        writer.accept(emissions.nextInt());
+      }
+      return writer.finish();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Function that converts whitespace separated decimal symbols, e.g. a plain
+   * observation log, to an emission file without holding them in memory.
+   * @param  in The text to read until end of file. Not closed.
+   * @param  path The file to write.
+   * @param  numSymbols The alphabet size M.
+   * @return The number of emissions written.
+   */
+  public static long convert(InputStream in, Path path, int numSymbols) throws IOException {
+    try (Writer writer = new Writer(path, numSymbols)) {
+      parseSymbols(in, writer);
+      return writer.finish();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Parses whitespace separated decimal symbols straight from a byte buffer,
+   * without creating any Strings.
+   */
+  static void parseSymbols(InputStream in, IntConsumer out) throws IOException {
+    byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+    int value = 0;
+    boolean inNumber = false;
+    int numRead;
+    while ((numRead = in.read(buffer)) != -1) {
+      for (int pos = 0; pos < numRead; pos++) {
+        int digit = buffer[pos] - '0';
+        if (digit >= 0 && digit <= 9) {
+          value = value * 10 + digit;
+          inNumber = true;
+        } else if (buffer[pos] <= ' ') {
+          if (inNumber) {
+            out.accept(value);
+            value = 0;
+            inNumber = false;
+          }
+        } else {
+          throw new IllegalArgumentException("Unexpected character '" + (char) buffer[pos]
+                                             + "' in emission stream");
+        }
+      }
+    }
+    if (inNumber) {
+      out.accept(value);
+    }
+  }
+
+  /**
+   * Appends symbols to a new file through a buffer, and writes the header with the
+   * final length once they are all in. A write failing inside accept is rethrown
+   * as an UncheckedIOException.
+   */
+  private static final class Writer implements IntConsumer, AutoCloseable {
+    private final FileChannel channel;
+    private final int numSymbols;
+    private final ByteBuffer buffer;
+    private long length;
+
+    Writer(Path path, int numSymbols) throws IOException {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                      StandardOpenOption.TRUNCATE_EXISTING);
+      this.numSymbols = numSymbols;
+      this.buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      channel.position(HEADER_SIZE);
+    }
+
+    @Override
+    public void accept(int symbol) {
+      if (symbol < 0 || symbol >= numSymbols) {
+        throw new IllegalArgumentException("Emission " + symbol + " outside of [0, "
+                                           + numSymbols + ")");
+      }
+      if (buffer.remaining() < Integer.BYTES) {
+        flushBuffer();
+      }
+      int width = width(numSymbols);
+      if (width == 1) {
+        buffer.put((byte) symbol);
+      } else if (width == 2) {
+        buffer.putShort((short) symbol);
+      } else {
+        buffer.putInt(symbol);
+      }
+      length++;
+    }
+
+    long finish() throws IOException {
+      flushBuffer();
+      ByteBuffer header = header(numSymbols, length);
+      channel.position(0);
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      return length;
+    }
+
+    private void flushBuffer() {
+      buffer.flip();
+      try {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  private static ByteBuffer header(int numSymbols, long length) {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(VERSION).putInt(numSymbols).putInt(width(numSymbols));
+    header.putLong(length);
+    header.flip();
+    return header;
+  }
+
+  /**
+   * Maps the symbols behind the header in chunks of 2^CHUNK_SHIFT bytes. The chunk
+   * size is a multiple of every width, so no symbol straddles two chunks.
+   */
+  private static MappedByteBuffer[] mapChunks(FileChannel channel, FileChannel.MapMode mode,
+                                              long numBytes) throws IOException {
+    int numChunks = (int) ((numBytes + CHUNK_MASK) >>> CHUNK_SHIFT);
+    MappedByteBuffer[] chunks = new MappedByteBuffer[Math.max(numChunks, 1)];
+    for (int chunk = 0; chunk < chunks.length; chunk++) {
+      long start = (long) chunk << CHUNK_SHIFT;
+      long size = Math.min(CHUNK_MASK + 1, numBytes - start);
+      chunks[chunk] = channel.map(mode, HEADER_SIZE + start, Math.max(size, 0));
+      chunks[chunk].order(ByteOrder.LITTLE_ENDIAN);
+    }
+    return chunks;
+  }
+
+  static int width(int numSymbols) {
+    if (numSymbols <= 1 << 8) {
+      return 1;
+    }
+    return numSymbols <= 1 << 16 ? 2 : 4;
+  }
+}
@@ -0,0 +1,17 @@
+package main.java.helpers;
+
+/**
+ * Primitive counterpart of AlphaPass. The alpha values are stored time-major, so
+ * alpha_t(i) lives at alphaMat[t * numStates + i].
+ */
+public class FlatAlphaPass {
+  public int numStates;
+  public double[] alphaMat;
+  public double[] scalingFactors;
+
+  public FlatAlphaPass(int numStates, double[] alphaMat, double[] scalingFactors) {
+    this.numStates = numStates;
+    this.alphaMat = alphaMat;
+    this.scalingFactors = scalingFactors;
+  }
+}
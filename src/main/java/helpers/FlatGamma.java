@@ -0,0 +1,17 @@
+package main.java.helpers;
+
+/**
+ * Primitive counterpart of Gamma. Both arrays are time-major: gamma_t(i) lives at
+ * monoGamma[t * N + i] and digamma_t(i, j) at diGamma[(t * N + i) * N + j].
+ */
+public class FlatGamma {
+  public int numStates;
+  public double[] monoGamma;
+  public double[] diGamma;
+
+  public FlatGamma(int numStates, double[] monoGamma, double[] diGamma) {
+    this.numStates = numStates;
+    this.monoGamma = monoGamma;
+    this.diGamma = diGamma;
+  }
+}
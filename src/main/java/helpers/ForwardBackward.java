@@ -0,0 +1,483 @@
+package main.java.helpers;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Forward-backward passes that accumulate SufficientStatistics during the backward
+ * sweep instead of materializing the beta, mono-gamma and di-gamma matrices.
+ *
+ * The alpha matrix is then the only per-timestep storage. The single precision
+ * variants keep it, or the recomputed segment of the checkpointed pass, in float,
+ * halving its size and the memory traffic of the backward sweep, while the
+ * recursions, scaling factors and sums stay in double.
+ */
+public class ForwardBackward {
+  /**
+   * Function that runs the expectation step selected by the training options.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  options Picks the fused or the checkpointed pass, and whether the
+   * forward sweep of the fused pass runs chunked on options.pool.
+   * @return The expected counts of the sequence.
+   */
+  public static SufficientStatistics expectation(HMMModel model, int[] emissions,
+                                                 TrainingOptions options) {
+    return expectation(model, emissions, options, new Workspace());
+  }
+
+  /**
+   * Function that runs the expectation step selected by the training options, the
+   * fused one taking its alpha matrix from a workspace.
+   * @param  workspace The work arrays to reuse.
+   */
+  public static SufficientStatistics expectation(HMMModel model, int[] emissions,
+                                                 TrainingOptions options, Workspace workspace) {
+    if (options.checkpointed) {
+      return checkpointedExpectation(model, emissions, options.checkpointInterval,
+                                     options.singlePrecision);
+    }
+    if (options.singlePrecision) {
+      return singlePrecisionExpectation(model, emissions, workspace);
+    }
+    if (options.parallelForward) {
+      return expectation(model, emissions, workspace,
+                         options.pool != null ? options.pool : ForkJoinPool.commonPool());
+    }
+    return expectation(model, emissions, workspace);
+  }
+
+  /**
+   * Function that runs the fused expectation step. The forward pass stores the
+   * scaled alpha matrix, and the backward sweep keeps only the current beta vector.
+   * At every step it adds gamma, di-gamma and the emission counts straight into the
+   * statistics. Neither the beta matrix nor the N*N*T di-gamma tensor is ever built,
+   * and re-estimation becomes O(N^2 + NM).
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @return The expected counts of the sequence.
+   */
+  public static SufficientStatistics expectation(HMMModel model, int[] emissions) {
+    return expectation(model, emissions, new Workspace());
+  }
+
+  /**
+   * Function that runs the fused expectation step with the alpha matrix, scaling
+   * factors and beta vectors taken from a workspace.
+   * @param  workspace The work arrays to reuse.
+   */
+  public static SufficientStatistics expectation(HMMModel model, int[] emissions,
+                                                 Workspace workspace) {
+    return expectation(model, emissions, workspace, null);
+  }
+
+  /**
+   * Function that runs the fused expectation step, with the forward sweep split
+   * into one chunk per worker of forwardPool by ParallelForward, or sequential if
+   * forwardPool is null. The backward sweep is sequential either way.
+   */
+  private static SufficientStatistics expectation(HMMModel model, int[] emissions,
+                                                  Workspace workspace, ForkJoinPool forwardPool) {
+    int numStates = model.numStates;
+    int numEmissions = emissions.length;
+    double[] alphaMat = workspace.forward(numStates * numEmissions);
+    double[] scalingFactors = workspace.scales(numEmissions);
+
+    long forwardStart = System.nanoTime();
+    if (forwardPool != null) {
+      ParallelForward.alphaPassScale(model, emissions, forwardPool, forwardPool.getParallelism(),
+                                     alphaMat, scalingFactors);
+    }
+    double logScaleSum = 0.0;
+    for (int step = 0; step < numEmissions; step++) {
+      if (forwardPool == null) {
+        int offset = step * numStates;
+        scalingFactors[step] = step == 0
+            ? initialStep(model, emissions[0], alphaMat, 0)
+            : forwardStep(model, alphaMat, offset - numStates, emissions[step], alphaMat,
+                          offset);
+      }
+      logScaleSum += Math.log(scalingFactors[step]);
+    }
+
+    SufficientStatistics stats = new SufficientStatistics(numStates, model.numSymbols);
+    stats.logProb = logScaleSum * (-1);
+    stats.numSequences = 1;
+    long forwardEnd = System.nanoTime();
+    stats.forwardNanos = forwardEnd - forwardStart;
+
+    double[] beta = workspace.backward(numStates);
+    double[] weightedBeta = workspace.weightedBackward(numStates);
+    int last = numEmissions - 1;
+    lastStep(model, alphaMat, last * numStates, scalingFactors[last], emissions[last], beta,
+             stats, last == 0);
+    for (int step = last - 1; step >= 0; step--) {
+      backwardStep(model, alphaMat, step * numStates, scalingFactors[step], emissions[step],
+                   emissions[step + 1], beta, weightedBeta, stats, step == 0);
+    }
+    stats.backwardNanos = System.nanoTime() - forwardEnd;
+    return stats;
+  }
+
+  /**
+   * Function that runs the fused expectation step storing the alpha matrix in float.
+   * The forward recursion itself runs in double on two rolling vectors, so the
+   * scaling factors and the log probability are exactly those of the double pass.
+   * Only the stored copy is rounded, which perturbs the gammas and di-gammas by at
+   * most about the float precision, 6e-8 relative.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  workspace The work arrays to reuse.
+   * @return The expected counts of the sequence.
+   */
+  public static SufficientStatistics singlePrecisionExpectation(HMMModel model, int[] emissions,
+                                                                Workspace workspace) {
+    int numStates = model.numStates;
+    int numEmissions = emissions.length;
+    float[] alphaMat = workspace.singleForward(numStates * numEmissions);
+    double[] scalingFactors = workspace.scales(numEmissions);
+
+    long forwardStart = System.nanoTime();
+    double[] alpha = workspace.forward(numStates);
+    double[] nextAlpha = workspace.nextForward(numStates);
+    double logScaleSum = 0.0;
+    for (int step = 0; step < numEmissions; step++) {
+      scalingFactors[step] = step == 0
+          ? initialStep(model, emissions[0], nextAlpha, 0)
+          : forwardStep(model, alpha, 0, emissions[step], nextAlpha, 0);
+      logScaleSum += Math.log(scalingFactors[step]);
+      narrow(nextAlpha, alphaMat, step * numStates, numStates);
+      double[] tmp = alpha;
+      alpha = nextAlpha;
+      nextAlpha = tmp;
+    }
+
+    SufficientStatistics stats = new SufficientStatistics(numStates, model.numSymbols);
+    stats.logProb = logScaleSum * (-1);
+    stats.numSequences = 1;
+    long forwardEnd = System.nanoTime();
+    stats.forwardNanos = forwardEnd - forwardStart;
+
+    /**
+     * The backward sweep widens one stored alpha vector at a time into the rolling
+     * vector, which the forward recursion no longer needs.
+     */
+    double[] beta = workspace.backward(numStates);
+    double[] weightedBeta = workspace.weightedBackward(numStates);
+    int last = numEmissions - 1;
+    widen(alphaMat, last * numStates, alpha, numStates);
+    lastStep(model, alpha, 0, scalingFactors[last], emissions[last], beta, stats, last == 0);
+    for (int step = last - 1; step >= 0; step--) {
+      widen(alphaMat, step * numStates, alpha, numStates);
+      backwardStep(model, alpha, 0, scalingFactors[step], emissions[step], emissions[step + 1],
+                   beta, weightedBeta, stats, step == 0);
+    }
+    stats.backwardNanos = System.nanoTime() - forwardEnd;
+    return stats;
+  }
+
+  private static void narrow(double[] source, float[] out, int offset, int length) {
+    for (int i = 0; i < length; i++) {
+      out[offset + i] = (float) source[i];
+    }
+  }
+
+  private static void widen(float[] source, int offset, double[] out, int length) {
+    for (int i = 0; i < length; i++) {
+      out[i] = source[offset + i];
+    }
+  }
+
+  /**
+   * Function that runs the checkpointed expectation step. The forward pass only
+   * stores the scaled alpha vector (and its scaling factor) every interval steps.
+   * The backward sweep then handles one segment at a time, recomputing the alphas
+   * of the segment from its checkpoint. Memory is O((T/interval + interval) * N)
+   * at the cost of one extra forward pass.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  interval Steps between checkpoints, 0 picks ceil(sqrt(T)).
+   * @return The expected counts of the sequence.
+   */
+  public static SufficientStatistics checkpointedExpectation(HMMModel model, int[] emissions,
+                                                             int interval) {
+    return checkpointedExpectation(model, emissions, interval, false);
+  }
+
+  /**
+   * Function that runs the checkpointed expectation step, optionally storing the
+   * recomputed alphas of a segment in float. The checkpoints stay in double, so
+   * the recursions restart from exact values and the log probability is that of
+   * the double pass.
+   * @param  singlePrecision Whether the segment is stored in float.
+   */
+  public static SufficientStatistics checkpointedExpectation(HMMModel model, int[] emissions,
+                                                             int interval,
+                                                             boolean singlePrecision) {
+    return checkpointedExpectation(model, t -> emissions[(int) t], emissions.length, interval,
+                                   singlePrecision);
+  }
+
+  /**
+   * Function that runs the checkpointed expectation step over a memory-mapped
+   * emission file. Only the checkpoints and one segment are held in memory, and the
+   * emissions are read from the mapping, so the sequence may be far larger than the
+   * heap.
+   * @param  model The HMM model.
+   * @param  emissions The observed emissions.
+   * @param  interval Steps between checkpoints, 0 picks ceil(sqrt(T)).
+   * @return The expected counts of the sequence.
+   */
+  public static SufficientStatistics checkpointedExpectation(HMMModel model,
+                                                             EmissionFile emissions,
+                                                             int interval) {
+    return checkpointedExpectation(model, emissions, interval, false);
+  }
+
+  /**
+   * Function that runs the checkpointed expectation step over a memory-mapped
+   * emission file, optionally storing the recomputed segment in float.
+   * @param  singlePrecision Whether the segment is stored in float.
+   */
+  public static SufficientStatistics checkpointedExpectation(HMMModel model,
+                                                             EmissionFile emissions,
+                                                             int interval,
+                                                             boolean singlePrecision) {
+    return checkpointedExpectation(model, emissions::get, emissions.length(), interval,
+                                   singlePrecision);
+  }
+
+  private static SufficientStatistics checkpointedExpectation(HMMModel model,
+                                                              LongToIntFunction emissions,
+                                                              long numEmissions, int interval,
+                                                              boolean singlePrecision) {
+    int numStates = model.numStates;
+    if (interval <= 0) {
+      interval = Math.max(1, (int) Math.ceil(Math.sqrt(numEmissions)));
+    }
+    int numSegments = (int) ((numEmissions + interval - 1) / interval);
+    double[] checkpoints = new double[numSegments * numStates];
+    double[] checkpointScales = new double[numSegments];
+
+    /**
+     * Forward pass over two rolling vectors, storing the checkpoints.
+     */
+    long forwardStart = System.nanoTime();
+    double[] alpha = new double[numStates];
+    double[] nextAlpha = new double[numStates];
+    double logScaleSum = 0.0;
+    for (long step = 0; step < numEmissions; step++) {
+      double c = step == 0
+          ? initialStep(model, emissions.applyAsInt(0), nextAlpha, 0)
+          : forwardStep(model, alpha, 0, emissions.applyAsInt(step), nextAlpha, 0);
+      logScaleSum += Math.log(c);
+      double[] tmp = alpha;
+      alpha = nextAlpha;
+      nextAlpha = tmp;
+      if (step % interval == 0) {
+        int checkpoint = (int) (step / interval);
+        System.arraycopy(alpha, 0, checkpoints, checkpoint * numStates, numStates);
+        checkpointScales[checkpoint] = c;
+      }
+    }
+
+    SufficientStatistics stats = new SufficientStatistics(numStates, model.numSymbols);
+    stats.logProb = logScaleSum * (-1);
+    stats.numSequences = 1;
+    long forwardEnd = System.nanoTime();
+    stats.forwardNanos = forwardEnd - forwardStart;
+
+    /**
+     * Backward sweep, one segment at a time starting from the back. In single
+     * precision the segment is recomputed on the rolling vectors and only its
+     * stored copy is rounded; every step widens its alphas back into alpha.
+     */
+    double[] segmentAlpha = singlePrecision ? null : new double[interval * numStates];
+    float[] singleSegmentAlpha = singlePrecision ? new float[interval * numStates] : null;
+    double[] segmentScales = new double[interval];
+    double[] beta = new double[numStates];
+    double[] weightedBeta = new double[numStates];
+    for (int segment = numSegments - 1; segment >= 0; segment--) {
+      long start = (long) segment * interval;
+      long end = Math.min(numEmissions, start + interval);
+      segmentScales[0] = checkpointScales[segment];
+      if (singlePrecision) {
+        System.arraycopy(checkpoints, segment * numStates, alpha, 0, numStates);
+        narrow(alpha, singleSegmentAlpha, 0, numStates);
+        for (long step = start + 1; step < end; step++) {
+          int offset = (int) (step - start) * numStates;
+          segmentScales[(int) (step - start)] = forwardStep(model, alpha, 0,
+                                                            emissions.applyAsInt(step),
+                                                            nextAlpha, 0);
+          narrow(nextAlpha, singleSegmentAlpha, offset, numStates);
+          double[] tmp = alpha;
+          alpha = nextAlpha;
+          nextAlpha = tmp;
+        }
+      } else {
+        System.arraycopy(checkpoints, segment * numStates, segmentAlpha, 0, numStates);
+        for (long step = start + 1; step < end; step++) {
+          int offset = (int) (step - start) * numStates;
+          segmentScales[(int) (step - start)] = forwardStep(model, segmentAlpha,
+                                                            offset - numStates,
+                                                            emissions.applyAsInt(step),
+                                                            segmentAlpha, offset);
+        }
+      }
+      for (long step = end - 1; step >= start; step--) {
+        int offset = (int) (step - start) * numStates;
+        double[] stepAlpha = segmentAlpha;
+        if (singlePrecision) {
+          widen(singleSegmentAlpha, offset, alpha, numStates);
+          stepAlpha = alpha;
+          offset = 0;
+        }
+        if (step == numEmissions - 1) {
+          lastStep(model, stepAlpha, offset, segmentScales[(int) (step - start)],
+                   emissions.applyAsInt(step), beta, stats, step == 0);
+        } else {
+          backwardStep(model, stepAlpha, offset, segmentScales[(int) (step - start)],
+                       emissions.applyAsInt(step), emissions.applyAsInt(step + 1), beta,
+                       weightedBeta, stats, step == 0);
+        }
+      }
+    }
+    stats.backwardNanos = System.nanoTime() - forwardEnd;
+    return stats;
+  }
+
+  /**
+   * First step of the scaled forward pass, alpha_0(i) = c * B[i][o_0] * pi[i].
+   * @return The scaling factor c.
+   */
+  static double initialStep(HMMModel model, int emission, double[] out, int outOffset) {
+    int numStates = model.numStates;
+    double c = 0.0;
+    for (int i = 0; i < numStates; i++) {
+      out[outOffset + i] = model.b[i * model.bStride + emission] * model.pi[i];
+      c += out[outOffset + i];
+    }
+    c = 1/c;
+    for (int i = 0; i < numStates; i++) {
+      out[outOffset + i] *= c;
+    }
+    return c;
+  }
+
+  /**
+   * One step of the scaled forward pass. Dense transitions add the rows of A,
+   * weighted by the previous alphas, with the axpy of Kernels.get(). The scalar
+   * kernels sum in the same order as HMM3.alphaPassScale, so the results are
+   * identical.
+   * @return The scaling factor c.
+   */
+  static double forwardStep(HMMModel model, double[] prev, int prevOffset, int emission,
+                            double[] out, int outOffset) {
+    int numStates = model.numStates;
+    double[] a = model.a;
+    if (model.transitions != null) {
+      model.transitions.forward(a, prev, prevOffset, out, outOffset);
+    } else {
+      Kernels kernels = Kernels.get();
+      for (int i = 0; i < numStates; i++) {
+        out[outOffset + i] = 0.0;
+      }
+      for (int j = 0; j < numStates; j++) {
+        kernels.axpy(prev[prevOffset + j], a, j * numStates, out, outOffset, numStates);
+      }
+    }
+    double c = 0.0;
+    for (int i = 0; i < numStates; i++) {
+      out[outOffset + i] = model.b[i * model.bStride + emission] * out[outOffset + i];
+      c += out[outOffset + i];
+    }
+    c = 1/c;
+    for (int i = 0; i < numStates; i++) {
+      out[outOffset + i] *= c;
+    }
+    return c;
+  }
+
+  /**
+   * Handles the last time-step: beta_{T-1}(i) = c_{T-1} and gamma_{T-1} is the
+   * normalized alpha vector. firstStep is set when T = 1, where the last step
+   * also provides the initial gamma.
+   */
+  static void lastStep(HMMModel model, double[] alpha, int alphaOffset, double scale,
+                       int emission, double[] beta, SufficientStatistics stats,
+                       boolean firstStep) {
+    int numStates = model.numStates;
+    double denom = 0.0;
+    for (int i = 0; i < numStates; i++) {
+      denom += alpha[alphaOffset + i];
+    }
+    for (int i = 0; i < numStates; i++) {
+      double gamma = alpha[alphaOffset + i] / denom;
+      stats.gammaTotals[i] += gamma;
+      stats.emissionCounts[i * stats.numSymbols + emission] += gamma;
+      stats.finalGamma[i] = gamma;
+      if (firstStep) {
+        stats.initialGamma[i] += gamma;
+      }
+      beta[i] = scale;
+    }
+  }
+
+  /**
+   * One step of the backward sweep at time t. Turns beta_{t+1} into beta_t in place
+   * and adds the gamma and di-gamma of step t to the statistics. The row sums
+   * sum_j A[i][j] * B[j][o_{t+1}] * beta_{t+1}(j) are shared by the beta update,
+   * the gamma denominator and gamma itself, so the step costs O(N^2), or O(nnz)
+   * with sparse transitions. The dense row sums and di-gamma rows go through
+   * Kernels.get().
+   */
+  static void backwardStep(HMMModel model, double[] alpha, int alphaOffset, double scale,
+                           int emission, int nextEmission, double[] beta,
+                           double[] weightedBeta, SufficientStatistics stats,
+                           boolean firstStep) {
+    int numStates = model.numStates;
+    double[] a = model.a;
+    int bStride = model.bStride;
+    SparseTransitions sparse = model.transitions;
+    Kernels kernels = Kernels.get();
+    for (int j = 0; j < numStates; j++) {
+      weightedBeta[j] = model.b[j * bStride + nextEmission] * beta[j];
+    }
+    double denom = 0.0;
+    for (int i = 0; i < numStates; i++) {
+      double rowSum = 0.0;
+      int aRow = i * numStates;
+      if (sparse != null) {
+        for (int idx = sparse.rowStarts[i]; idx < sparse.rowStarts[i + 1]; idx++) {
+          int j = sparse.rowColumns[idx];
+          rowSum += a[aRow + j] * weightedBeta[j];
+        }
+      } else {
+        rowSum = kernels.dot(0.0, a, aRow, weightedBeta, 0, numStates);
+      }
+      beta[i] = rowSum;
+      denom += alpha[alphaOffset + i] * rowSum;
+    }
+    for (int i = 0; i < numStates; i++) {
+      double weight = alpha[alphaOffset + i] / denom;
+      double gamma = weight * beta[i];
+      int aRow = i * numStates;
+      if (sparse != null) {
+        for (int idx = sparse.rowStarts[i]; idx < sparse.rowStarts[i + 1]; idx++) {
+          int j = sparse.rowColumns[idx];
+          stats.transitionCounts[aRow + j] += weight * a[aRow + j] * weightedBeta[j];
+        }
+      } else {
+        kernels.addProducts(weight, a, aRow, weightedBeta, 0, stats.transitionCounts, aRow,
+                            numStates);
+      }
+      stats.transitionTotals[i] += gamma;
+      stats.gammaTotals[i] += gamma;
+      stats.emissionCounts[i * stats.numSymbols + emission] += gamma;
+      if (firstStep) {
+        stats.initialGamma[i] += gamma;
+      }
+      beta[i] *= scale;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package main.java.helpers;
+
+/**
+ * Primitive representation of an HMM, lambda = (A, B, pi). All three matrices are
+ * stored as contiguous row-major double arrays, so element (i, j) of A lives at
+ * a[i * aStride + j] and element (i, k) of B at b[i * bStride + k]. Used by the
+ * primitive passes in HMM0-HMM3 so that the hot loops never box or chase pointers.
+ */
+public class HMMModel {
+  public final int numStates;
+  public final int numSymbols;
+  public final int aStride;
+  public final int bStride;
+  public final double[] a;
+  public final double[] b;
+  public final double[] pi;
+  /**
+   * Nonzero pattern of A, used by the passes to skip its structural zeros, or null
+   * to loop over all N*N entries. Re-estimation never turns a zero of A into a
+   * nonzero, so the pattern stays valid while training. Code that writes new
+   * nonzeros into a has to call useSparseTransitions or chooseTransitions again.
+   */
+  public SparseTransitions transitions;
+
+  public HMMModel(int numStates, int numSymbols) {
+    this(numStates, numSymbols, new double[numStates * numStates],
+         new double[numStates * numSymbols], new double[numStates]);
+  }
+
+  public HMMModel(int numStates, int numSymbols, double[] a, double[] b, double[] pi) {
+    if (a.length != numStates * numStates || b.length != numStates * numSymbols
+        || pi.length != numStates) {
+      throw new IllegalArgumentException("Matrix sizes do not match N=" + numStates
+                                         + ", M=" + numSymbols);
+    }
+    this.numStates = numStates;
+    this.numSymbols = numSymbols;
+    this.aStride = numStates;
+    this.bStride = numSymbols;
+    this.a = a;
+    this.b = b;
+    this.pi = pi;
+  }
+
+  /**
+   * Builds a model from the boxed matrices produced by ArrayOperations.stringToMatrix.
+   * @param  A The A-matrix of an HMM, namely the transition matrix.
+   * @param  B The B-matrix of an HMM, namely the emission probability matrix.
+   * @param  pi The initial state distribution represented as a 1*N matrix.
+   * @return A new model holding primitive copies of the three matrices.
+   */
+  public static HMMModel fromMatrices(Double[][] A, Double[][] B, Double[][] pi) {
+    HMMModel model = new HMMModel(A.length, B[0].length, ArrayOperations.flatten(A),
+                                  ArrayOperations.flatten(B), ArrayOperations.flatten(pi));
+    model.chooseTransitions();
+    return model;
+  }
+
+  /**
+   * Sets the transition representation explicitly.
+   * @param sparse true to use the nonzero pattern of the current A, false for dense.
+   */
+  public void useSparseTransitions(boolean sparse) {
+    transitions = sparse ? SparseTransitions.of(a, numStates) : null;
+  }
+
+  /**
+   * Picks the sparse transition representation if at most
+   * SparseTransitions.MAX_DENSITY of the current A is nonzero, dense otherwise.
+   */
+  public void chooseTransitions() {
+    SparseTransitions sparse = SparseTransitions.of(a, numStates);
+    transitions = sparse.density() <= SparseTransitions.MAX_DENSITY ? sparse : null;
+  }
+
+  /**
+   * Writes the model parameters back into boxed matrices of matching dimensions.
+   * Used by the Double[][] adapters, which update their arguments in place.
+   * @param A The transition matrix to overwrite.
+   * @param B The emission matrix to overwrite.
+   * @param pi The 1*N initial state distribution to overwrite.
+   */
+  public void copyTo(Double[][] A, Double[][] B, Double[][] pi) {
+    ArrayOperations.unflatten(a, A);
+    ArrayOperations.unflatten(b, B);
+    ArrayOperations.unflatten(this.pi, pi);
+  }
+
+  /**
+   * Overwrites the parameters of this model with the ones of another model of the
+   * same dimensions.
+   * @param other The model to copy from.
+   */
+  public void copyFrom(HMMModel other) {
+    System.arraycopy(other.a, 0, a, 0, a.length);
+    System.arraycopy(other.b, 0, b, 0, b.length);
+    System.arraycopy(other.pi, 0, pi, 0, pi.length);
+    transitions = other.transitions;
+  }
+
+  public HMMModel copy() {
+    HMMModel copy = new HMMModel(numStates, numSymbols, a.clone(), b.clone(), pi.clone());
+    copy.transitions = transitions;
+    return copy;
+  }
+
+  public double a(int i, int j) {
+    return a[i * aStride + j];
+  }
+
+  public double b(int i, int k) {
+    return b[i * bStride + k];
+  }
+}
@@ -0,0 +1,47 @@
+package main.java.helpers;
+
+import java.util.Locale;
+
+/**
+ * Measurements of one expectation and re-estimation iteration of HMM3.trainModel,
+ * passed to the TrainingListener and recorded as a JFR event.
+ *
+ * The materialized path times the alpha, beta and gamma passes separately. The
+ * fused and checkpointed expectation steps accumulate gamma during the backward
+ * sweep, so their gamma time is part of betaNanos and gammaNanos is 0. When
+ * training on several sequences, alphaNanos and betaNanos are summed over the
+ * sequences and can exceed totalNanos.
+ */
+public class IterationMetrics {
+  /** Number of the iteration, from 1. With acceleration the extrapolated steps count too. */
+  public int iteration;
+  /** Natural logarithm probability of the training data under the model before re-estimation. */
+  public double logProb;
+  /** Change of logProb since the previous iteration, NaN for the first one. */
+  public double delta;
+  public long alphaNanos;
+  public long betaNanos;
+  public long gammaNanos;
+  public long reEstimateNanos;
+  /** Wall time of the whole iteration. */
+  public long totalNanos;
+  /**
+   * Bytes allocated by the training thread during the iteration, -1 if the JVM does
+   * not count them. Allocations of pool workers are not included.
+   */
+  public long allocatedBytes;
+  /** Largest absolute change of an entry of A, B and pi by the re-estimation. */
+  public double transitionChange;
+  public double emissionChange;
+  public double initialChange;
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "iteration %d logProb %.6f delta %.3g alpha %.3f ms "
+                         + "beta %.3f ms gamma %.3f ms reEstimate %.3f ms total %.3f ms "
+                         + "allocated %d B change A %.3g B %.3g pi %.3g",
+                         iteration, logProb, delta, alphaNanos / 1e6, betaNanos / 1e6,
+                         gammaNanos / 1e6, reEstimateNanos / 1e6, totalNanos / 1e6,
+                         allocatedBytes, transitionChange, emissionChange, initialChange);
+  }
+}
@@ -0,0 +1,228 @@
+package main.java.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reader for the Kattis input format that parses numbers straight from a byte
+ * buffer into primitive arrays. Unlike ArrayOperations.stringToMatrix it creates
+ * no line Strings, no String[] and no boxed values, so loading a sequence of
+ * millions of emissions costs milliseconds and almost no garbage.
+ *
+ * Tokens are separated by any whitespace, line breaks carry no meaning.
+ */
+public class KattisReader {
+  private static final int BUFFER_SIZE = 1 << 16;
+  /**
+   * Powers of ten that are exact doubles, used for the fast path of readDouble.
+   */
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final InputStream in;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  /** Scratch for the rare tokens that need Double.parseDouble. */
+  private final StringBuilder token = new StringBuilder();
+
+  public int numRows;
+  public int numCols;
+
+  public KattisReader(InputStream in) {
+    this.in = in;
+  }
+
+  /**
+   * Reads the three lines A, B and pi of a model.
+   * @return The model, with the transition representation chosen by the density of A.
+   */
+  public HMMModel readModel() throws IOException {
+    double[] a = readMatrix();
+    int numStates = numRows;
+    double[] b = readMatrix();
+    int numSymbols = numCols;
+    double[] pi = readMatrix();
+    HMMModel model = new HMMModel(numStates, numSymbols, a, b, pi);
+    model.chooseTransitions();
+    return model;
+  }
+
+  /**
+   * Reads a matrix given as "rows cols v_11 v_12 ...". The dimensions are left in
+   * numRows and numCols.
+   * @return The values in row-major order.
+   */
+  public double[] readMatrix() throws IOException {
+    numRows = readInt();
+    numCols = readInt();
+    double[] outputMat = new double[numRows * numCols];
+    for (int idx = 0; idx < outputMat.length; idx++) {
+      outputMat[idx] = readDouble();
+    }
+    return outputMat;
+  }
+
+  /**
+   * Reads an array given as "length v_1 v_2 ...".
+   * @return The values.
+   */
+  public int[] readArray() throws IOException {
+    int arrLen = readInt();
+    int[] outputArr = new int[arrLen];
+    for (int i = 0; i < arrLen; i++) {
+      outputArr[i] = readInt();
+    }
+    return outputArr;
+  }
+
+  /**
+   * Function that checks whether any token is left before the end of input.
+   * Consumes the whitespace in front of it.
+   */
+  public boolean hasNext() throws IOException {
+    int c = skipWhitespace();
+    if (c == -1) {
+      return false;
+    }
+    /**
+     * The byte was just taken from the buffer, so it can be put back.
+     */
+    position--;
+    return true;
+  }
+
+  /**
+   * Function that reads the next token as an integer. A decimal point followed only
+   * by zeros is accepted, since some inputs write dimensions as "4.0".
+   */
+  public int readInt() throws IOException {
+    int c = skipWhitespace();
+    boolean negative = c == '-';
+    if (negative) {
+      c = read();
+    }
+    if (c < '0' || c > '9') {
+      throw new IOException("Expected an integer, found " + describe(c));
+    }
+    int value = 0;
+    while (c >= '0' && c <= '9') {
+      value = value * 10 + (c - '0');
+      c = read();
+    }
+    if (c == '.') {
+      c = read();
+      while (c == '0') {
+        c = read();
+      }
+    }
+    if (c != -1 && c > ' ') {
+      throw new IOException("Expected an integer, found " + describe(c));
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Function that reads the next token as a double. Numbers with at most 15
+   * significant digits and a small decimal exponent are computed exactly from an
+   * integer mantissa and a power of ten. Anything else, e.g. the 17 digits
+   * Double.toString can print, goes through Double.parseDouble to keep correct
+   * rounding.
+   */
+  public double readDouble() throws IOException {
+    int c = skipWhitespace();
+    if (c == -1) {
+      throw new IOException("Expected a number, found end of input");
+    }
+    token.setLength(0);
+    boolean negative = false;
+    if (c == '-' || c == '+') {
+      negative = c == '-';
+      token.append((char) c);
+      c = read();
+    }
+    long mantissa = 0;
+    int numDigits = 0;
+    int exponent = 0;
+    boolean sawDigit = false;
+    while (c >= '0' && c <= '9') {
+      sawDigit = true;
+      token.append((char) c);
+      if (mantissa != 0 || c != '0') {
+        mantissa = mantissa * 10 + (c - '0');
+        numDigits++;
+      }
+      c = read();
+    }
+    if (c == '.') {
+      token.append('.');
+      c = read();
+      while (c >= '0' && c <= '9') {
+        sawDigit = true;
+        token.append((char) c);
+        if (mantissa != 0 || c != '0') {
+          mantissa = mantissa * 10 + (c - '0');
+          numDigits++;
+        }
+        exponent--;
+        c = read();
+      }
+    }
+    if (c == 'e' || c == 'E') {
+      token.append('e');
+      c = read();
+      boolean negativeExponent = false;
+      if (c == '-' || c == '+') {
+        negativeExponent = c == '-';
+        token.append((char) c);
+        c = read();
+      }
+      int explicit = 0;
+      while (c >= '0' && c <= '9') {
+        token.append((char) c);
+        explicit = Math.min(explicit * 10 + (c - '0'), 100000);
+        c = read();
+      }
+      exponent += negativeExponent ? -explicit : explicit;
+    }
+    if (!sawDigit || (c != -1 && c > ' ')) {
+      while (c != -1 && c > ' ') {
+        token.append((char) c);
+        c = read();
+      }
+      return Double.parseDouble(token.toString());
+    }
+    if (numDigits > 15 || exponent < -22 || exponent > 22) {
+      return Double.parseDouble(token.toString());
+    }
+    double value = mantissa;
+    value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+    return negative ? -value : value;
+  }
+
+  private int skipWhitespace() throws IOException {
+    int c = read();
+    while (c != -1 && c <= ' ') {
+      c = read();
+    }
+    return c;
+  }
+
+  private int read() throws IOException {
+    if (position == limit) {
+      limit = in.read(buffer, 0, buffer.length);
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        return -1;
+      }
+    }
+    return buffer[position++];
+  }
+
+  private static String describe(int c) {
+    return c == -1 ? "end of input" : "'" + (char) c + "'";
+  }
+}
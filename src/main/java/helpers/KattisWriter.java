@@ -0,0 +1,83 @@
+package main.java.helpers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writer for the Kattis output format. Lines are appended into one reusable
+ * StringBuilder, which formats doubles without creating intermediate Strings, and
+ * written out as bytes on flush. Produces the same text as
+ * ArrayOperations.matrixToString and arrayToString.
+ */
+public class KattisWriter {
+  private static final int FLUSH_THRESHOLD = 1 << 16;
+
+  private final OutputStream out;
+  private final StringBuilder line = new StringBuilder();
+  private byte[] bytes = new byte[FLUSH_THRESHOLD];
+
+  public KattisWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Writes a matrix as "rows cols v_11 v_12 ..." followed by a line break.
+   * @param mat The values in row-major order.
+   * @param numRows The number of rows.
+   * @param numCols The number of columns.
+   */
+  public void writeMatrix(double[] mat, int numRows, int numCols) throws IOException {
+    line.append(numRows).append(' ').append(numCols);
+    for (int idx = 0; idx < numRows * numCols; idx++) {
+      line.append(' ').append(mat[idx]);
+      flushIfFull();
+    }
+    line.append('\n');
+  }
+
+  /**
+   * Writes an array as "v_1 v_2 ... " followed by a line break.
+   * @param arr The values.
+   */
+  public void writeArray(int[] arr) throws IOException {
+    for (int i = 0; i < arr.length; i++) {
+      line.append(arr[i]).append(' ');
+      flushIfFull();
+    }
+    line.append('\n');
+  }
+
+  public void writeLine(double value) throws IOException {
+    line.append(value).append('\n');
+    flushIfFull();
+  }
+
+  /**
+   * Writes everything appended so far to the stream and flushes it.
+   */
+  public void flush() throws IOException {
+    drain();
+    out.flush();
+  }
+
+  private void flushIfFull() throws IOException {
+    if (line.length() >= FLUSH_THRESHOLD) {
+      drain();
+    }
+  }
+
+  /**
+   * All output is ASCII, so every char maps to a single byte.
+   */
+  private void drain() throws IOException {
+    int length = line.length();
+    if (bytes.length < length) {
+      bytes = new byte[length];
+    }
+    for (int idx = 0; idx < length; idx++) {
+      bytes[idx] = (byte) line.charAt(idx);
+    }
+    out.write(bytes, 0, length);
+    line.setLength(0);
+  }
+}
@@ -0,0 +1,128 @@
+package main.java.helpers;
+
+/**
+ * Inner loops of the scaled forward, backward and gamma passes over primitive
+ * arrays. The scalar implementation sums in exactly the order of the original
+ * loops, so its results are bit-identical to them. The vector implementation
+ * (VectorKernels, built from src-vector/ with the jdk.incubator.vector module on
+ * JDK 16+) sums lane-wise, which changes the rounding but not the values beyond a
+ * few ulps.
+ *
+ * Which one is used is decided once at runtime by the system property hmm.kernels:
+ * "scalar", "vector", or "auto" (the default), which picks the vector kernels if
+ * they were built and the JVM was started with --add-modules jdk.incubator.vector,
+ * and the scalar ones otherwise. An unknown name, or "vector" when the vector
+ * kernels cannot be loaded, falls back to the scalar kernels with a warning on
+ * standard error, since the choice is made in a static initializer where an
+ * exception would leave the class unusable.
+ */
+public abstract class Kernels {
+  public static final String PROPERTY = "hmm.kernels";
+  private static final String VECTOR_CLASS = "main.java.helpers.VectorKernels";
+
+  private static final Kernels DEFAULT = select(System.getProperty(PROPERTY, "auto"));
+
+  /**
+   * @return The kernels picked by the hmm.kernels system property.
+   */
+  public static Kernels get() {
+    return DEFAULT;
+  }
+
+  /**
+   * Function that looks up an implementation by name.
+   * @param  name "scalar" or "vector".
+   * @return The kernels.
+   * @throws IllegalArgumentException If the name is unknown or the vector kernels
+   * cannot be loaded in this JVM.
+   */
+  public static Kernels forName(String name) {
+    if (name.equals("scalar")) {
+      return ScalarKernels.INSTANCE;
+    }
+    if (name.equals("vector")) {
+      Kernels vector = loadVector();
+      if (vector == null) {
+        throw new IllegalArgumentException("Vector kernels are unavailable, they need JDK 16+ "
+                                           + "and --add-modules jdk.incubator.vector");
+      }
+      return vector;
+    }
+    throw new IllegalArgumentException("Unknown kernels " + name);
+  }
+
+  /**
+   * Function that picks the kernels for a value of hmm.kernels, never throwing.
+   */
+  static Kernels select(String name) {
+    if (name.equals("auto")) {
+      Kernels vector = loadVector();
+      return vector != null ? vector : ScalarKernels.INSTANCE;
+    }
+    try {
+      return forName(name);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Warning: " + PROPERTY + "=" + name + ": " + e.getMessage()
+                         + ", using the scalar kernels");
+      return ScalarKernels.INSTANCE;
+    }
+  }
+
+  /**
+   * Loads the vector kernels reflectively, since this class is compiled for Java 10
+   * and the incubator module may be missing at runtime.
+   * @return The vector kernels, or null if they are not available.
+   */
+  private static Kernels loadVector() {
+    try {
+      return (Kernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return "scalar" or "vector".
+   */
+  public abstract String name();
+
+  /**
+   * Adds the dot product of two vectors to a running sum.
+   * @param  sum The value to add to.
+   * @param  x The first vector, read from xOffset.
+   * @param  y The second vector, read from yOffset.
+   * @param  length The number of elements.
+   * @return sum + x_0 * y_0 + ... + x_{length-1} * y_{length-1}.
+   */
+  public abstract double dot(double sum, double[] x, int xOffset, double[] y, int yOffset,
+                             int length);
+
+  /**
+   * Adds the weighted sum of the element-wise products of three vectors to a running
+   * sum, each term computed as ((weight * x_k) * y_k) * z_k.
+   * @return sum + the sum over k of weight * x_k * y_k * z_k.
+   */
+  public abstract double dot(double sum, double weight, double[] x, int xOffset, double[] y,
+                             int yOffset, double[] z, int zOffset, int length);
+
+  /**
+   * Adds a scaled vector to another, out_k += weight * x_k.
+   */
+  public abstract void axpy(double weight, double[] x, int xOffset, double[] out, int outOffset,
+                            int length);
+
+  /**
+   * Adds the weighted element-wise products of two vectors to another,
+   * out_k += (weight * x_k) * y_k.
+   */
+  public abstract void addProducts(double weight, double[] x, int xOffset, double[] y,
+                                   int yOffset, double[] out, int outOffset, int length);
+
+  /**
+   * Writes out_k = (weight * x_k * y_k * z_k) / divisor.
+   * @return The sum of the written values.
+   */
+  public abstract double scaledProducts(double weight, double[] x, int xOffset, double[] y,
+                                        int yOffset, double[] z, int zOffset, double divisor,
+                                        double[] out, int outOffset, int length);
+}
@@ -0,0 +1,281 @@
+package main.java.helpers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Viterbi decoder (delta-pass) working on log probabilities, so that it does not
+ * underflow on long sequences. Only the current delta vector is kept, together
+ * with a compact table of backpointers.
+ *
+ * An optional beam drops every state whose log delta falls more than beamWidth
+ * below the best state of the step. Dropped states are not considered as
+ * predecessors in the next step, so a step costs O(N * active) instead of O(N^2).
+ * With an infinite beam the decoder is exact.
+ */
+public class LogViterbi {
+  public final HMMModel model;
+  /**
+   * logAT[i * N + j] = log A[j][i], so the predecessors of i are contiguous. With
+   * sparse transitions it instead holds log A[j][i] for the nonzeros of column i, in
+   * the order of SparseTransitions.columnRows.
+   */
+  final double[] logAT;
+  final SparseTransitions sparse;
+  /** logBT[k * N + i] = log B[i][k], so one emission column is contiguous. */
+  final double[] logBT;
+  final double[] logPi;
+
+  public LogViterbi(HMMModel model) {
+    int numStates = model.numStates;
+    this.model = model;
+    this.sparse = model.transitions;
+    this.logAT = new double[sparse != null ? sparse.numNonZeros() : numStates * numStates];
+    this.logBT = new double[model.numSymbols * numStates];
+    this.logPi = new double[numStates];
+    for (int i = 0; i < numStates; i++) {
+      if (sparse != null) {
+        for (int idx = sparse.columnStarts[i]; idx < sparse.columnStarts[i + 1]; idx++) {
+          logAT[idx] = Math.log(model.a[sparse.columnRows[idx] * model.aStride + i]);
+        }
+      } else {
+        for (int j = 0; j < numStates; j++) {
+          logAT[i * numStates + j] = Math.log(model.a[j * model.aStride + i]);
+        }
+      }
+      for (int k = 0; k < model.numSymbols; k++) {
+        logBT[k * numStates + i] = Math.log(model.b[i * model.bStride + k]);
+      }
+      logPi[i] = Math.log(model.pi[i]);
+    }
+  }
+
+  public int[] decode(int[] emissions) {
+    return decode(emissions, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Function that estimates the most likely state sequence.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  beamWidth States more than this far below the best log delta of a step
+   * are dropped. Double.POSITIVE_INFINITY disables pruning.
+   * @return Returns an integer array with the estimation of the state sequence.
+   */
+  public int[] decode(int[] emissions, double beamWidth) {
+    return decode(emissions, beamWidth, new Workspace());
+  }
+
+  /**
+   * Function that estimates the most likely state sequence, taking the delta
+   * vectors and the backpointer table from a workspace.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  beamWidth Double.POSITIVE_INFINITY disables pruning.
+   * @param  workspace The work arrays to reuse.
+   * @return Returns an integer array with the estimation of the state sequence.
+   */
+  public int[] decode(int[] emissions, double beamWidth, Workspace workspace) {
+    int numStates = model.numStates;
+    int numEmissions = emissions.length;
+    if (numEmissions == 0) {
+      return new int[0];
+    }
+    /**
+     * The backpointers of step t (t >= 1) live at [(t - 1) * N + i].
+     */
+    Backpointers back = workspace.backpointers(numStates, numStates * (numEmissions - 1));
+    double[] delta = workspace.delta(numStates);
+    double[] nextDelta = workspace.nextDelta(numStates);
+    int[] active = workspace.active(numStates);
+    int[] nextActive = workspace.nextActive(numStates);
+
+    int numActive = initialStep(emissions[0], delta, active, beamWidth);
+    for (int step = 1; step < numEmissions; step++) {
+      numActive = step(delta, active, numActive, emissions[step], nextDelta, nextActive, back,
+                       (step - 1) * numStates, beamWidth);
+      double[] tmpDelta = delta;
+      delta = nextDelta;
+      nextDelta = tmpDelta;
+      int[] tmpActive = active;
+      active = nextActive;
+      nextActive = tmpActive;
+    }
+
+    int[] probableStates = new int[numEmissions];
+    probableStates[numEmissions - 1] = argMax(delta, active, numActive);
+    for (int step = numEmissions - 2; step >= 0; step--) {
+      probableStates[step] = back.get(step * numStates + probableStates[step + 1]);
+    }
+    return probableStates;
+  }
+
+  /**
+   * Function that estimates the most likely state sequence of a memory-mapped
+   * emission file. The N * (T - 1) backpointers go to a scratch file, which the
+   * operating system pages out as needed, and the states to an output file, so
+   * neither has to fit in the heap.
+   * @param  emissions The observed emissions.
+   * @param  beamWidth Double.POSITIVE_INFINITY disables pruning.
+   * @param  scratchDirectory Where the backpointers are spilled, null for the
+   * default temporary directory.
+   * @param  statesPath The file receiving the state sequence, as an emission file
+   * over N symbols.
+   * @return The state sequence, mapped from statesPath.
+   * @throws IllegalArgumentException If the file has more symbols than the model.
+   */
+  public EmissionFile decode(EmissionFile emissions, double beamWidth, Path scratchDirectory,
+                             Path statesPath) throws IOException {
+    emissions.checkSymbols(model);
+    int numStates = model.numStates;
+    long numEmissions = emissions.length();
+    EmissionFile probableStates = EmissionFile.create(statesPath, numStates, numEmissions);
+    if (numEmissions == 0) {
+      return probableStates;
+    }
+    EmissionFile back = EmissionFile.createScratch(scratchDirectory, numStates,
+                                                   numStates * (numEmissions - 1));
+    /**
+     * Every step fills one row of backpointers on the heap, which is then copied to
+     * the scratch file at [(t - 1) * N + i].
+     */
+    Backpointers row = new Backpointers(numStates, numStates);
+    double[] delta = new double[numStates];
+    double[] nextDelta = new double[numStates];
+    int[] active = new int[numStates];
+    int[] nextActive = new int[numStates];
+
+    int numActive = initialStep(emissions.get(0), delta, active, beamWidth);
+    for (long step = 1; step < numEmissions; step++) {
+      numActive = step(delta, active, numActive, emissions.get(step), nextDelta, nextActive,
+                       row, 0, beamWidth);
+      long backOffset = (step - 1) * numStates;
+      for (int i = 0; i < numStates; i++) {
+        back.set(backOffset + i, row.get(i));
+      }
+      double[] tmpDelta = delta;
+      delta = nextDelta;
+      nextDelta = tmpDelta;
+      int[] tmpActive = active;
+      active = nextActive;
+      nextActive = tmpActive;
+    }
+
+    int state = argMax(delta, active, numActive);
+    probableStates.set(numEmissions - 1, state);
+    for (long step = numEmissions - 2; step >= 0; step--) {
+      state = back.get(step * numStates + state);
+      probableStates.set(step, state);
+    }
+    return probableStates;
+  }
+
+  /**
+   * Fills the log delta of the first step and the list of surviving states.
+   * @return The number of surviving states.
+   */
+  int initialStep(int emission, double[] out, int[] outActive, double beamWidth) {
+    int numStates = model.numStates;
+    int column = emission * numStates;
+    for (int i = 0; i < numStates; i++) {
+      out[i] = logPi[i] + logBT[column + i];
+    }
+    return prune(out, outActive, beamWidth);
+  }
+
+  /**
+   * One step of the delta-pass. For every state i, finds the surviving predecessor
+   * j maximizing delta(j) + log A[j][i]. Ties go to the highest j, as in the
+   * original deltaPass.
+   * @return The number of surviving states after pruning.
+   */
+  int step(double[] prev, int[] active, int numActive, int emission, double[] out,
+           int[] outActive, Backpointers back, int backOffset, double beamWidth) {
+    int numStates = model.numStates;
+    int column = emission * numStates;
+    if (sparse != null) {
+      return sparseStep(prev, active, numActive, column, out, outActive, back, backOffset,
+                        beamWidth);
+    }
+    for (int i = 0; i < numStates; i++) {
+      int row = i * numStates;
+      double maxProb = Double.NEGATIVE_INFINITY;
+      int argMax = active[0];
+      for (int idx = 0; idx < numActive; idx++) {
+        int j = active[idx];
+        double currProb = prev[j] + logAT[row + j];
+        if (currProb >= maxProb) {
+          maxProb = currProb;
+          argMax = j;
+        }
+      }
+      out[i] = maxProb + logBT[column + i];
+      back.set(backOffset + i, argMax);
+    }
+    return prune(out, outActive, beamWidth);
+  }
+
+  /**
+   * step over the nonzeros of each column of A. Pruned states have a log delta of
+   * minus infinity, so they never win unless every predecessor is impossible. In
+   * that case the last surviving state is picked, as the dense step does.
+   */
+  private int sparseStep(double[] prev, int[] active, int numActive, int column, double[] out,
+                         int[] outActive, Backpointers back, int backOffset, double beamWidth) {
+    int numStates = model.numStates;
+    for (int i = 0; i < numStates; i++) {
+      double maxProb = Double.NEGATIVE_INFINITY;
+      int argMax = active[numActive - 1];
+      for (int idx = sparse.columnStarts[i]; idx < sparse.columnStarts[i + 1]; idx++) {
+        double currProb = prev[sparse.columnRows[idx]] + logAT[idx];
+        if (currProb >= maxProb && currProb > Double.NEGATIVE_INFINITY) {
+          maxProb = currProb;
+          argMax = sparse.columnRows[idx];
+        }
+      }
+      out[i] = maxProb + logBT[column + i];
+      back.set(backOffset + i, argMax);
+    }
+    return prune(out, outActive, beamWidth);
+  }
+
+  /**
+   * Collects, in ascending order, the states within beamWidth of the best one and
+   * sets the others to minus infinity. If every state is impossible they are all
+   * kept, so the decoder still returns a path.
+   */
+  private int prune(double[] delta, int[] outActive, double beamWidth) {
+    int numStates = model.numStates;
+    double best = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < numStates; i++) {
+      best = Math.max(best, delta[i]);
+    }
+    int numActive = 0;
+    if (best == Double.NEGATIVE_INFINITY) {
+      for (int i = 0; i < numStates; i++) {
+        outActive[numActive++] = i;
+      }
+      return numActive;
+    }
+    double threshold = best - beamWidth;
+    for (int i = 0; i < numStates; i++) {
+      if (delta[i] >= threshold && delta[i] > Double.NEGATIVE_INFINITY) {
+        outActive[numActive++] = i;
+      } else {
+        delta[i] = Double.NEGATIVE_INFINITY;
+      }
+    }
+    return numActive;
+  }
+
+  /**
+   * @return The surviving state with the highest log delta, the first one on ties.
+   */
+  int argMax(double[] delta, int[] active, int numActive) {
+    int argMax = active[0];
+    for (int idx = 1; idx < numActive; idx++) {
+      if (delta[active[idx]] > delta[argMax]) {
+        argMax = active[idx];
+      }
+    }
+    return argMax;
+  }
+}
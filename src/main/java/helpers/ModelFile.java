@@ -0,0 +1,136 @@
+package main.java.helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Versioned binary file holding a model and its training metadata. Values are
+ * stored as raw little-endian IEEE doubles, so they survive a round trip bit for
+ * bit. Loading is a read-only memory map without any parsing: processes that load
+ * the same file share its pages through the page cache.
+ *
+ * Layout (32 byte header, then the matrices in row-major order):
+ *   int magic "HMMB", int version, int N, int M, int iterations, int reserved,
+ *   double logProb, double[N*N] A, double[N*M] B, double[N] pi
+ */
+public class ModelFile {
+  public static final int MAGIC = 0x484D4D42;
+  public static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+
+  public final int numStates;
+  public final int numSymbols;
+  public final int iterations;
+  /**
+   * Natural logarithm probability of the training data under the stored
+   * parameters, NaN if the model was not trained.
+   */
+  public final double logProb;
+  private final DoubleBuffer values;
+
+  private ModelFile(int numStates, int numSymbols, int iterations, double logProb,
+                    DoubleBuffer values) {
+    this.numStates = numStates;
+    this.numSymbols = numSymbols;
+    this.iterations = iterations;
+    this.logProb = logProb;
+    this.values = values;
+  }
+
+  /**
+   * Function that writes a model to a binary model file, replacing any existing file.
+   * @param path The file to write.
+   * @param model The model to store.
+   * @param result The training metadata, or null if the model was not trained. Its
+   * logProb is stored as the log probability of the given parameters, so it must be
+   * computed for them: the one returned by HMM3.trainModel belongs to the model
+   * before the last re-estimation.
+   */
+  public static void write(Path path, HMMModel model, TrainingResult result) throws IOException {
+    int numValues = model.a.length + model.b.length + model.pi.length;
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 8 * numValues)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(model.numStates).putInt(model.numSymbols);
+    buffer.putInt(result != null ? result.iterations : 0).putInt(0);
+    buffer.putDouble(result != null ? result.logProb : Double.NaN);
+    DoubleBuffer doubles = buffer.asDoubleBuffer();
+    doubles.put(model.a).put(model.b).put(model.pi);
+    buffer.position(0);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Function that maps a binary model file read-only and checks its header.
+   * @param  path The file to map.
+   * @return The mapped model file.
+   */
+  public static ModelFile map(Path path) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException(path + " is not a binary model file");
+    }
+    int version = buffer.getInt(4);
+    if (version != VERSION) {
+      throw new IOException(path + " has unsupported model file version " + version);
+    }
+    int numStates = buffer.getInt(8);
+    int numSymbols = buffer.getInt(12);
+    long numValues = (long) numStates * numStates + (long) numStates * numSymbols + numStates;
+    if (numStates <= 0 || numSymbols <= 0 || buffer.limit() != HEADER_SIZE + 8 * numValues) {
+      throw new IOException(path + " has a corrupt model file header");
+    }
+    buffer.position(HEADER_SIZE);
+    DoubleBuffer values = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    return new ModelFile(numStates, numSymbols, buffer.getInt(16), buffer.getDouble(24), values);
+  }
+
+  /**
+   * @return Read-only view of A in row-major order, backed by the mapped file.
+   */
+  public DoubleBuffer a() {
+    return view(0, numStates * numStates);
+  }
+
+  public DoubleBuffer b() {
+    return view(numStates * numStates, numStates * numSymbols);
+  }
+
+  public DoubleBuffer pi() {
+    return view(numStates * numStates + numStates * numSymbols, numStates);
+  }
+
+  /**
+   * Copies the mapped values into an HMMModel for the primitive passes. The copy is
+   * a bulk transfer from the mapping, nothing is parsed.
+   * @return A new model, with the transition representation chosen by the density of A.
+   */
+  public HMMModel toModel() {
+    HMMModel model = new HMMModel(numStates, numSymbols);
+    a().get(model.a);
+    b().get(model.b);
+    pi().get(model.pi);
+    model.chooseTransitions();
+    return model;
+  }
+
+  private DoubleBuffer view(int offset, int length) {
+    DoubleBuffer view = values.duplicate();
+    view.position(offset).limit(offset + length);
+    return view.slice().asReadOnlyBuffer();
+  }
+}
@@ -0,0 +1,279 @@
+package main.java.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Named models kept resident between requests, and the requests on them. A request
+ * is one line, "command name arguments", with the arguments in the Kattis formats
+ * (a matrix is "rows cols values", a sequence "length values"):
+ *
+ *   model name A B pi        define or replace a model from three matrices
+ *   load name path           define or replace a model from a binary model file
+ *   save name path           write a model to a binary model file
+ *   drop name                forget a model
+ *   list                     the names of all models
+ *   stats                    hits, misses, evictions, sessions and bytes of the
+ *                            scoring cache
+ *   next name [sequence]     distribution of the next emission, after the sequence
+ *   score name sequence      natural logarithm probability of the sequence
+ *   decode name sequence     most likely state sequence
+ *   train name sequence [maxIters]   Baum-Welch from the current model
+ *
+ * The answer is one line: "ok" followed by the result, or "error" and a message.
+ *
+ * handle may be called from any number of threads. Models are never modified once
+ * registered: train works on a copy and replaces the model when done, so requests
+ * already running keep using the old one. The work arrays of the passes come from
+ * a pool of workspaces, so concurrent requests do not share them and consecutive
+ * ones do not allocate them again.
+ *
+ * score and next keep the forward pass state after each sequence in a ScoringCache,
+ * so a sequence that extends one scored before only costs the appended emissions.
+ */
+public class ModelService {
+  /**
+   * A registered model, with its log-space decoder built on first use.
+   */
+  private static final class Entry {
+    final HMMModel model;
+    private volatile LogViterbi decoder;
+
+    Entry(HMMModel model) {
+      this.model = model;
+    }
+
+    LogViterbi decoder() {
+      LogViterbi current = decoder;
+      if (current == null) {
+        current = new LogViterbi(model);
+        decoder = current;
+      }
+      return current;
+    }
+  }
+
+  private static final long DEFAULT_CACHE_BYTES = 64L << 20;
+
+  private final ConcurrentHashMap<String, Entry> models = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedQueue<Workspace> workspaces = new ConcurrentLinkedQueue<>();
+  private final ScoringCache sessions;
+
+  public ModelService() {
+    this(DEFAULT_CACHE_BYTES);
+  }
+
+  /**
+   * @param cacheBytes The memory the cached scoring sessions may take up.
+   */
+  public ModelService(long cacheBytes) {
+    this.sessions = new ScoringCache(cacheBytes);
+  }
+
+  /**
+   * Registers a model under a name, replacing any model of that name.
+   */
+  public void put(String name, HMMModel model) {
+    Entry previous = models.put(name, new Entry(model));
+    if (previous != null) {
+      sessions.invalidate(previous.model);
+    }
+  }
+
+  /**
+   * @return The model registered under the name, null if there is none.
+   */
+  public HMMModel get(String name) {
+    Entry entry = models.get(name);
+    return entry != null ? entry.model : null;
+  }
+
+  /**
+   * @return true for the requests that define, replace or remove a model.
+   */
+  public static boolean modifiesModels(String request) {
+    String command = request.trim().split("\\s+", 2)[0];
+    return command.equals("model") || command.equals("load") || command.equals("drop")
+           || command.equals("train");
+  }
+
+  /**
+   * Function that answers one request.
+   * @param  request The request line.
+   * @return The answer line, without line break.
+   */
+  public String handle(String request) {
+    Workspace workspace = workspaces.poll();
+    if (workspace == null) {
+      workspace = new Workspace();
+    }
+    try {
+      return "ok" + execute(request.trim(), workspace);
+    } catch (IOException | RuntimeException e) {
+      String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+      return "error " + message.replace('\n', ' ');
+    } finally {
+      workspaces.offer(workspace);
+    }
+  }
+
+  /**
+   * @return The result, starting with a space unless it is empty.
+   */
+  private String execute(String request, Workspace workspace) throws IOException {
+    String[] parts = request.split("\\s+", 3);
+    String command = parts[0];
+    if (command.equals("list")) {
+      List<String> names = new ArrayList<>(models.keySet());
+      Collections.sort(names);
+      StringBuilder result = new StringBuilder();
+      for (String name : names) {
+        result.append(' ').append(name);
+      }
+      return result.toString();
+    }
+    if (command.equals("stats")) {
+      return " " + sessions.hits() + " " + sessions.misses() + " " + sessions.evictions()
+             + " " + sessions.size() + " " + sessions.usedBytes();
+    }
+    if (parts.length < 2) {
+      throw new IllegalArgumentException("Missing model name in \"" + request + "\"");
+    }
+    String name = parts[1];
+    String arguments = parts.length > 2 ? parts[2] : "";
+    KattisReader reader = new KattisReader(
+        new ByteArrayInputStream(arguments.getBytes(StandardCharsets.US_ASCII)));
+
+    switch (command) {
+      case "model": {
+        HMMModel model = reader.readModel();
+        put(name, model);
+        return " " + model.numStates + " " + model.numSymbols;
+      }
+      case "load": {
+        HMMModel model = ModelFile.map(Paths.get(arguments.trim())).toModel();
+        put(name, model);
+        return " " + model.numStates + " " + model.numSymbols;
+      }
+      case "save":
+        ModelFile.write(Paths.get(arguments.trim()), entry(name).model, null);
+        return "";
+      case "drop": {
+        Entry entry = models.remove(name);
+        if (entry == null) {
+          throw new IllegalArgumentException("Unknown model " + name);
+        }
+        sessions.invalidate(entry.model);
+        return "";
+      }
+      case "next": {
+        HMMModel model = entry(name).model;
+        double[] state = model.pi;
+        if (reader.hasNext()) {
+          int[] emissions = checked(model, reader.readArray());
+          if (emissions.length > 0) {
+            state = sessions.session(model, emissions).alpha();
+          }
+        }
+        return formatMatrix(nextEmissionDistribution(model, state), 1, model.numSymbols);
+      }
+      case "score": {
+        HMMModel model = entry(name).model;
+        return " " + sessions.session(model, checked(model, reader.readArray())).logLikelihood();
+      }
+      case "decode": {
+        Entry entry = entry(name);
+        int[] states = entry.decoder().decode(checked(entry.model, reader.readArray()),
+                                              Double.POSITIVE_INFINITY, workspace);
+        StringBuilder result = new StringBuilder();
+        for (int state : states) {
+          result.append(' ').append(state);
+        }
+        return result.toString();
+      }
+      case "train": {
+        HMMModel model = entry(name).model.copy();
+        int[] emissions = checked(model, reader.readArray());
+        if (emissions.length == 0) {
+          throw new IllegalArgumentException("Cannot train on an empty sequence");
+        }
+        TrainingOptions options = new TrainingOptions();
+        if (reader.hasNext()) {
+          options.maxIters = reader.readInt();
+        }
+        TrainingResult result = EMIterations.run(model, current -> {
+          SufficientStatistics stats = ForwardBackward.expectation(current, emissions,
+                                                                   workspace);
+          stats.reEstimate(current);
+          return stats.logProb;
+        }, options);
+        put(name, model);
+        return " " + result.logProb + " " + result.iterations;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown command " + command);
+    }
+  }
+
+  private Entry entry(String name) {
+    Entry entry = models.get(name);
+    if (entry == null) {
+      throw new IllegalArgumentException("Unknown model " + name);
+    }
+    return entry;
+  }
+
+  /**
+   * Rejects emissions outside of [0, M), which would otherwise read the wrong row
+   * of B instead of failing.
+   */
+  private static int[] checked(HMMModel model, int[] emissions) {
+    for (int emission : emissions) {
+      if (emission < 0 || emission >= model.numSymbols) {
+        throw new IllegalArgumentException("Emission " + emission + " outside of [0, "
+                                           + model.numSymbols + ")");
+      }
+    }
+    return emissions;
+  }
+
+  /**
+   * @param  state The filtered state distribution after the emissions so far, pi if
+   * there are none.
+   * @return The distribution of the next emission, state * A * B.
+   */
+  static double[] nextEmissionDistribution(HMMModel model, double[] state) {
+    int numStates = model.numStates;
+    double[] next = new double[numStates];
+    for (int j = 0; j < numStates; j++) {
+      int aRow = j * model.aStride;
+      for (int i = 0; i < numStates; i++) {
+        next[i] += state[j] * model.a[aRow + i];
+      }
+    }
+    double[] distribution = new double[model.numSymbols];
+    for (int i = 0; i < numStates; i++) {
+      int bRow = i * model.bStride;
+      for (int k = 0; k < model.numSymbols; k++) {
+        distribution[k] += next[i] * model.b[bRow + k];
+      }
+    }
+    return distribution;
+  }
+
+  private static String formatMatrix(double[] mat, int numRows, int numCols) {
+    StringBuilder result = new StringBuilder();
+    result.append(' ').append(numRows).append(' ').append(numCols);
+    for (int idx = 0; idx < numRows * numCols; idx++) {
+      result.append(' ').append(mat[idx]);
+    }
+    return result.toString();
+  }
+}
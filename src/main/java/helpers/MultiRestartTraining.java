@@ -0,0 +1,148 @@
+package main.java.helpers;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Baum-Welch from several randomized starting guesses at once. All restarts advance
+ * in rounds of one iteration each, the iterations of a round running in parallel.
+ * After every round the restarts are compared at the same iteration count, and
+ * those whose log probability trails the best one by more than a margin are
+ * abandoned, so most of the compute goes to the promising ones.
+ *
+ * Restart 0 trains the given model as it is; with a single restart the result is
+ * the same as HMM3.trainModel with the fused or checkpointed expectation step.
+ */
+public class MultiRestartTraining {
+  /**
+   * Largest relative change of a parameter when perturbing the starting guess,
+   * every nonzero is multiplied by a factor in [1 - NOISE, 1 + NOISE].
+   */
+  private static final double NOISE = 0.5;
+
+  /**
+   * State of one restart.
+   */
+  private static class Run {
+    final HMMModel model;
+    double logProb = (-1) * Double.MAX_VALUE;
+    int iterations;
+    boolean converged;
+    boolean abandoned;
+
+    Run(HMMModel model) {
+      this.model = model;
+    }
+
+    boolean running() {
+      return !converged && !abandoned;
+    }
+  }
+
+  /**
+   * Function that trains options.restarts starting guesses and keeps the best.
+   * @param  model The starting guess of restart 0, the others perturb it. Receives
+   * the best trained model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  options Iteration limit, expectation step, pool and the restart settings.
+   * @return The log probability and iteration count of the best restart.
+   */
+  public static TrainingResult train(HMMModel model, int[] emissions, TrainingOptions options) {
+    ForkJoinPool pool = options.pool != null ? options.pool : ForkJoinPool.commonPool();
+    int numRuns = Math.max(1, options.restarts);
+    Run[] runs = new Run[numRuns];
+    for (int run = 0; run < numRuns; run++) {
+      HMMModel start = model.copy();
+      if (run > 0) {
+        perturb(start, new Random(options.seed + run));
+      }
+      runs[run] = new Run(start);
+    }
+    int[] running = new int[numRuns];
+
+    long deadline = options.deadline();
+    for (int iter = 0; iter < options.maxIters && System.nanoTime() < deadline; iter++) {
+      int numRunning = 0;
+      for (int run = 0; run < numRuns; run++) {
+        if (runs[run].running()) {
+          running[numRunning++] = run;
+        }
+      }
+      if (numRunning == 0) {
+        break;
+      }
+      ParallelRanges.runAll(pool, numRunning, idx -> iterate(runs[running[idx]], emissions,
+                                                                options));
+      if (iter + 1 >= options.abandonAfter) {
+        abandonTrailing(runs, emissions.length, options.abandonMargin);
+      }
+    }
+
+    Run best = runs[0];
+    for (Run run : runs) {
+      if (!run.abandoned && run.logProb > best.logProb) {
+        best = run;
+      }
+    }
+    model.copyFrom(best.model);
+    return new TrainingResult(best.logProb, best.iterations, best.converged);
+  }
+
+  /**
+   * One expectation and re-estimation iteration, with the same convergence test as
+   * HMM3.trainModel.
+   */
+  private static void iterate(Run run, int[] emissions, TrainingOptions options) {
+    run.iterations++;
+    SufficientStatistics stats = ForwardBackward.expectation(run.model, emissions, options);
+    stats.reEstimate(run.model);
+    run.converged = options.converged(run.logProb, stats.logProb);
+    run.logProb = Math.max(run.logProb, stats.logProb);
+  }
+
+  /**
+   * Abandons the running restarts more than margin nats per emission below the best
+   * log probability of any restart that was not abandoned.
+   */
+  private static void abandonTrailing(Run[] runs, int numEmissions, double margin) {
+    double leader = (-1) * Double.MAX_VALUE;
+    for (Run run : runs) {
+      if (!run.abandoned) {
+        leader = Math.max(leader, run.logProb);
+      }
+    }
+    double threshold = leader - margin * numEmissions;
+    for (Run run : runs) {
+      if (run.running() && run.logProb < threshold) {
+        run.abandoned = true;
+      }
+    }
+  }
+
+  /**
+   * Multiplies every nonzero of A, B and pi by a random factor and renormalizes, so
+   * structural zeros (and with them the sparse transition pattern) are kept.
+   */
+  static void perturb(HMMModel model, Random random) {
+    int numStates = model.numStates;
+    for (int i = 0; i < numStates; i++) {
+      perturbDistribution(model.a, i * model.aStride, numStates, random);
+      perturbDistribution(model.b, i * model.bStride, model.numSymbols, random);
+    }
+    perturbDistribution(model.pi, 0, numStates, random);
+  }
+
+  private static void perturbDistribution(double[] values, int offset, int length,
+                                          Random random) {
+    double sum = 0.0;
+    for (int idx = 0; idx < length; idx++) {
+      values[offset + idx] *= 1.0 + NOISE * (2.0 * random.nextDouble() - 1.0);
+      sum += values[offset + idx];
+    }
+    if (sum > 0.0) {
+      for (int idx = 0; idx < length; idx++) {
+        values[offset + idx] /= sum;
+      }
+    }
+  }
+}
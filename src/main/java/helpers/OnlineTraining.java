@@ -0,0 +1,206 @@
+package main.java.helpers;
+
+/**
+ * Stepwise (online) EM for emissions that keep arriving, after Cappe and Moulines
+ * (2009) and Liang and Klein (2009). Every mini-batch runs an expectation step
+ * with the current model, and its expected counts, normalized per transition and
+ * per emission, are blended into running statistics:
+ *
+ *   s = (1 - eta_k) * s + eta_k * s_batch,  eta_k = (k + stepOffset)^-stepDecay,
+ *
+ * after which A, B and pi are re-estimated from s in place.
+ *
+ * A batch of n emissions counts as round(n / stepLength) steps k of the schedule,
+ * at least one. It is blended in with the weight those steps would have had
+ * between them, 1 - prod (1 - eta_k), and swept once per step, at most maxIters
+ * times: every sweep runs the expectation step again with the model re-estimated
+ * by the previous one, and blends it into the statistics from before the batch.
+ * A single step would leave a large batch with the weight of stepLength emissions
+ * and one expectation step, far behind batch EM. An update costs time proportional
+ * to its batch times its sweeps; earlier emissions are never revisited.
+ *
+ * Batches continue one emission sequence: a batch starts from the state
+ * distribution the previous one ended in, carried one step through A, rather than
+ * from pi. Only the transition across the batch boundary is not counted. Call
+ * endSequence before a batch that starts a new, independent sequence; only such
+ * batches update pi.
+ *
+ * The running statistics start out as the model itself, with one transition and
+ * one emission's worth of weight spread evenly over the states, so the first
+ * batches adjust the starting guess rather than replace it. Structural zeros of
+ * the model stay zero.
+ *
+ * update, endSequence and snapshot are synchronized, so batches can be fed from an
+ * ingestion thread while other threads take snapshots to score with. The model
+ * itself is updated in place and must not be read concurrently.
+ */
+public class OnlineTraining {
+  private final HMMModel model;
+  private final TrainingOptions options;
+  private final TrainingMonitor monitor;
+  private final SufficientStatistics running;
+  /** The running statistics before the current batch, restored before every sweep. */
+  private final SufficientStatistics previous;
+  /** The starting distribution of the next batch, pi at the start of a sequence. */
+  private final double[] start;
+  private boolean continuing;
+  private int updates;
+  /** The steps of the schedule taken so far, batchSteps per batch. */
+  private long steps;
+
+  /**
+   * @param model The starting guess, updated in place by every batch.
+   * @param options The step size schedule, the expectation step and the listener.
+   */
+  public OnlineTraining(HMMModel model, TrainingOptions options) {
+    this.model = model;
+    this.options = options;
+    this.monitor = new TrainingMonitor(options.listener);
+    int numStates = model.numStates;
+    int numSymbols = model.numSymbols;
+    this.running = new SufficientStatistics(numStates, numSymbols);
+    for (int i = 0; i < numStates; i++) {
+      running.initialGamma[i] = model.pi[i];
+      running.transitionTotals[i] = 1.0 / numStates;
+      running.gammaTotals[i] = 1.0 / numStates;
+      for (int j = 0; j < numStates; j++) {
+        running.transitionCounts[i * numStates + j] = model.a[i * model.aStride + j] / numStates;
+      }
+      for (int k = 0; k < numSymbols; k++) {
+        running.emissionCounts[i * numSymbols + k] = model.b[i * model.bStride + k] / numStates;
+      }
+    }
+    running.numSequences = 1;
+    this.previous = new SufficientStatistics(numStates, numSymbols);
+    this.start = new double[numStates];
+  }
+
+  /**
+   * Function that trains the model on the next mini-batch.
+   * @param  batch The emissions that arrived since the previous batch.
+   * @return The log probability of the batch given the emissions before it, under
+   * the model before the update. 0 for an empty batch, which changes nothing.
+   */
+  public synchronized double update(int[] batch) {
+    if (batch.length == 0) {
+      return 0.0;
+    }
+    int numStates = model.numStates;
+    if (!continuing) {
+      System.arraycopy(model.pi, 0, start, 0, numStates);
+    }
+    /**
+     * The expectation step sees the model with the starting distribution in place
+     * of pi, sharing A and B.
+     */
+    HMMModel batchModel = new HMMModel(numStates, model.numSymbols, model.a, model.b, start);
+    batchModel.transitions = model.transitions;
+
+    /**
+     * The batch takes the weight its steps of the schedule would have had between
+     * them, and one sweep per step.
+     */
+    int batchSteps = Math.max(1, (int) Math.round((double) batch.length / options.stepLength));
+    double keep = 1.0;
+    for (int step = 0; step < batchSteps; step++) {
+      double stepSize = Math.pow(steps + step + options.stepOffset, -options.stepDecay);
+      keep *= 1.0 - Math.min(1.0, stepSize);
+    }
+    steps += batchSteps;
+    double eta = 1.0 - keep;
+    int sweeps = Math.max(1, Math.min(batchSteps, options.maxIters));
+    copy(running, previous);
+    SufficientStatistics stats = null;
+    double logProb = 0.0;
+    for (int sweep = 0; sweep < sweeps; sweep++) {
+      monitor.start(model);
+      stats = ForwardBackward.expectation(batchModel, batch, options);
+      monitor.expectationDone(stats);
+      if (sweep == 0) {
+        logProb = stats.logProb;
+      }
+      copy(previous, running);
+      if (!continuing) {
+        blend(running.initialGamma, stats.initialGamma, eta, 1.0);
+      }
+      if (batch.length > 1) {
+        double perTransition = 1.0 / (batch.length - 1);
+        blend(running.transitionCounts, stats.transitionCounts, eta, perTransition);
+        blend(running.transitionTotals, stats.transitionTotals, eta, perTransition);
+      }
+      double perEmission = 1.0 / batch.length;
+      blend(running.emissionCounts, stats.emissionCounts, eta, perEmission);
+      blend(running.gammaTotals, stats.gammaTotals, eta, perEmission);
+      running.reEstimate(model);
+      monitor.end(model, stats.logProb);
+      if (!continuing) {
+        System.arraycopy(model.pi, 0, start, 0, numStates);
+      }
+    }
+    updates++;
+
+    /**
+     * The next batch starts one step after the last emission of this one.
+     */
+    predictNext(stats.finalGamma);
+    continuing = true;
+    return logProb;
+  }
+
+  /**
+   * Makes the next batch the start of a new, independent sequence.
+   */
+  public synchronized void endSequence() {
+    continuing = false;
+  }
+
+  /**
+   * @return A copy of the model as of the last completed update.
+   */
+  public synchronized HMMModel snapshot() {
+    return model.copy();
+  }
+
+  /**
+   * @return The number of non-empty batches trained on.
+   */
+  public synchronized int updates() {
+    return updates;
+  }
+
+  private static void copy(SufficientStatistics from, SufficientStatistics to) {
+    System.arraycopy(from.initialGamma, 0, to.initialGamma, 0, from.initialGamma.length);
+    System.arraycopy(from.transitionCounts, 0, to.transitionCounts, 0,
+                     from.transitionCounts.length);
+    System.arraycopy(from.transitionTotals, 0, to.transitionTotals, 0,
+                     from.transitionTotals.length);
+    System.arraycopy(from.emissionCounts, 0, to.emissionCounts, 0, from.emissionCounts.length);
+    System.arraycopy(from.gammaTotals, 0, to.gammaTotals, 0, from.gammaTotals.length);
+  }
+
+  private static void blend(double[] running, double[] batch, double eta, double scale) {
+    for (int idx = 0; idx < running.length; idx++) {
+      running[idx] = (1 - eta) * running[idx] + eta * scale * batch[idx];
+    }
+  }
+
+  /**
+   * Writes start = filtered * A, the state distribution one step later.
+   */
+  private void predictNext(double[] filtered) {
+    int numStates = model.numStates;
+    if (model.transitions != null) {
+      model.transitions.forward(model.a, filtered, 0, start, 0);
+      return;
+    }
+    for (int i = 0; i < numStates; i++) {
+      start[i] = 0.0;
+    }
+    for (int j = 0; j < numStates; j++) {
+      int aRow = j * model.aStride;
+      for (int i = 0; i < numStates; i++) {
+        start[i] += model.a[aRow + i] * filtered[j];
+      }
+    }
+  }
+}
@@ -0,0 +1,225 @@
+package main.java.helpers;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Viterbi decoder for unbounded emission streams. Emissions are pushed one at a
+ * time and a state is committed as soon as it can no longer change, i.e. when the
+ * best paths into all surviving states coalesce before it. Optionally, a maximum
+ * lag forces commitment of the best current path once more than maxLag steps are
+ * pending. Forced states are final even if later evidence would have changed them.
+ *
+ * Only the backpointers of the pending steps are stored, in a ring buffer, so memory
+ * and latency stay bounded by the lag (or by how fast the paths coalesce).
+ */
+public class OnlineViterbi {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final LogViterbi viterbi;
+  private final int numStates;
+  private final int maxLag;
+  private final double beamWidth;
+
+  private double[] delta;
+  private double[] nextDelta;
+  private int[] active;
+  private int[] nextActive;
+  private int numActive;
+
+  /** Backpointer rows of steps committed + 1 ... numSteps - 1, row of step s at s % capacity. */
+  private Backpointers back;
+  private int capacity;
+  private long numSteps;
+  private long numCommitted;
+
+  /** Scratch arrays for the coalescence check and tracebacks. */
+  private final int[] traceStates;
+  private final int[] stamp;
+  private int stampValue;
+  private int[] pathBuffer;
+
+  /**
+   * @param model The HMM model.
+   * @param maxLag Maximum number of pending steps, 0 to only commit on coalescence.
+   * @param beamWidth Beam in natural log units, Double.POSITIVE_INFINITY for none.
+   */
+  public OnlineViterbi(HMMModel model, int maxLag, double beamWidth) {
+    this.viterbi = new LogViterbi(model);
+    this.numStates = model.numStates;
+    this.maxLag = maxLag;
+    this.beamWidth = beamWidth;
+    this.delta = new double[numStates];
+    this.nextDelta = new double[numStates];
+    this.active = new int[numStates];
+    this.nextActive = new int[numStates];
+    this.capacity = maxLag > 0 ? maxLag + 1 : INITIAL_CAPACITY;
+    this.back = new Backpointers(numStates, capacity * numStates);
+    this.traceStates = new int[numStates];
+    this.stamp = new int[numStates];
+    this.pathBuffer = new int[capacity];
+  }
+
+  /**
+   * Function that consumes the next emission.
+   * @param emission The next observed emission.
+   * @param committed Receives the newly committed states, oldest first.
+   * @return The number of states committed by this call.
+   */
+  public int push(int emission, IntConsumer committed) {
+    if (numSteps == 0) {
+      numActive = viterbi.initialStep(emission, delta, active, beamWidth);
+    } else {
+      if (numSteps - numCommitted >= capacity) {
+        grow();
+      }
+      int row = (int) (numSteps % capacity) * numStates;
+      numActive = viterbi.step(delta, active, numActive, emission, nextDelta, nextActive, back,
+                               row, beamWidth);
+      double[] tmpDelta = delta;
+      delta = nextDelta;
+      nextDelta = tmpDelta;
+      int[] tmpActive = active;
+      active = nextActive;
+      nextActive = tmpActive;
+    }
+    numSteps++;
+    normalize();
+
+    int count = commitCoalesced(committed);
+    if (maxLag > 0 && numSteps - numCommitted > maxLag) {
+      count += commitBest(numSteps - maxLag, committed);
+    }
+    return count;
+  }
+
+  /**
+   * Function that ends the stream by committing every pending state along the best
+   * path into the last step.
+   * @param committed Receives the newly committed states, oldest first.
+   * @return The number of states committed by this call.
+   */
+  public int flush(IntConsumer committed) {
+    if (numSteps == numCommitted) {
+      return 0;
+    }
+    return commitBest(numSteps, committed);
+  }
+
+  public long numSteps() {
+    return numSteps;
+  }
+
+  public long numCommitted() {
+    return numCommitted;
+  }
+
+  /**
+   * Subtracts the best log delta from all of them. Does not change any decision
+   * but keeps the values near zero, so they do not lose precision on long streams.
+   */
+  private void normalize() {
+    double best = delta[viterbi.argMax(delta, active, numActive)];
+    if (best == Double.NEGATIVE_INFINITY) {
+      return;
+    }
+    for (int i = 0; i < numStates; i++) {
+      delta[i] -= best;
+    }
+  }
+
+  /**
+   * Follows the backpointers of all surviving states at the same time. Once they
+   * all lead to a single state, that state and everything before it is final.
+   */
+  private int commitCoalesced(IntConsumer committed) {
+    int numTrace = 0;
+    for (int idx = 0; idx < numActive; idx++) {
+      traceStates[numTrace++] = active[idx];
+    }
+    long step = numSteps - 1;
+    while (numTrace > 1 && step > numCommitted) {
+      int row = (int) (step % capacity) * numStates;
+      nextStamp();
+      int numNext = 0;
+      for (int idx = 0; idx < numTrace; idx++) {
+        int prev = back.get(row + traceStates[idx]);
+        if (stamp[prev] != stampValue) {
+          stamp[prev] = stampValue;
+          traceStates[numNext++] = prev;
+        }
+      }
+      numTrace = numNext;
+      step--;
+    }
+    if (numTrace != 1) {
+      return 0;
+    }
+    return commitPath(step, traceStates[0], step + 1, committed);
+  }
+
+  private void nextStamp() {
+    if (stampValue == Integer.MAX_VALUE) {
+      Arrays.fill(stamp, 0);
+      stampValue = 0;
+    }
+    stampValue++;
+  }
+
+  /**
+   * Commits steps up to (excluding) end along the best path into the last step.
+   */
+  private int commitBest(long end, IntConsumer committed) {
+    long step = numSteps - 1;
+    int state = viterbi.argMax(delta, active, numActive);
+    while (step >= end) {
+      state = back.get((int) (step % capacity) * numStates + state);
+      step--;
+    }
+    return commitPath(step, state, end, committed);
+  }
+
+  /**
+   * Given the state at step last, traces back to the first pending step and hands
+   * the states of steps numCommitted ... end - 1 to the consumer.
+   */
+  private int commitPath(long last, int state, long end, IntConsumer committed) {
+    int count = (int) (end - numCommitted);
+    if (count <= 0) {
+      return 0;
+    }
+    if (pathBuffer.length < count) {
+      pathBuffer = new int[Math.max(count, 2 * pathBuffer.length)];
+    }
+    for (long step = last; step >= numCommitted; step--) {
+      if (step < end) {
+        pathBuffer[(int) (step - numCommitted)] = state;
+      }
+      if (step > numCommitted) {
+        state = back.get((int) (step % capacity) * numStates + state);
+      }
+    }
+    for (int idx = 0; idx < count; idx++) {
+      committed.accept(pathBuffer[idx]);
+    }
+    numCommitted = end;
+    return count;
+  }
+
+  /**
+   * Doubles the ring buffer when the paths take long to coalesce and no lag is set.
+   */
+  private void grow() {
+    int newCapacity = 2 * capacity;
+    Backpointers newBack = new Backpointers(numStates, newCapacity * numStates);
+    for (long step = numCommitted + 1; step < numSteps; step++) {
+      int oldRow = (int) (step % capacity) * numStates;
+      int newRow = (int) (step % newCapacity) * numStates;
+      for (int i = 0; i < numStates; i++) {
+        newBack.set(newRow + i, back.get(oldRow + i));
+      }
+    }
+    back = newBack;
+    capacity = newCapacity;
+  }
+}
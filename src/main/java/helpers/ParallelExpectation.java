@@ -0,0 +1,63 @@
+package main.java.helpers;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Expectation step over many independent sequences. The range of sequences is split
+ * in halves until a single sequence is left, so the per-sequence statistics are
+ * summed pairwise on the way back up (a tree reduction) by the fork-join workers.
+ */
+public class ParallelExpectation extends RecursiveTask<SufficientStatistics> {
+  private static final long serialVersionUID = 1L;
+
+  private final HMMModel model;
+  private final List<int[]> sequences;
+  private final TrainingOptions options;
+  private final int from;
+  private final int to;
+
+  private ParallelExpectation(HMMModel model, List<int[]> sequences, TrainingOptions options,
+                              int from, int to) {
+    this.model = model;
+    this.sequences = sequences;
+    this.options = options;
+    this.from = from;
+    this.to = to;
+  }
+
+  /**
+   * Function that runs the expectation step of every sequence in parallel.
+   * @param  model The HMM model, only read.
+   * @param  sequences The observed emission sequences.
+   * @param  options Picks the per-sequence pass and the pool to run on.
+   * @return The summed expected counts and log probabilities of all sequences.
+   */
+  public static SufficientStatistics expectation(HMMModel model, List<int[]> sequences,
+                                                 TrainingOptions options) {
+    if (sequences.isEmpty()) {
+      return new SufficientStatistics(model.numStates, model.numSymbols);
+    }
+    ForkJoinPool pool = options.pool != null ? options.pool : ForkJoinPool.commonPool();
+    return pool.invoke(new ParallelExpectation(model, sequences, options, 0, sequences.size()));
+  }
+
+  @Override
+  protected SufficientStatistics compute() {
+    if (to - from == 1) {
+      int[] emissions = sequences.get(from);
+      if (emissions.length == 0) {
+        return new SufficientStatistics(model.numStates, model.numSymbols);
+      }
+      return ForwardBackward.expectation(model, emissions, options);
+    }
+    int mid = (from + to) >>> 1;
+    ParallelExpectation left = new ParallelExpectation(model, sequences, options, from, mid);
+    left.fork();
+    SufficientStatistics stats = new ParallelExpectation(model, sequences, options, mid, to)
+        .compute();
+    stats.add(left.join());
+    return stats;
+  }
+}
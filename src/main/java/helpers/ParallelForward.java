@@ -0,0 +1,201 @@
+package main.java.helpers;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Scaled forward pass (alpha-pass) that splits one long sequence into chunks and
+ * uses all cores. Gives the same scaled alphas and scaling factors as
+ * HMM3.alphaPassScale, up to rounding.
+ *
+ * Three phases:
+ * 1) In parallel, chunk 0 runs the normal forward pass. Every other chunk k builds
+ *    its transfer matrix M_k, the product over its steps of A * diag(B[:, o_t]),
+ *    renormalized after every step.
+ * 2) A prefix over the chunks gives the scaled alpha entering every chunk:
+ *    alpha_in(k + 1) = normalize(alpha_in(k) * M_k). Since the prefix carries a
+ *    vector rather than a matrix, this costs only O(chunks * N^2) and runs
+ *    sequentially.
+ * 3) In parallel, every chunk runs the normal forward pass from its entry vector.
+ *
+ * Building a transfer matrix costs O(N^3) per step instead of O(N^2), so this only
+ * pays off when the number of cores is large compared to N.
+ */
+public class ParallelForward {
+  /**
+   * Below this many steps per chunk the sequential pass is used.
+   */
+  private static final int MIN_CHUNK_LENGTH = 256;
+
+  /**
+   * Function that runs the scaled forward pass on the given pool, with one chunk
+   * per worker.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  pool The pool to run on, null uses the common pool.
+   * @return Returns a FlatAlphaPass object as HMM3.alphaPassScale does.
+   */
+  public static FlatAlphaPass alphaPassScale(HMMModel model, int[] emissions, ForkJoinPool pool) {
+    if (pool == null) {
+      pool = ForkJoinPool.commonPool();
+    }
+    return alphaPassScale(model, emissions, pool, pool.getParallelism());
+  }
+
+  /**
+   * Function that runs the scaled forward pass split into numChunks chunks.
+   * @param  model The HMM model.
+   * @param  emissions The observed emission sequence in an array.
+   * @param  pool The pool to run on.
+   * @param  numChunks The requested number of chunks, lowered for short sequences.
+   * @return Returns a FlatAlphaPass object as HMM3.alphaPassScale does.
+   */
+  public static FlatAlphaPass alphaPassScale(HMMModel model, int[] emissions, ForkJoinPool pool,
+                                             int numChunks) {
+    double[] alphaMat = new double[model.numStates * emissions.length];
+    double[] scalingFactors = new double[emissions.length];
+    alphaPassScale(model, emissions, pool, numChunks, alphaMat, scalingFactors);
+    return new FlatAlphaPass(model.numStates, alphaMat, scalingFactors);
+  }
+
+  /**
+   * Function that runs the scaled forward pass into arrays owned by the caller, as
+   * the fused expectation step does with the arrays of its workspace.
+   * @param  alphaMat Receives the time-major scaled alphas, at least N*T long.
+   * @param  scalingFactors Receives the scaling factors, at least T long.
+   */
+  static void alphaPassScale(HMMModel model, int[] emissions, ForkJoinPool pool, int numChunks,
+                             double[] alphaMat, double[] scalingFactors) {
+    int numStates = model.numStates;
+    int numEmissions = emissions.length;
+    /**
+     * No steps, no chunks. Returning here also keeps chunkLength from being 0.
+     */
+    if (numEmissions == 0) {
+      return;
+    }
+    numChunks = Math.max(1, Math.min(numChunks, numEmissions / MIN_CHUNK_LENGTH));
+    int chunkLength = (numEmissions + numChunks - 1) / numChunks;
+    numChunks = (numEmissions + chunkLength - 1) / chunkLength;
+
+    if (numChunks == 1) {
+      fillChunk(model, emissions, alphaMat, scalingFactors, 0, numEmissions);
+      return;
+    }
+
+    /**
+     * Phase 1. The last chunk needs no transfer matrix, nothing comes after it.
+     */
+    final int chunks = numChunks;
+    double[][] transfers = new double[chunks][];
+    ParallelRanges.runAll(pool, chunks, chunk -> {
+      int start = chunk * chunkLength;
+      if (chunk == 0) {
+        fillChunk(model, emissions, alphaMat, scalingFactors, 0, Math.min(numEmissions, chunkLength));
+      } else if (chunk < chunks - 1) {
+        transfers[chunk] = transferMatrix(model, emissions, start, start + chunkLength);
+      }
+    });
+
+    /**
+     * Phase 2. entries[k] is the scaled alpha of the step before chunk k.
+     */
+    double[][] entries = new double[chunks][];
+    entries[1] = new double[numStates];
+    System.arraycopy(alphaMat, (chunkLength - 1) * numStates, entries[1], 0, numStates);
+    for (int chunk = 1; chunk < chunks - 1; chunk++) {
+      double[] entry = ArrayOperations.matrixMultiply(entries[chunk], transfers[chunk], 1,
+                                                      numStates, numStates);
+      double sum = 0.0;
+      for (int i = 0; i < numStates; i++) {
+        sum += entry[i];
+      }
+      for (int i = 0; i < numStates; i++) {
+        entry[i] /= sum;
+      }
+      entries[chunk + 1] = entry;
+    }
+
+    /**
+     * Phase 3.
+     */
+    ParallelRanges.runAll(pool, chunks - 1, index -> {
+      int chunk = index + 1;
+      int start = chunk * chunkLength;
+      int end = Math.min(numEmissions, start + chunkLength);
+      double[] prev = entries[chunk];
+      scalingFactors[start] = ForwardBackward.forwardStep(model, prev, 0, emissions[start],
+                                                          alphaMat, start * numStates);
+      for (int step = start + 1; step < end; step++) {
+        int offset = step * numStates;
+        scalingFactors[step] = ForwardBackward.forwardStep(model, alphaMat, offset - numStates,
+                                                           emissions[step], alphaMat, offset);
+      }
+    });
+  }
+
+  /**
+   * Runs the sequential scaled forward pass over steps [start, end), where start is
+   * 0 or the alpha of step start - 1 is already in alphaMat.
+   */
+  private static void fillChunk(HMMModel model, int[] emissions, double[] alphaMat,
+                                double[] scalingFactors, int start, int end) {
+    int numStates = model.numStates;
+    for (int step = start; step < end; step++) {
+      int offset = step * numStates;
+      scalingFactors[step] = step == 0
+          ? ForwardBackward.initialStep(model, emissions[0], alphaMat, 0)
+          : ForwardBackward.forwardStep(model, alphaMat, offset - numStates, emissions[step],
+                                        alphaMat, offset);
+    }
+  }
+
+  /**
+   * Function that computes the product over steps [start, end) of
+   * A * diag(B[:, o_t]) as a row-major N*N matrix. The matrix is divided by the sum
+   * of its entries after every step so that it never underflows. The scale is not
+   * needed since the entry vectors are renormalized anyway.
+   */
+  static double[] transferMatrix(HMMModel model, int[] emissions, int start, int end) {
+    int numStates = model.numStates;
+    double[] a = model.a;
+    double[] b = model.b;
+    int bStride = model.bStride;
+    double[] transfer = new double[numStates * numStates];
+    double[] next = new double[numStates * numStates];
+    for (int i = 0; i < numStates; i++) {
+      transfer[i * numStates + i] = 1.0;
+    }
+    for (int step = start; step < end; step++) {
+      int emission = emissions[step];
+      double sum = 0.0;
+      for (int r = 0; r < numStates; r++) {
+        int row = r * numStates;
+        for (int j = 0; j < numStates; j++) {
+          next[row + j] = 0.0;
+        }
+        for (int l = 0; l < numStates; l++) {
+          double left = transfer[row + l];
+          if (left == 0.0) {
+            continue;
+          }
+          int aRow = l * numStates;
+          for (int j = 0; j < numStates; j++) {
+            next[row + j] += left * a[aRow + j];
+          }
+        }
+        for (int j = 0; j < numStates; j++) {
+          next[row + j] *= b[j * bStride + emission];
+          sum += next[row + j];
+        }
+      }
+      double scale = 1/sum;
+      for (int idx = 0; idx < next.length; idx++) {
+        next[idx] *= scale;
+      }
+      double[] tmp = transfer;
+      transfer = next;
+      next = tmp;
+    }
+    return transfer;
+  }
+}
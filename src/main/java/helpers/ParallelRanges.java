@@ -0,0 +1,44 @@
+package main.java.helpers;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the indices of a range as fork-join tasks, split in halves down to single
+ * indices, for the parallel loops of the passes and matrix kernels.
+ */
+class ParallelRanges {
+  /**
+   * Runs body(0) ... body(count - 1) on the pool and waits for all of them.
+   */
+  static void runAll(ForkJoinPool pool, int count, IntConsumer body) {
+    pool.invoke(new RangeAction(body, 0, count));
+  }
+
+  private static class RangeAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final IntConsumer body;
+    private final int from;
+    private final int to;
+
+    RangeAction(IntConsumer body, int from, int to) {
+      this.body = body;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= 1) {
+        if (to > from) {
+          body.accept(from);
+        }
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new RangeAction(body, from, mid), new RangeAction(body, mid, to));
+    }
+  }
+}
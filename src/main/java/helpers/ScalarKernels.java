@@ -0,0 +1,59 @@
+package main.java.helpers;
+
+/**
+ * Plain loops, summing in ascending index order.
+ */
+class ScalarKernels extends Kernels {
+  static final ScalarKernels INSTANCE = new ScalarKernels();
+
+  @Override
+  public String name() {
+    return "scalar";
+  }
+
+  @Override
+  public double dot(double sum, double[] x, int xOffset, double[] y, int yOffset, int length) {
+    for (int k = 0; k < length; k++) {
+      sum += x[xOffset + k] * y[yOffset + k];
+    }
+    return sum;
+  }
+
+  @Override
+  public double dot(double sum, double weight, double[] x, int xOffset, double[] y, int yOffset,
+                    double[] z, int zOffset, int length) {
+    for (int k = 0; k < length; k++) {
+      sum += weight * x[xOffset + k] * y[yOffset + k] * z[zOffset + k];
+    }
+    return sum;
+  }
+
+  @Override
+  public void axpy(double weight, double[] x, int xOffset, double[] out, int outOffset,
+                   int length) {
+    for (int k = 0; k < length; k++) {
+      out[outOffset + k] += weight * x[xOffset + k];
+    }
+  }
+
+  @Override
+  public void addProducts(double weight, double[] x, int xOffset, double[] y, int yOffset,
+                          double[] out, int outOffset, int length) {
+    for (int k = 0; k < length; k++) {
+      out[outOffset + k] += weight * x[xOffset + k] * y[yOffset + k];
+    }
+  }
+
+  @Override
+  public double scaledProducts(double weight, double[] x, int xOffset, double[] y, int yOffset,
+                               double[] z, int zOffset, double divisor, double[] out,
+                               int outOffset, int length) {
+    double sum = 0.0;
+    for (int k = 0; k < length; k++) {
+      double value = (weight * x[xOffset + k] * y[yOffset + k] * z[zOffset + k]) / divisor;
+      out[outOffset + k] = value;
+      sum += value;
+    }
+    return sum;
+  }
+}
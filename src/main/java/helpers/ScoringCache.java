@@ -0,0 +1,276 @@
+package main.java.helpers;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+/**
+ * Least recently used cache of forward pass states, for workloads that score
+ * sequences growing by a few emissions at a time. A session (a StreamingScorer)
+ * is cached under its model, the number of emissions it has consumed and a hash
+ * of those emissions. Scoring a sequence resumes from the session of its longest
+ * cached prefix, so appending k emissions to a scored sequence costs O(k * N^2)
+ * instead of a pass from the start.
+ *
+ * Prefixes are identified by a polynomial hash modulo the prime 2^61 - 1, with a
+ * base drawn at random per cache. Two different prefixes of length T collide with
+ * probability at most T / 2^61, which is neglected: the emissions themselves are
+ * not kept, so the memory of a session is independent of its length. The cache
+ * keeps the lengths it holds sessions of per model, so a lookup hashes the
+ * emissions once, outside of the lock, and only probes the prefixes of those
+ * lengths.
+ *
+ * The memory of the cached sessions is bounded; the least recently used ones are
+ * evicted first. Models are compared by identity, so a model that is modified or
+ * replaced must be invalidated. The cache may be used from any number of threads.
+ */
+public class ScoringCache {
+  private static final long MOD = (1L << 61) - 1;
+  /**
+   * Estimated bytes of a session besides its two alpha vectors: the scorer, the
+   * key, the map entry and the array headers.
+   */
+  private static final long SESSION_OVERHEAD_BYTES = 160;
+
+  private static final class Key {
+    final HMMModel model;
+    final int length;
+    final long hash;
+
+    Key(HMMModel model, int length, long hash) {
+      this.model = model;
+      this.length = length;
+      this.hash = hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return model == key.model && length == key.length && hash == key.hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return (System.identityHashCode(model) * 31 + length) * 31 + Long.hashCode(hash);
+    }
+  }
+
+  private final long maxBytes;
+  private final long base;
+  private final LinkedHashMap<Key, StreamingScorer> sessions =
+      new LinkedHashMap<>(16, 0.75f, true);
+  /** The number of cached sessions per model and length. */
+  private final IdentityHashMap<HMMModel, TreeMap<Integer, Integer>> lengths =
+      new IdentityHashMap<>();
+  private long usedBytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long reusedSteps;
+
+  /**
+   * @param maxBytes The memory the cached sessions may take up, estimated.
+   */
+  public ScoringCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.base = 256 + new SplittableRandom().nextLong(MOD - 256);
+  }
+
+  /**
+   * Function that scores an emission sequence, resuming from the longest cached
+   * prefix, and caches the session after the whole sequence.
+   * @param  model The HMM model.
+   * @param  emissions The emission sequence.
+   * @return A session that has consumed the emissions, owned by the caller: it may
+   * be advanced further without affecting the cache.
+   */
+  public StreamingScorer session(HMMModel model, int[] emissions) {
+    int numEmissions = emissions.length;
+    int[] candidates;
+    synchronized (this) {
+      candidates = cachedLengths(model, numEmissions);
+    }
+    long[] hashes = new long[candidates.length];
+    long hash = prefixHashes(emissions, candidates, hashes);
+    StreamingScorer session = null;
+    int from = 0;
+    synchronized (this) {
+      for (int idx = 0; idx < candidates.length; idx++) {
+        StreamingScorer cached = sessions.get(new Key(model, candidates[idx], hashes[idx]));
+        if (cached != null) {
+          session = cached.copy();
+          from = candidates[idx];
+          break;
+        }
+      }
+      if (session != null) {
+        hits++;
+        reusedSteps += from;
+      } else {
+        misses++;
+      }
+    }
+    if (session == null) {
+      session = new StreamingScorer(model);
+    }
+    /**
+     * The forward steps run outside of the lock, so concurrent lookups do not wait
+     * for each other.
+     */
+    session.push(emissions, from, numEmissions);
+    if (from < numEmissions) {
+      StreamingScorer cached = session.copy();
+      synchronized (this) {
+        store(new Key(model, numEmissions, hash), cached);
+      }
+    }
+    return session;
+  }
+
+  /**
+   * Drops the sessions of a model that has been modified or is no longer used.
+   */
+  public synchronized void invalidate(HMMModel model) {
+    lengths.remove(model);
+    Iterator<Map.Entry<Key, StreamingScorer>> it = sessions.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Key, StreamingScorer> entry = it.next();
+      if (entry.getKey().model == model) {
+        usedBytes -= sessionBytes(model);
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return Lookups that resumed from a cached prefix.
+   */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  /**
+   * @return Lookups that found no cached prefix and started from the first emission.
+   */
+  public synchronized long misses() {
+    return misses;
+  }
+
+  /**
+   * @return Sessions dropped to stay within the memory bound.
+   */
+  public synchronized long evictions() {
+    return evictions;
+  }
+
+  /**
+   * @return Forward steps that hits did not have to recompute.
+   */
+  public synchronized long reusedSteps() {
+    return reusedSteps;
+  }
+
+  public synchronized int size() {
+    return sessions.size();
+  }
+
+  public synchronized long usedBytes() {
+    return usedBytes;
+  }
+
+  private void store(Key key, StreamingScorer session) {
+    long bytes = sessionBytes(key.model);
+    if (bytes > maxBytes) {
+      return;
+    }
+    if (sessions.put(key, session) != null) {
+      usedBytes -= bytes;
+    } else {
+      lengths.computeIfAbsent(key.model, model -> new TreeMap<>())
+          .merge(key.length, 1, Integer::sum);
+    }
+    usedBytes += bytes;
+    Iterator<Key> eldest = sessions.keySet().iterator();
+    while (usedBytes > maxBytes) {
+      Key evicted = eldest.next();
+      usedBytes -= sessionBytes(evicted.model);
+      eldest.remove();
+      evictions++;
+      TreeMap<Integer, Integer> counts = lengths.get(evicted.model);
+      if (counts.merge(evicted.length, -1, Integer::sum) == 0) {
+        counts.remove(evicted.length);
+        if (counts.isEmpty()) {
+          lengths.remove(evicted.model);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The lengths of the cached sessions of model up to maxLength, longest
+   * first.
+   */
+  private int[] cachedLengths(HMMModel model, int maxLength) {
+    TreeMap<Integer, Integer> counts = lengths.get(model);
+    if (counts == null) {
+      return new int[0];
+    }
+    NavigableSet<Integer> fitting = counts.headMap(maxLength, true).descendingKeySet();
+    int[] candidates = new int[fitting.size()];
+    int idx = 0;
+    for (int length : fitting) {
+      candidates[idx++] = length;
+    }
+    return candidates;
+  }
+
+  private static long sessionBytes(HMMModel model) {
+    return 2L * Double.BYTES * model.numStates + SESSION_OVERHEAD_BYTES;
+  }
+
+  /**
+   * Function that hashes the prefixes of the given lengths in one pass.
+   * @param  emissions The emission sequence.
+   * @param  prefixLengths Distinct lengths, longest first.
+   * @param  hashes Receives the hash of the first prefixLengths[idx] emissions at idx.
+   * @return The hash of all emissions.
+   */
+  private long prefixHashes(int[] emissions, int[] prefixLengths, long[] hashes) {
+    long hash = 0;
+    int next = prefixLengths.length - 1;
+    for (int t = 0; t < emissions.length; t++) {
+      hash = addMod(multiplyMod(hash, base), emissions[t] + 1L);
+      if (next >= 0 && prefixLengths[next] == t + 1) {
+        hashes[next--] = hash;
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * @return a * b mod 2^61 - 1, for a and b below 2^61.
+   */
+  private static long multiplyMod(long a, long b) {
+    long low = a * b;
+    long high = Math.multiplyHigh(a, b);
+    return addMod(low & MOD, (low >>> 61) | (high << 3));
+  }
+
+  /**
+   * @return a + b mod 2^61 - 1, for a and b at most 2^61 - 1.
+   */
+  private static long addMod(long a, long b) {
+    long sum = a + b;
+    while (sum >= MOD) {
+      sum -= MOD;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,101 @@
+package main.java.helpers;
+
+/**
+ * Nonzero pattern of a transition matrix, for left-to-right and banded topologies
+ * where most of A is zero. The pattern is kept twice: by rows (CSR), for the
+ * backward pass and re-estimation, and by columns (CSC), for the forward and
+ * Viterbi passes. Only indices are stored; the values are read from the dense A
+ * of the model, so re-estimating A in place needs no update here.
+ *
+ * Skipping a zero term never changes a sum, so the sparse passes give exactly the
+ * same results as the dense ones, at O(nnz) instead of O(N^2) per step.
+ */
+public class SparseTransitions {
+  /**
+   * Largest fraction of nonzeros for which HMMModel.chooseTransitions picks the
+   * sparse representation. Above it the indirection costs more than the skipped
+   * zeros save.
+   */
+  public static final double MAX_DENSITY = 0.25;
+
+  public final int numStates;
+  /** The nonzero columns of row i are rowColumns[rowStarts[i] ... rowStarts[i + 1] - 1], ascending. */
+  public final int[] rowStarts;
+  public final int[] rowColumns;
+  /** The nonzero rows of column i are columnRows[columnStarts[i] ... columnStarts[i + 1] - 1], ascending. */
+  public final int[] columnStarts;
+  public final int[] columnRows;
+
+  private SparseTransitions(int numStates, int[] rowStarts, int[] rowColumns, int[] columnStarts,
+                            int[] columnRows) {
+    this.numStates = numStates;
+    this.rowStarts = rowStarts;
+    this.rowColumns = rowColumns;
+    this.columnStarts = columnStarts;
+    this.columnRows = columnRows;
+  }
+
+  /**
+   * Function that extracts the nonzero pattern of a transition matrix.
+   * @param  a The N*N transition matrix, row-major.
+   * @param  numStates The number of states N.
+   * @return The pattern of the current nonzeros of a.
+   */
+  public static SparseTransitions of(double[] a, int numStates) {
+    int[] rowStarts = new int[numStates + 1];
+    int[] columnStarts = new int[numStates + 1];
+    for (int i = 0; i < numStates; i++) {
+      for (int j = 0; j < numStates; j++) {
+        if (a[i * numStates + j] != 0.0) {
+          rowStarts[i + 1]++;
+          columnStarts[j + 1]++;
+        }
+      }
+    }
+    for (int i = 0; i < numStates; i++) {
+      rowStarts[i + 1] += rowStarts[i];
+      columnStarts[i + 1] += columnStarts[i];
+    }
+    int numNonZeros = rowStarts[numStates];
+    int[] rowColumns = new int[numNonZeros];
+    int[] columnRows = new int[numNonZeros];
+    int[] columnFill = new int[numStates];
+    System.arraycopy(columnStarts, 0, columnFill, 0, numStates);
+    int idx = 0;
+    for (int i = 0; i < numStates; i++) {
+      for (int j = 0; j < numStates; j++) {
+        if (a[i * numStates + j] != 0.0) {
+          rowColumns[idx++] = j;
+          columnRows[columnFill[j]++] = i;
+        }
+      }
+    }
+    return new SparseTransitions(numStates, rowStarts, rowColumns, columnStarts, columnRows);
+  }
+
+  public int numNonZeros() {
+    return rowStarts[numStates];
+  }
+
+  public double density() {
+    return numNonZeros() / ((double) numStates * numStates);
+  }
+
+  /**
+   * Computes out[i] = sum_j A[j][i] * prev[j] over the nonzeros of column i, in
+   * ascending j like the dense forward passes.
+   * @param a The dense transition matrix holding the values.
+   * @param prev The previous alpha vector, read from prevOffset.
+   * @param out Receives the sums from outOffset on.
+   */
+  public void forward(double[] a, double[] prev, int prevOffset, double[] out, int outOffset) {
+    for (int i = 0; i < numStates; i++) {
+      double sum = 0.0;
+      for (int idx = columnStarts[i]; idx < columnStarts[i + 1]; idx++) {
+        int j = columnRows[idx];
+        sum += a[j * numStates + i] * prev[prevOffset + j];
+      }
+      out[outOffset + i] = sum;
+    }
+  }
+}
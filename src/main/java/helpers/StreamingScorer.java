@@ -0,0 +1,170 @@
+package main.java.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+/**
+ * Forward pass (alpha-pass) that consumes emissions one at a time and only keeps
+ * two scaled alpha vectors, so sequences of any length can be scored in O(N)
+ * memory. The log-likelihood is accumulated from the scaling factors, as in
+ * HMM3.calculateLogProb, so it does not underflow like the unscaled product of
+ * HMM1.alphaPass.
+ */
+public class StreamingScorer {
+  private final HMMModel model;
+  private double[] alpha;
+  private double[] nextAlpha;
+  private double logProb;
+  private long numSteps;
+
+  public StreamingScorer(HMMModel model) {
+    this.model = model;
+    this.alpha = new double[model.numStates];
+    this.nextAlpha = new double[model.numStates];
+  }
+
+  /**
+   * Function that advances the forward pass by one emission.
+   * @param emission The next observed emission.
+   */
+  public void push(int emission) {
+    if (emission < 0 || emission >= model.numSymbols) {
+      throw new IllegalArgumentException("Emission " + emission + " outside of [0, "
+                                         + model.numSymbols + ")");
+    }
+    int numStates = model.numStates;
+    double[] a = model.a;
+    double[] b = model.b;
+    int bStride = model.bStride;
+    double c = 0.0;
+    if (numSteps == 0) {
+      for (int i = 0; i < numStates; i++) {
+        nextAlpha[i] = b[i * bStride + emission] * model.pi[i];
+        c += nextAlpha[i];
+      }
+    } else {
+      if (model.transitions != null) {
+        model.transitions.forward(a, alpha, 0, nextAlpha, 0);
+      } else {
+        /**
+         * Same row-wise accumulation of sum_j A[j][i] * alpha[j] as
+         * HMM3.alphaPassScale.
+         */
+        for (int i = 0; i < numStates; i++) {
+          nextAlpha[i] = 0.0;
+        }
+        for (int j = 0; j < numStates; j++) {
+          double prevAlpha = alpha[j];
+          int aRow = j * numStates;
+          for (int i = 0; i < numStates; i++) {
+            nextAlpha[i] += a[aRow + i] * prevAlpha;
+          }
+        }
+      }
+      for (int i = 0; i < numStates; i++) {
+        nextAlpha[i] = b[i * bStride + emission] * nextAlpha[i];
+        c += nextAlpha[i];
+      }
+    }
+    /**
+     * The log of the unscaled column sum is exactly -log(c) in the Stamp notation.
+     */
+    logProb += Math.log(c);
+    c = 1/c;
+    for (int i = 0; i < numStates; i++) {
+      nextAlpha[i] *= c;
+    }
+    double[] tmp = alpha;
+    alpha = nextAlpha;
+    nextAlpha = tmp;
+    numSteps++;
+  }
+
+  /**
+   * Function that advances the forward pass by a range of emissions.
+   * @param emissions The observed emissions.
+   * @param from The index of the first emission to push.
+   * @param to The index after the last emission to push.
+   */
+  public void push(int[] emissions, int from, int to) {
+    for (int step = from; step < to; step++) {
+      push(emissions[step]);
+    }
+  }
+
+  /**
+   * @return An independent scorer in the same state, which can be advanced without
+   * affecting this one.
+   */
+  public StreamingScorer copy() {
+    StreamingScorer copy = new StreamingScorer(model);
+    System.arraycopy(alpha, 0, copy.alpha, 0, model.numStates);
+    copy.logProb = logProb;
+    copy.numSteps = numSteps;
+    return copy;
+  }
+
+  public HMMModel model() {
+    return model;
+  }
+
+  /**
+   * @return The natural logarithm of the probability of all emissions pushed so far.
+   */
+  public double logLikelihood() {
+    return logProb;
+  }
+
+  public long numSteps() {
+    return numSteps;
+  }
+
+  /**
+   * @return The current scaled alpha vector. Owned by the scorer, do not modify.
+   */
+  public double[] alpha() {
+    return alpha;
+  }
+
+  /**
+   * Forgets all emissions pushed so far so that the scorer can be reused.
+   */
+  public void reset() {
+    logProb = 0.0;
+    numSteps = 0;
+  }
+
+  /**
+   * Function that scores an emission sequence given by an iterator.
+   * @param  model The HMM model.
+   * @param  emissions The emissions, consumed until exhausted.
+   * @return The natural logarithm probability of the sequence.
+   */
+  public static double logLikelihood(HMMModel model, PrimitiveIterator.OfInt emissions) {
+    StreamingScorer scorer = new StreamingScorer(model);
+    while (emissions.hasNext()) {
+      scorer.push(emissions.nextInt());
+    }
+    return scorer.logLikelihood();
+  }
+
+  public static double logLikelihood(HMMModel model, IntStream emissions) {
+    return logLikelihood(model, emissions.iterator());
+  }
+
+  /**
+   * Function that scores an emission sequence read as whitespace separated decimal
+   * symbols, e.g. a plain observation log. Parses digits straight from the byte
+   * buffer, without creating any Strings. The stream is not closed.
+   * @param  model The HMM model.
+   * @param  in The stream to read until end of file.
+   * @return The natural logarithm probability of the sequence.
+   */
+  public static double logLikelihood(HMMModel model, InputStream in) throws IOException {
+    StreamingScorer scorer = new StreamingScorer(model);
+    EmissionFile.parseSymbols(in, scorer::push);
+    return scorer.logLikelihood();
+  }
+}
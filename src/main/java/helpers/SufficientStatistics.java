@@ -0,0 +1,99 @@
+package main.java.helpers;
+
+/**
+ * Expected counts gathered by an expectation step (E-step) of Baum-Welch. Holds
+ * everything the re-estimation needs, so the mono-gamma and di-gamma matrices
+ * never have to be kept over the full sequence.
+ */
+public class SufficientStatistics {
+  public final int numStates;
+  public final int numSymbols;
+  /** gamma_0(i), summed over sequences. */
+  public final double[] initialGamma;
+  /** sum over t < T-1 of digamma_t(i, j), row-major N*N. */
+  public final double[] transitionCounts;
+  /** sum over t < T-1 of gamma_t(i). */
+  public final double[] transitionTotals;
+  /** sum over t with o_t = k of gamma_t(i), row-major N*M. */
+  public final double[] emissionCounts;
+  /** sum over all t of gamma_t(i). */
+  public final double[] gammaTotals;
+  /**
+   * gamma_{T-1}(i), the state distribution after the last emission given the whole
+   * sequence. Set by the single-sequence expectation steps, not summed by add.
+   */
+  public final double[] finalGamma;
+  /** Natural logarithm probability of the sequences under the model used. */
+  public double logProb;
+  public int numSequences;
+  /** Time spent in the forward and backward passes, summed over sequences. */
+  public long forwardNanos;
+  public long backwardNanos;
+
+  public SufficientStatistics(int numStates, int numSymbols) {
+    this.numStates = numStates;
+    this.numSymbols = numSymbols;
+    this.initialGamma = new double[numStates];
+    this.transitionCounts = new double[numStates * numStates];
+    this.transitionTotals = new double[numStates];
+    this.emissionCounts = new double[numStates * numSymbols];
+    this.gammaTotals = new double[numStates];
+    this.finalGamma = new double[numStates];
+  }
+
+  /**
+   * Adds the counts of another set of statistics to this one, e.g. to combine the
+   * statistics of independent sequences.
+   * @param other Statistics gathered with a model of the same dimensions.
+   */
+  public void add(SufficientStatistics other) {
+    addInto(initialGamma, other.initialGamma);
+    addInto(transitionCounts, other.transitionCounts);
+    addInto(transitionTotals, other.transitionTotals);
+    addInto(emissionCounts, other.emissionCounts);
+    addInto(gammaTotals, other.gammaTotals);
+    logProb += other.logProb;
+    numSequences += other.numSequences;
+    forwardNanos += other.forwardNanos;
+    backwardNanos += other.backwardNanos;
+  }
+
+  private static void addInto(double[] target, double[] values) {
+    for (int i = 0; i < target.length; i++) {
+      target[i] += values[i];
+    }
+  }
+
+  /**
+   * Function for re-estimating the A, B and pi matrices of a model in place from
+   * the expected counts (the M-step). A row without any expected count, such as the
+   * transitions of a state only visited at the last step, or pi when no sequence
+   * was counted, is left unchanged instead of being divided by 0.
+   * @param model The HMM model to update. Must have the same dimensions.
+   */
+  public void reEstimate(HMMModel model) {
+    if (numSequences > 0) {
+      for (int i = 0; i < numStates; i++) {
+        model.pi[i] = initialGamma[i] / numSequences;
+      }
+    }
+    for (int i = 0; i < numStates; i++) {
+      if (transitionTotals[i] == 0.0) {
+        continue;
+      }
+      int row = i * numStates;
+      for (int j = 0; j < numStates; j++) {
+        model.a[row + j] = transitionCounts[row + j] / transitionTotals[i];
+      }
+    }
+    for (int i = 0; i < numStates; i++) {
+      if (gammaTotals[i] == 0.0) {
+        continue;
+      }
+      int row = i * numSymbols;
+      for (int k = 0; k < numSymbols; k++) {
+        model.b[i * model.bStride + k] = emissionCounts[row + k] / gammaTotals[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package main.java.helpers;
+
+/**
+ * Bridge to the JDK Flight Recorder event of a training iteration. The event
+ * (JfrTrainingEvents, built from src-jfr/ on JDK 11+) is loaded reflectively, since
+ * this class is compiled for Java 10, where jdk.jfr does not exist. Without it, or
+ * without the jdk.jfr module at runtime, nothing is recorded.
+ */
+abstract class TrainingEvents {
+  private static final String JFR_CLASS = "main.java.helpers.JfrTrainingEvents";
+
+  private static final TrainingEvents DEFAULT = load();
+
+  static TrainingEvents get() {
+    return DEFAULT;
+  }
+
+  private static TrainingEvents load() {
+    try {
+      return (TrainingEvents) Class.forName(JFR_CLASS).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return new TrainingEvents() {
+        @Override
+        Object begin() {
+          return null;
+        }
+
+        @Override
+        void commit(Object event, IterationMetrics metrics) {
+        }
+      };
+    }
+  }
+
+  /**
+   * Starts the event of an iteration.
+   * @return The started event, or null if no recording has the event enabled.
+   */
+  abstract Object begin();
+
+  /**
+   * Ends an event returned by begin and commits it with the metrics, if it passes
+   * the threshold of the recording.
+   */
+  abstract void commit(Object event, IterationMetrics metrics);
+}
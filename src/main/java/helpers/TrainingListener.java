@@ -0,0 +1,19 @@
+package main.java.helpers;
+
+import java.io.PrintStream;
+
+/**
+ * Callback receiving the metrics of every iteration of HMM3.trainModel, set with
+ * TrainingOptions.listener. It runs on the training thread, between iterations.
+ */
+public interface TrainingListener {
+  void onIteration(IterationMetrics metrics);
+
+  /**
+   * @param  out The stream to write to.
+   * @return A listener writing the metrics of every iteration as one line.
+   */
+  static TrainingListener printTo(PrintStream out) {
+    return metrics -> out.println(metrics);
+  }
+}
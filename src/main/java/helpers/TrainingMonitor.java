@@ -0,0 +1,165 @@
+package main.java.helpers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Collects the IterationMetrics of one training run and hands them to the listener
+ * of the options and to the JFR event. An iteration is only measured if there is a
+ * listener or a recording has the event enabled; otherwise every call returns after
+ * a null check, so monitoring costs nothing measurable when it is off.
+ *
+ * An iteration is bracketed by start and end, with the phases marked in between by
+ * alphaDone, betaDone and gammaDone, or by expectationDone for the fused step.
+ */
+public class TrainingMonitor {
+  private static final TrainingEvents EVENTS = TrainingEvents.get();
+  private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationCounter();
+
+  private final TrainingListener listener;
+  private int iterations;
+  private double lastLogProb = Double.NaN;
+  /** The metrics of the current iteration, null if it is not measured. */
+  private IterationMetrics metrics;
+  private Object event;
+  private HMMModel before;
+  private long start;
+  private long lap;
+  private long startAllocated;
+
+  public TrainingMonitor(TrainingListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Starts an iteration.
+   * @param model The model about to be re-estimated.
+   */
+  public void start(HMMModel model) {
+    iterations++;
+    event = EVENTS.begin();
+    if (listener == null && event == null) {
+      metrics = null;
+      return;
+    }
+    metrics = new IterationMetrics();
+    metrics.iteration = iterations;
+    if (before == null || before.numStates != model.numStates
+        || before.numSymbols != model.numSymbols) {
+      before = model.copy();
+    } else {
+      before.copyFrom(model);
+    }
+    startAllocated = allocatedBytes();
+    start = System.nanoTime();
+    lap = start;
+  }
+
+  public void alphaDone() {
+    if (metrics != null) {
+      metrics.alphaNanos = lap();
+    }
+  }
+
+  public void betaDone() {
+    if (metrics != null) {
+      metrics.betaNanos = lap();
+    }
+  }
+
+  public void gammaDone() {
+    if (metrics != null) {
+      metrics.gammaNanos = lap();
+    }
+  }
+
+  /**
+   * Marks the end of a fused or checkpointed expectation step, taking the pass
+   * times from its statistics.
+   */
+  public void expectationDone(SufficientStatistics stats) {
+    if (metrics != null) {
+      metrics.alphaNanos = stats.forwardNanos;
+      metrics.betaNanos = stats.backwardNanos;
+      lap();
+    }
+  }
+
+  /**
+   * Ends an iteration after the re-estimation and reports it.
+   * @param model The re-estimated model.
+   * @param logProb The log probability of the model before re-estimation.
+   */
+  public void end(HMMModel model, double logProb) {
+    double delta = logProb - lastLogProb;
+    lastLogProb = logProb;
+    if (metrics == null) {
+      return;
+    }
+    metrics.reEstimateNanos = lap();
+    metrics.totalNanos = lap - start;
+    metrics.allocatedBytes = startAllocated < 0 ? -1 : allocatedBytes() - startAllocated;
+    metrics.logProb = logProb;
+    metrics.delta = delta;
+    int numStates = model.numStates;
+    for (int i = 0; i < numStates; i++) {
+      metrics.transitionChange = maxChange(metrics.transitionChange, before.a, model.a,
+                                           i * model.aStride, numStates);
+      metrics.emissionChange = maxChange(metrics.emissionChange, before.b, model.b,
+                                         i * model.bStride, model.numSymbols);
+    }
+    metrics.initialChange = maxChange(0.0, before.pi, model.pi, 0, numStates);
+
+    if (event != null) {
+      EVENTS.commit(event, metrics);
+    }
+    if (listener != null) {
+      listener.onIteration(metrics);
+    }
+  }
+
+  /**
+   * @return The nanoseconds since the previous lap.
+   */
+  private long lap() {
+    long now = System.nanoTime();
+    long elapsed = now - lap;
+    lap = now;
+    return elapsed;
+  }
+
+  private static double maxChange(double max, double[] before, double[] after, int offset,
+                                  int length) {
+    for (int idx = offset; idx < offset + length; idx++) {
+      max = Math.max(max, Math.abs(after[idx] - before[idx]));
+    }
+    return max;
+  }
+
+  /**
+   * @return The bytes allocated by the current thread so far, -1 if not supported.
+   */
+  private static long allocatedBytes() {
+    if (ALLOCATIONS == null) {
+      return -1;
+    }
+    return ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static com.sun.management.ThreadMXBean allocationCounter() {
+    try {
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      if (threads instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+        if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+          return counter;
+        }
+      }
+    } catch (LinkageError e) {
+      /**
+       * The jdk.management module is not in this runtime.
+       */
+    }
+    return null;
+  }
+}
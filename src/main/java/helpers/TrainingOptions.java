@@ -0,0 +1,159 @@
+package main.java.helpers;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Settings for HMM3.trainModel. The defaults reproduce the original Kattis
+ * behaviour.
+ */
+public class TrainingOptions {
+  /**
+   * Value set to fit the Kattis time limits, in case the log probability doesn't
+   * converge quickly enough.
+   */
+  public int maxIters = 100;
+  /**
+   * Training stops once an iteration gains no more than this many nats of log
+   * probability. 0 stops only when the log probability fails to increase.
+   */
+  public double absoluteTolerance = 0.0;
+  /**
+   * Training stops once an iteration gains no more than this fraction of the
+   * magnitude of the previous log probability. 0 disables the test.
+   */
+  public double relativeTolerance = 0.0;
+  /**
+   * Wall-clock budget in milliseconds. No new iteration is started after it runs
+   * out, the model keeps the last re-estimation. 0 means no limit.
+   */
+  public long timeBudgetMillis = 0;
+  /**
+   * Combines the EM iterations SQUAREM-style, extrapolating along the path of two
+   * steps and keeping the jump only if it does not lower the log probability. Needs
+   * fewer forward-backward passes when EM converges slowly. Ignored by
+   * HMM3.trainModelRestarts.
+   */
+  public boolean accelerated = false;
+  /**
+   * Receives the metrics of every iteration of HMM3.trainModel. null reports none,
+   * the iterations are then only measured while a flight recording has the
+   * hmm.TrainingIteration event enabled.
+   */
+  public TrainingListener listener = null;
+  /**
+   * Runs the original alpha, beta, gamma and re-estimation passes, which build the
+   * full beta, mono-gamma and di-gamma matrices. Much slower and larger than the
+   * default fused expectation step, kept to verify it against. Cannot be combined
+   * with checkpointed.
+   */
+  public boolean materializeGamma = false;
+  /**
+   * Runs the E-step with the checkpointed forward-backward pass, which only stores
+   * alpha every checkpointInterval steps and recomputes the rest on the way back.
+   */
+  public boolean checkpointed = false;
+  /**
+   * Distance between stored alpha vectors. 0 picks ceil(sqrt(T)), which minimizes
+   * the memory of the checkpoints plus the recomputed segment.
+   */
+  public int checkpointInterval = 0;
+  /**
+   * Stores the alpha matrix of the fused expectation step in float, halving the
+   * largest allocation of a training run and the memory read by the backward sweep.
+   * Scaling factors, beta, and all sums stay in double, so the log probability is
+   * unchanged and the statistics differ by about the float precision. With
+   * checkpointed, and when training on an EmissionFile, the recomputed segment is
+   * stored in float instead. Cannot be combined with materializeGamma.
+   */
+  public boolean singlePrecision = false;
+  /**
+   * Runs the forward sweep of the fused expectation step with ParallelForward,
+   * split into one chunk per worker of pool. Costs O(N^3) instead of O(N^2) per
+   * step, so it only pays off when the cores far outnumber the states. Cannot be
+   * combined with checkpointed or singlePrecision, which keep no full alpha matrix
+   * in double.
+   */
+  public boolean parallelForward = false;
+  /**
+   * Pool running the per-sequence expectation steps when training on several
+   * sequences, and the chunks of parallelForward. null uses the common pool.
+   */
+  public ForkJoinPool pool = null;
+  /**
+   * Number of starting guesses trained by HMM3.trainModelRestarts. Restart 0 is the
+   * given model, the others are random perturbations of it.
+   */
+  public int restarts = 8;
+  /**
+   * Seed of the perturbations, restart k uses seed + k.
+   */
+  public long seed = 0;
+  /**
+   * Iterations every restart runs before it can be abandoned, since the log
+   * probabilities of the first iterations say little about where a run ends up.
+   */
+  public int abandonAfter = 10;
+  /**
+   * A restart is abandoned once its log probability trails the best restart by more
+   * than this many nats per emission.
+   */
+  public double abandonMargin = 0.01;
+  /**
+   * Step size schedule of OnlineTraining: step k (from 0) blends the statistics of
+   * its batch in with weight (k + stepOffset)^-stepDecay. stepDecay in (0.5, 1]
+   * makes the running statistics converge, smaller values follow drifting data
+   * more closely.
+   */
+  public double stepDecay = 0.7;
+  public double stepOffset = 2.0;
+  /**
+   * Emissions per step of the schedule. A larger batch counts as several steps and
+   * is swept once per step, see OnlineTraining.
+   */
+  public int stepLength = 100;
+
+  /**
+   * Function that applies the tolerances to one iteration.
+   * @param  oldLogProb The best log probability before the iteration, -Double.MAX_VALUE
+   * before the first one.
+   * @param  logProb The log probability of the iteration.
+   * @return true if the gain is too small to go on.
+   */
+  public boolean converged(double oldLogProb, double logProb) {
+    if (oldLogProb == (-1) * Double.MAX_VALUE) {
+      return !(logProb > oldLogProb);
+    }
+    double tolerance = Math.max(absoluteTolerance, relativeTolerance * Math.abs(oldLogProb));
+    return !(logProb - oldLogProb > tolerance);
+  }
+
+  /**
+   * Function that rejects options that cannot be honored together, instead of
+   * silently ignoring one of them.
+   * @throws IllegalArgumentException If materializeGamma is set together with
+   * checkpointed or singlePrecision, or parallelForward together with checkpointed
+   * or singlePrecision.
+   */
+  public void validate() {
+    if (materializeGamma && checkpointed) {
+      throw new IllegalArgumentException("materializeGamma stores the full alpha and beta "
+                                         + "matrices and cannot be checkpointed");
+    }
+    if (materializeGamma && singlePrecision) {
+      throw new IllegalArgumentException("materializeGamma runs the original double passes "
+                                         + "and has no single precision store");
+    }
+    if (parallelForward && (checkpointed || singlePrecision)) {
+      throw new IllegalArgumentException("parallelForward needs the full double alpha matrix, "
+                                         + "it cannot be checkpointed or single precision");
+    }
+  }
+
+  /**
+   * @return The System.nanoTime after which no iteration may start.
+   */
+  public long deadline() {
+    return timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1_000_000L
+                                : Long.MAX_VALUE;
+  }
+}
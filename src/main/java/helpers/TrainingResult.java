@@ -0,0 +1,26 @@
+package main.java.helpers;
+
+/**
+ * Summary of a call to HMM3.trainModel.
+ */
+public class TrainingResult {
+  /** Best natural logarithm probability of the training data seen while training. */
+  public double logProb;
+  /** Number of expectation/re-estimation iterations performed. */
+  public int iterations;
+  /**
+   * Whether training stopped on the tolerances, rather than on the iteration limit
+   * or the time budget.
+   */
+  public boolean converged;
+
+  public TrainingResult(double logProb, int iterations) {
+    this(logProb, iterations, false);
+  }
+
+  public TrainingResult(double logProb, int iterations, boolean converged) {
+    this.logProb = logProb;
+    this.iterations = iterations;
+    this.converged = converged;
+  }
+}
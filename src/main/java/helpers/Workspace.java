@@ -0,0 +1,108 @@
+package main.java.helpers;
+
+/**
+ * Work arrays of the forward, backward and Viterbi passes, kept between calls so
+ * that repeated passes over sequences of similar length do not allocate. The arrays
+ * only grow, and their contents are not cleared: the passes write every element
+ * before reading it. A workspace may only be used by one thread at a time.
+ */
+public class Workspace {
+  private double[] forward = new double[0];
+  private double[] nextForward = new double[0];
+  private float[] singleForward = new float[0];
+  private double[] scales = new double[0];
+  private double[] backward = new double[0];
+  private double[] weightedBackward = new double[0];
+  private double[] delta = new double[0];
+  private double[] nextDelta = new double[0];
+  private int[] active = new int[0];
+  private int[] nextActive = new int[0];
+  private Backpointers backpointers;
+
+  /** The scaled alpha matrix, or the current alpha vector of a rolling pass. */
+  double[] forward(int length) {
+    if (forward.length < length) {
+      forward = new double[length];
+    }
+    return forward;
+  }
+
+  /** The next alpha vector of a rolling pass. */
+  double[] nextForward(int length) {
+    if (nextForward.length < length) {
+      nextForward = new double[length];
+    }
+    return nextForward;
+  }
+
+  /** The scaled alpha matrix of a single precision pass. */
+  float[] singleForward(int length) {
+    if (singleForward.length < length) {
+      singleForward = new float[length];
+    }
+    return singleForward;
+  }
+
+  /** The scaling factors of a forward pass. */
+  double[] scales(int length) {
+    if (scales.length < length) {
+      scales = new double[length];
+    }
+    return scales;
+  }
+
+  /** The current beta vector of a backward sweep. */
+  double[] backward(int length) {
+    if (backward.length < length) {
+      backward = new double[length];
+    }
+    return backward;
+  }
+
+  /** B[j][o_{t+1}] * beta_{t+1}(j) of a backward sweep. */
+  double[] weightedBackward(int length) {
+    if (weightedBackward.length < length) {
+      weightedBackward = new double[length];
+    }
+    return weightedBackward;
+  }
+
+  double[] delta(int length) {
+    if (delta.length < length) {
+      delta = new double[length];
+    }
+    return delta;
+  }
+
+  double[] nextDelta(int length) {
+    if (nextDelta.length < length) {
+      nextDelta = new double[length];
+    }
+    return nextDelta;
+  }
+
+  /** The surviving states of a Viterbi step. */
+  int[] active(int length) {
+    if (active.length < length) {
+      active = new int[length];
+    }
+    return active;
+  }
+
+  int[] nextActive(int length) {
+    if (nextActive.length < length) {
+      nextActive = new int[length];
+    }
+    return nextActive;
+  }
+
+  /**
+   * @return A table of at least size backpointers wide enough for numStates.
+   */
+  Backpointers backpointers(int numStates, int size) {
+    if (backpointers == null || !backpointers.holds(numStates, size)) {
+      backpointers = new Backpointers(numStates, size);
+    }
+    return backpointers;
+  }
+}